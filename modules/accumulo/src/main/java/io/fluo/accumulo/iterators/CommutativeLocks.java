@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.accumulo.iterators;
+
+import java.util.HashSet;
+
+import io.fluo.accumulo.values.DelLockValue;
+import io.fluo.accumulo.values.LockValue;
+import io.fluo.accumulo.values.WriteValue;
+
+/**
+ * Tracks which commutative locks of a column were resolved. Unlike other locks, a commutative lock is not superseded by writes of newer transactions,
+ * only by the write or rollback that points to its own timestamp. Writes and rollbacks sort before locks in a column, so they are all seen before the
+ * locks they resolve.
+ */
+class CommutativeLocks {
+
+  private HashSet<Long> resolved = null;
+
+  void clear() {
+    if (resolved != null)
+      resolved.clear();
+  }
+
+  void addWrite(byte[] writeValue) {
+    // a write resolves the lock it points to even if it is no longer a delta, such as one that deltas were folded into
+    add(WriteValue.getTimestamp(writeValue));
+  }
+
+  void addDelLock(byte[] delLockValue) {
+    add(DelLockValue.getTimestamp(delLockValue));
+  }
+
+  private void add(long lockTs) {
+    if (resolved == null)
+      resolved = new HashSet<>();
+    resolved.add(lockTs);
+  }
+
+  boolean isResolved(long lockTs) {
+    return resolved != null && resolved.contains(lockTs);
+  }
+
+  static boolean isCommutative(byte[] lockValue) {
+    return new LockValue(lockValue).isCommutative();
+  }
+}
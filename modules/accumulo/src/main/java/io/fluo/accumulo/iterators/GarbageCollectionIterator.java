@@ -18,12 +18,15 @@ package io.fluo.accumulo.iterators;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Map;
 
 import io.fluo.accumulo.util.ColumnConstants;
-import io.fluo.accumulo.util.ZookeeperUtil;
+import io.fluo.accumulo.util.OldestTimestampCache;
 import io.fluo.accumulo.values.DelLockValue;
+import io.fluo.accumulo.values.DeltaValue;
 import io.fluo.accumulo.values.WriteValue;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.data.ArrayByteSequence;
@@ -39,19 +42,34 @@ import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 
 /**
  * This iterator cleans up old versions and unneeded column metadata. 
- * It's intended to be used only at compaction time.
+ * It's intended to be used only at compaction time. When a full major compaction truncates a column at a delta, the deltas and the value they were added
+ * to are folded into one value. Other compactions may not see all of a column's deltas, so they only truncate a column at a write that is not a delta.
  */
 public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Value> {
 
   private static final String ZOOKEEPER_CONNECT_OPT = "zookeeper.connect";
   private static final String ZOOKEEPER_ROOT_OPT = "zookeeper.root";
   private static final ByteSequence NOTIFY_CF_BS = new ArrayByteSequence(ColumnConstants.NOTIFY_CF.toArray());
+  private static final Comparator<KeyValue> KEY_ORDER = new Comparator<KeyValue>() {
+    @Override
+    public int compare(KeyValue kv1, KeyValue kv2) {
+      return kv1.key.compareTo(kv2.key);
+    }
+  };
   private Long oldestActiveTs;
   private SortedKeyValueIterator<Key,Value> source;
 
   private ArrayList<KeyValue> keys = new ArrayList<>();
   private ArrayList<KeyValue> keysFiltered = new ArrayList<>();
   private HashSet<Long> completeTxs = new HashSet<>();
+  private final CommutativeLocks commutativeLocks = new CommutativeLocks();
+  // pointers to the data of the delta write that is truncated, the older deltas it was added to and the write they were all added to
+  private HashSet<Long> foldPointers = new HashSet<>();
+  // older writes the truncated delta was added to, put back if the column can not be folded
+  private ArrayList<KeyValue> foldWrites = new ArrayList<>();
+  // timestamps of unresolved commutative locks, their data is kept because they may be rolled forward after the column is truncated
+  private HashSet<Long> keptLocks = new HashSet<>();
+  private boolean fullMajc;
   private Key curCol = new Key();
   private long truncationTime;
   private int position = 0;
@@ -67,7 +85,8 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
     if (zookeepers == null || zkRoot == null) {
       throw new IllegalArgumentException("A configuration item for GC iterator was not set");
     }
-    oldestActiveTs = ZookeeperUtil.getOldestTimestamp(zookeepers, zkRoot);
+    oldestActiveTs = OldestTimestampCache.getOldestTimestamp(zookeepers, zkRoot);
+    fullMajc = env.getIteratorScope() == IteratorScope.majc && env.isFullMajorCompaction();
   }
 
   @Override
@@ -91,7 +110,7 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
       long ts = source.getTopKey().getTimestamp() & ColumnConstants.TIMESTAMP_MASK;
 
       if (colType == ColumnConstants.DATA_PREFIX) {
-        if (ts >= truncationTime)
+        if (ts >= truncationTime || keptLocks.contains(ts))
           break;
       } else {
         // TODO check if its a notify
@@ -127,6 +146,17 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
     keys.clear();
     keysFiltered.clear();
     completeTxs.clear();
+    commutativeLocks.clear();
+    foldPointers.clear();
+    foldWrites.clear();
+    keptLocks.clear();
+    // set while older writes are deltas that a truncated delta was added to
+    boolean folding = false;
+    // the truncated delta write as it was read and its position in keys
+    KeyValue truncatedDelta = null;
+    int truncatedDeltaPos = -1;
+    // pointer of the write that is not a delta the truncated delta was added to, -1 if there is none
+    long foldBaseTime = -1;
 
     curCol.set(source.getTopKey());
 
@@ -148,13 +178,29 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
         byte[] val = source.getTopValue().get();
         long timePtr = WriteValue.getTimestamp(val);
 
+        commutativeLocks.addWrite(val);
+
         if (WriteValue.isPrimary(val) && !complete)
           keep = true;
+
+        boolean folded = false;
+        if (folding) {
+          foldPointers.add(timePtr);
+          if (!keep) {
+            foldWrites.add(new KeyValue(new Key(source.getTopKey()), val));
+            folded = true;
+          }
+          if (!WriteValue.isDelta(val)) {
+            foldBaseTime = timePtr;
+            folding = false;
+          }
+        }
         
         if (!oldestSeen && !truncationSeen) {
           keep = true;
           
-          if (timePtr < oldestActiveTs)
+          // only a full major compaction sees all the deltas and the value they were added to
+          if (timePtr < oldestActiveTs && (fullMajc || !WriteValue.isDelta(val)))
             oldestSeen = true;
 
           if (WriteValue.isTruncated(val))
@@ -165,6 +211,15 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
               throw new IllegalStateException();
 
             truncationTime = timePtr;
+
+            if (WriteValue.isDelta(val)) {
+              // older data is dropped, so the deltas and the value they were added to are summed into the data of this write
+              foldPointers.add(timePtr);
+              folding = true;
+              truncatedDelta = new KeyValue(new Key(source.getTopKey()), val);
+              truncatedDeltaPos = keys.size();
+            }
+
             val = WriteValue.encode(truncationTime, WriteValue.isPrimary(val), true);
           }
         }
@@ -174,13 +229,16 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
 
         if (keep) {
           keys.add(new KeyValue(new Key(source.getTopKey()), val));
-        } else if (complete) {
+        } else if (complete && !folded) {
           completeTxs.remove(ts);
         }
       } else if (colType == ColumnConstants.DEL_LOCK_PREFIX) {
         boolean keep = false;
         boolean complete = completeTxs.contains(ts);
 
+        commutativeLocks.addDelLock(source.getTopValue().get());
+
+        // a primary rollback is needed to resolve secondary locks until the transaction is done, lazy rollbacks write secondaries after the primary
         if (DelLockValue.isPrimary(source.getTopValue().get()) && !complete)
           keep = true;
 
@@ -197,7 +255,16 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
           completeTxs.remove(ts);
         }
       } else if (colType == ColumnConstants.LOCK_PREFIX) {
-        if (ts > invalidationTime)
+        boolean keep;
+        if (CommutativeLocks.isCommutative(source.getTopValue().get())) {
+          keep = !commutativeLocks.isResolved(ts);
+          if (keep)
+            keptLocks.add(ts);
+        } else {
+          keep = ts > invalidationTime;
+        }
+
+        if (keep)
           keys.add(new KeyValue(new Key(source.getTopKey()), source.getTopValue().get()));
       } else if (colType == ColumnConstants.DATA_PREFIX) {
         // can stop looking
@@ -212,6 +279,21 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
       source.next();
     }
 
+    if (foldPointers.size() > 0) {
+      if (keptLocks.isEmpty()) {
+        for (KeyValue kv : foldWrites)
+          completeTxs.remove(kv.key.getTimestamp() & ColumnConstants.TIMESTAMP_MASK);
+      } else {
+        // an unresolved delta may be rolled forward with a commit time older than the truncated delta, which was added to it. So the deltas are
+        // kept and the column is only truncated at the value they were added to.
+        keys.set(truncatedDeltaPos, truncatedDelta);
+        keys.addAll(foldWrites);
+        Collections.sort(keys, KEY_ORDER);
+        foldPointers.clear();
+        truncationTime = foldBaseTime;
+      }
+    }
+
     for (KeyValue kv : keys) {
       long colType = kv.key.getTimestamp() & ColumnConstants.PREFIX_MASK;
       if (colType == ColumnConstants.TX_DONE_PREFIX) {
@@ -223,11 +305,41 @@ public class GarbageCollectionIterator implements SortedKeyValueIterator<Key,Val
       }
     }
 
+    if (foldPointers.size() > 0)
+      foldData();
+
     if (keysFiltered.size() == 0 && source.hasTop() && !curCol.equals(source.getTopKey(), PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
       throw new IllegalStateException();
     }
   }
 
+  /**
+   * Reads the rest of the data in the column, keeping data newer than the truncation time and replacing the data of the truncated delta with the sum of
+   * all folded data. Columns with unresolved commutative locks are not folded.
+   */
+  private void foldData() throws IOException {
+    long sum = 0;
+
+    while (source.hasTop() && curCol.equals(source.getTopKey(), PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
+      long colType = source.getTopKey().getTimestamp() & ColumnConstants.PREFIX_MASK;
+      long ts = source.getTopKey().getTimestamp() & ColumnConstants.TIMESTAMP_MASK;
+
+      if (colType != ColumnConstants.DATA_PREFIX)
+        throw new IllegalStateException(" unexpected colType " + String.format("%x", colType));
+
+      if (foldPointers.contains(ts))
+        sum += DeltaValue.decode(source.getTopValue().get());
+      else if (ts > truncationTime)
+        keysFiltered.add(new KeyValue(new Key(source.getTopKey()), source.getTopValue().get()));
+
+      source.next();
+    }
+
+    Key key = new Key(curCol);
+    key.setTimestamp(ColumnConstants.DATA_PREFIX | truncationTime);
+    keysFiltered.add(new KeyValue(key, DeltaValue.encode(sum)));
+  }
+
   @Override
   public Key getTopKey() {
     if (position < keysFiltered.size()) {
@@ -21,6 +21,7 @@ import java.util.Map;
 
 import io.fluo.accumulo.util.ColumnConstants;
 import io.fluo.accumulo.values.DelLockValue;
+import io.fluo.accumulo.values.DeltaValue;
 import io.fluo.accumulo.values.WriteValue;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.data.ByteSequence;
@@ -38,12 +39,17 @@ import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 public class PrewriteIterator implements SortedKeyValueIterator<Key,Value> {
   private static final String TIMESTAMP_OPT = "timestampOpt";
   private static final String CHECK_ACK_OPT = "checkAckOpt";
+  private static final String DELTA_OPT = "deltaOpt";
+  private static final String LONG_CHECK_OPT = "longCheckOpt";
   
   private SortedKeyValueIterator<Key,Value> source;
   private long snaptime;
   
   boolean hasTop = false;
   boolean checkAck = false;
+  boolean delta = false;
+  boolean checkLong = false;
+  private final CommutativeLocks commutativeLocks = new CommutativeLocks();
   
   public static void setSnaptime(IteratorSetting cfg, long time) {
     if (time < 0 || (ColumnConstants.PREFIX_MASK & time) != 0) {
@@ -55,6 +61,22 @@ public class PrewriteIterator implements SortedKeyValueIterator<Key,Value> {
   public static void enableAckCheck(IteratorSetting cfg) {
     cfg.addOption(CHECK_ACK_OPT, "true");
   }
+
+  /**
+   * Checks if a commutative lock can be written. Deltas do not conflict with writes or with other commutative locks, only with locks that are not
+   * commutative and with the rollback of their own transaction.
+   */
+  public static void enableDelta(IteratorSetting cfg) {
+    cfg.addOption(DELTA_OPT, "true");
+  }
+
+  /**
+   * Checks that the latest committed value of the column is a long, so that a delta can be added to it. A column whose value is not a long stops at
+   * its data.
+   */
+  public static void enableLongCheck(IteratorSetting cfg) {
+    cfg.addOption(LONG_CHECK_OPT, "true");
+  }
   
   @Override
   public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
@@ -63,6 +85,12 @@ public class PrewriteIterator implements SortedKeyValueIterator<Key,Value> {
     if (options.containsKey(CHECK_ACK_OPT)) {
       this.checkAck = Boolean.parseBoolean(options.get(CHECK_ACK_OPT));
     }
+    if (options.containsKey(DELTA_OPT)) {
+      this.delta = Boolean.parseBoolean(options.get(DELTA_OPT));
+    }
+    if (options.containsKey(LONG_CHECK_OPT)) {
+      this.checkLong = Boolean.parseBoolean(options.get(LONG_CHECK_OPT));
+    }
   }
   
   @Override
@@ -94,6 +122,9 @@ public class PrewriteIterator implements SortedKeyValueIterator<Key,Value> {
     
     long invalidationTime = -1;
     long firstWrite = -1;
+    // data of the latest committed write, if it is a value instead of a delta
+    long latestData = -1;
+    commutativeLocks.clear();
     
     hasTop = false;
     while (source.hasTop() && curCol.equals(source.getTopKey(), PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
@@ -111,33 +142,52 @@ public class PrewriteIterator implements SortedKeyValueIterator<Key,Value> {
         
         if (firstWrite == -1) {
           firstWrite = ts;
+          if (!WriteValue.isDelta(source.getTopValue().get()))
+            latestData = timePtr;
         }
+
+        commutativeLocks.addWrite(source.getTopValue().get());
         
-        if (ts >= snaptime) {
+        if (ts >= snaptime && !delta) {
           hasTop = true;
           return;
         }
         
       } else if (colType == ColumnConstants.DEL_LOCK_PREFIX) {
         long timePtr = DelLockValue.getTimestamp(source.getTopValue().get());
-        
+
+        commutativeLocks.addDelLock(source.getTopValue().get());
+
         if (timePtr > invalidationTime) {
           invalidationTime = timePtr;
           
           // this delete marker will hide locks, so can not let a lock be written before it
           // TODO need unit test for this iterator... for this case
-          if (timePtr >= snaptime) {
+          if (timePtr >= snaptime && !delta) {
             hasTop = true;
             return;
           }
         }
+
+        if (delta && timePtr == snaptime) {
+          // a commutative lock is not hidden by rollbacks of other transactions, only by the rollback of its own
+          hasTop = true;
+          return;
+        }
       } else if (colType == ColumnConstants.LOCK_PREFIX) {
-        if (ts > invalidationTime) {
+        boolean commutative = CommutativeLocks.isCommutative(source.getTopValue().get());
+        if (commutative ? !delta && !commutativeLocks.isResolved(ts) : ts > invalidationTime) {
           // nothing supersedes this lock, therefore the column is locked
           hasTop = true;
           return;
         }
       } else if (colType == ColumnConstants.DATA_PREFIX) {
+        if (checkLong && latestData != -1 && ts > latestData) {
+          source.next();
+          continue;
+        }
+        if (checkLong && ts == latestData && !DeltaValue.isLong(source.getTopValue().get()))
+          hasTop = true;
         // can stop looking
         return;
       } else if (colType == ColumnConstants.ACK_PREFIX) {
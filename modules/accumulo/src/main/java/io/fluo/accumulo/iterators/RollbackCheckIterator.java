@@ -37,9 +37,11 @@ import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
  */
 public class RollbackCheckIterator implements SortedKeyValueIterator<Key,Value> {
   private static final String TIMESTAMP_OPT = "timestampOpt";
+  private static final String RANGE_TIMESTAMP_OPT = "rangeTimestampOpt";
   
   private SortedKeyValueIterator<Key,Value> source;
   private long lockTime;
+  private boolean lockTimePerRange = false;
   
   boolean hasTop = false;
   boolean checkAck = false;
@@ -50,11 +52,34 @@ public class RollbackCheckIterator implements SortedKeyValueIterator<Key,Value>
     }
     cfg.addOption(TIMESTAMP_OPT, time + "");
   }
+
+  /**
+   * Check each range for the lock time in the timestamp of its start key instead of one lock time for all ranges, so one batch scan can check the
+   * primary columns of many transactions. Ranges must be created with {@link #createRange(Key, long)}.
+   */
+  public static void setLocktimePerRange(IteratorSetting cfg) {
+    cfg.addOption(RANGE_TIMESTAMP_OPT, "true");
+  }
+
+  /**
+   * @return a range over the column of the given key that checks for a lock at the given time, when the lock time is set per range
+   */
+  public static Range createRange(Key col, long lockTime) {
+    if (lockTime < 0 || (ColumnConstants.PREFIX_MASK & lockTime) != 0) {
+      throw new IllegalArgumentException();
+    }
+    Key start = new Key(col);
+    start.setTimestamp(lockTime);
+    return new Range(start, true, col.followingKey(PartialKey.ROW_COLFAM_COLQUAL_COLVIS), false);
+  }
   
   @Override
   public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
     this.source = source;
-    this.lockTime = Long.parseLong(options.get(TIMESTAMP_OPT));
+    if (options.containsKey(RANGE_TIMESTAMP_OPT))
+      this.lockTimePerRange = Boolean.parseBoolean(options.get(RANGE_TIMESTAMP_OPT));
+    else
+      this.lockTime = Long.parseLong(options.get(TIMESTAMP_OPT));
   }
   
   @Override
@@ -69,7 +94,18 @@ public class RollbackCheckIterator implements SortedKeyValueIterator<Key,Value>
   
   @Override
   public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
-    IteratorUtil.maximizeStartKeyTimeStamp(range);
+    if (lockTimePerRange) {
+      if (!range.isStartKeyInclusive()) {
+        // continuing a range after the one entry it returned
+        hasTop = false;
+        return;
+      }
+      lockTime = range.getStartKey().getTimestamp();
+      // the timestamp of the start key only carries the lock time, the whole column is checked
+      range = IteratorUtil.maximizeStartKeyTimeStamp(range);
+    } else {
+      IteratorUtil.maximizeStartKeyTimeStamp(range);
+    }
 
     source.seek(range, columnFamilies, inclusive);
     
@@ -115,7 +151,13 @@ public class RollbackCheckIterator implements SortedKeyValueIterator<Key,Value>
         }
 
       } else if (colType == ColumnConstants.LOCK_PREFIX) {
-        if (ts > invalidationTime) {
+        if (CommutativeLocks.isCommutative(source.getTopValue().get())) {
+          // many commutative locks can exist at once, only the one being checked matters
+          if (ts == lockTime) {
+            hasTop = true;
+            return;
+          }
+        } else if (ts > invalidationTime) {
           // nothing supersedes this lock, therefore the column is locked
           hasTop = true;
           return;
@@ -15,13 +15,23 @@
  */
 package io.fluo.accumulo.iterators;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import io.fluo.accumulo.util.ColumnConstants;
 import io.fluo.accumulo.values.DelLockValue;
+import io.fluo.accumulo.values.DeltaValue;
 import io.fluo.accumulo.values.WriteValue;
+import io.fluo.api.data.Column;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.data.ByteSequence;
@@ -31,102 +41,278 @@ import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.commons.codec.binary.Base64;
 
 /**
- * 
+ * Returns the value of each column as of a snapshot time, or the lock that keeps it from being read. When the newest visible write of a column is a
+ * delta, the data of all visible deltas and of the write they were added to is summed and returned as one value.
  */
 public class SnapshotIterator implements SortedKeyValueIterator<Key,Value> {
   
   private static final String TIMESTAMP_OPT = "timestampOpt";
+  private static final String UNCHANGED_SINCE_OPT = "unchangedSinceOpt";
+  private static final String COLUMNS_OPT = "columnsOpt";
   private static final ByteSequence NOTIFY_CF_BS = new ArrayByteSequence(ColumnConstants.NOTIFY_CF.toArray());
+  // how many keys to step over when skipping before seeking, stepping is cheaper than seeking when only a few keys are skipped
+  static final int STEPS_BEFORE_SEEK = 10;
   
   private SortedKeyValueIterator<Key,Value> source;
   private long snaptime;
+  private long unchangedSince = Long.MAX_VALUE;
+  // family, qualifier and visibility of the columns to return, null when all columns are returned
+  private Map<ByteSequence,Map<ByteSequence,Set<ByteSequence>>> columns = null;
   private boolean hasTop = false;
+
+  private Range range;
+  private Collection<ByteSequence> columnFamilies;
+  private boolean inclusive;
+  // set when a skip went past the end of the range
+  private boolean pastRange = false;
   
   private final Key curCol = new Key();
+  private final CommutativeLocks commutativeLocks = new CommutativeLocks();
+  // pointers to the data of the delta writes visible to the snapshot
+  private final HashSet<Long> deltaPointers = new HashSet<>();
+  // the sum of deltas and the value they were added to, when the newest visible write of a column is a delta
+  private Key combinedKey = null;
+  private Value combinedValue = null;
   
   private void findTop() throws IOException {
-    while (source.hasTop()) {
+    combinedKey = null;
+    combinedValue = null;
+
+    while (sourceHasTop()) {
       long invalidationTime = -1;
       long dataPointer = -1;
-      
-      if (source.getTopKey().getColumnFamilyData().equals(NOTIFY_CF_BS)) {
-        source.next();
+      // set when the newest visible write is a delta, older visible deltas are added up until a write that is not a delta
+      boolean combining = false;
+      boolean deltaChain = false;
+      long basePointer = -1;
+      long minPointer = Long.MAX_VALUE;
+      long maxPointer = -1;
+      long sum = 0;
+
+      curCol.set(source.getTopKey());
+
+      if (columns != null && !isFetched(curCol)) {
+        skipColumn();
         continue;
       }
 
-      curCol.set(source.getTopKey());
+      commutativeLocks.clear();
+      deltaPointers.clear();
       
-      while (source.hasTop() && curCol.equals(source.getTopKey(), PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
+      while (sourceHasTop() && curCol.equals(source.getTopKey(), PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
         long colType = source.getTopKey().getTimestamp() & ColumnConstants.PREFIX_MASK;
         long ts = source.getTopKey().getTimestamp() & ColumnConstants.TIMESTAMP_MASK;
         
         if (colType == ColumnConstants.TX_DONE_PREFIX) {
-          
+          // tx done markers are only used by transactions resolving locks
+          skipTo(columnKey(ColumnConstants.WRITE_PREFIX | ColumnConstants.TIMESTAMP_MASK));
+          continue;
         } else if (colType == ColumnConstants.WRITE_PREFIX) {
           // TODO check of truncated writes
           
-          long timePtr = WriteValue.getTimestamp(source.getTopValue().get());
+          byte[] val = source.getTopValue().get();
+          long timePtr = WriteValue.getTimestamp(val);
           
           if (timePtr > invalidationTime)
             invalidationTime = timePtr;
 
+          commutativeLocks.addWrite(val);
+
           if (dataPointer == -1) {
-            if (ts <= snaptime)
+            if (ts <= snaptime) {
+              if (ts > unchangedSince) {
+                // column changed after the unchanged since time, so skip it
+                skipColumn();
+                break;
+              }
               dataPointer = timePtr;
-            else if (WriteValue.isTruncated(source.getTopValue().get()))
+              if (WriteValue.isDelta(val)) {
+                combining = true;
+                deltaChain = true;
+                deltaPointers.add(timePtr);
+                minPointer = timePtr;
+                maxPointer = timePtr;
+              }
+            } else if (WriteValue.isTruncated(val))
               return;
+          } else if (deltaChain) {
+            // older writes are visible when a newer one is, garbage collection folds deltas into the write it truncates at
+            if (WriteValue.isDelta(val)) {
+              deltaPointers.add(timePtr);
+            } else {
+              basePointer = timePtr;
+              deltaChain = false;
+            }
+            minPointer = Math.min(minPointer, timePtr);
+            maxPointer = Math.max(maxPointer, timePtr);
           }
         } else if (colType == ColumnConstants.DEL_LOCK_PREFIX) {
           long timePtr = DelLockValue.getTimestamp(source.getTopValue().get());
           
           if (timePtr > invalidationTime)
             invalidationTime = timePtr;
+
+          commutativeLocks.addDelLock(source.getTopValue().get());
         } else if (colType == ColumnConstants.LOCK_PREFIX) {
-          if (ts > invalidationTime && ts <= snaptime) {
-            // nothing supersedes this lock, therefore the column is locked
-            return;
+          // a lock at the snapshot time was taken by the transaction reading, such as a lock taken when reading a column for update
+          if (ts < snaptime) {
+            if (ts > invalidationTime) {
+              // nothing supersedes this lock, therefore the column is locked
+              return;
+            }
+
+            byte[] val = source.getTopValue().get();
+            if (CommutativeLocks.isCommutative(val) && !commutativeLocks.isResolved(ts)) {
+              // newer writes do not supersede a commutative lock, only its own write or rollback does
+              return;
+            }
           }
         } else if (colType == ColumnConstants.DATA_PREFIX) {
-          if (dataPointer == ts) {
+          if (combining) {
+            if (ts < minPointer)
+              break;
+            if (ts > maxPointer) {
+              skipTo(columnKey(ColumnConstants.DATA_PREFIX | maxPointer));
+              continue;
+            }
+            if (ts == basePointer || deltaPointers.contains(ts))
+              sum += DeltaValue.decode(source.getTopValue().get());
+          } else if (dataPointer == ts) {
             // found data for this column
             return;
+          } else if (dataPointer != -1 && ts > dataPointer) {
+            skipTo(columnKey(ColumnConstants.DATA_PREFIX | dataPointer));
+            continue;
+          } else {
+            // nothing visible in this column
+            // TODO handle case where dataPointer >=0, but no data was found
+            skipColumn();
+            break;
           }
-          
-          // TODO could possibly seek to next col when ts < dataPointer
         } else if (colType == ColumnConstants.ACK_PREFIX) {
-          
+          // acks are not needed to read a snapshot and all locks were seen, so go to the data
+          if (combining) {
+            skipTo(columnKey(ColumnConstants.DATA_PREFIX | maxPointer));
+          } else if (dataPointer != -1) {
+            skipTo(columnKey(ColumnConstants.DATA_PREFIX | dataPointer));
+          } else {
+            skipColumn();
+            break;
+          }
+          continue;
         } else {
           throw new IllegalArgumentException();
         }
         
-        // TODO handle case where dataPointer >=0, but no data was found
         source.next();
       }
+
+      if (combining) {
+        combinedKey = new Key(curCol);
+        combinedKey.setTimestamp(ColumnConstants.DATA_PREFIX | dataPointer);
+        combinedValue = new Value(DeltaValue.encode(sum));
+        skipColumn();
+        return;
+      }
     }
   }
   
+  private void skipColumn() throws IOException {
+    skipTo(curCol.followingKey(PartialKey.ROW_COLFAM_COLQUAL_COLVIS));
+  }
+
+  /**
+   * Positions the source at the first key at or after the target. Columns can have many versions, so after stepping over a few keys the source is seeked to
+   * the target instead.
+   */
+  private void skipTo(Key target) throws IOException {
+    int steps = 0;
+    while (sourceHasTop() && source.getTopKey().compareTo(target) < 0) {
+      if (steps == STEPS_BEFORE_SEEK) {
+        if (range.afterEndKey(target)) {
+          // nothing at or after the target is in the range
+          pastRange = true;
+        } else {
+          source.seek(new Range(target, true, range.getEndKey(), range.isEndKeyInclusive()), columnFamilies, inclusive);
+        }
+        return;
+      }
+      source.next();
+      steps++;
+    }
+  }
+
+  private Key columnKey(long ts) {
+    Key key = new Key(curCol);
+    key.setTimestamp(ts);
+    return key;
+  }
+
+  private boolean sourceHasTop() {
+    return !pastRange && source.hasTop();
+  }
+
+  private boolean isFetched(Key col) {
+    Map<ByteSequence,Set<ByteSequence>> qualifiers = columns.get(col.getColumnFamilyData());
+    if (qualifiers == null)
+      return false;
+    Set<ByteSequence> visibilities = qualifiers.get(col.getColumnQualifierData());
+    return visibilities != null && visibilities.contains(col.getColumnVisibilityData());
+  }
+
+  private static Map<ByteSequence,Map<ByteSequence,Set<ByteSequence>>> decodeColumns(String encoded) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decodeBase64(encoded.getBytes(StandardCharsets.UTF_8))));
+
+    Map<ByteSequence,Map<ByteSequence,Set<ByteSequence>>> decoded = new HashMap<>();
+    int num = in.readInt();
+    for (int i = 0; i < num; i++) {
+      Column col = new Column();
+      col.readFields(in);
+
+      ByteSequence fam = new ArrayByteSequence(col.getFamily().toArray());
+      Map<ByteSequence,Set<ByteSequence>> qualifiers = decoded.get(fam);
+      if (qualifiers == null) {
+        qualifiers = new HashMap<>();
+        decoded.put(fam, qualifiers);
+      }
+
+      ByteSequence qual = new ArrayByteSequence(col.getQualifier().toArray());
+      Set<ByteSequence> visibilities = qualifiers.get(qual);
+      if (visibilities == null) {
+        visibilities = new HashSet<>();
+        qualifiers.put(qual, visibilities);
+      }
+
+      visibilities.add(new ArrayByteSequence(col.getVisibility().toArray()));
+    }
+
+    return decoded;
+  }
+
   @Override
   public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
     this.source = source;
     this.snaptime = Long.parseLong(options.get(TIMESTAMP_OPT));
+    if (options.containsKey(UNCHANGED_SINCE_OPT))
+      this.unchangedSince = Long.parseLong(options.get(UNCHANGED_SINCE_OPT));
+    if (options.containsKey(COLUMNS_OPT))
+      this.columns = decodeColumns(options.get(COLUMNS_OPT));
     // TODO could require client to send version as a sanity check
   }
   
   @Override
   public boolean hasTop() {
-    return hasTop && source.hasTop();
+    return hasTop && (combinedKey != null || sourceHasTop());
   }
   
   @Override
   public void next() throws IOException {
-    Key nextCol = source.getTopKey().followingKey(PartialKey.ROW_COLFAM_COLQUAL_COLVIS);
-    
-    // TODO seek (consider data size)
-    while (source.hasTop() && source.getTopKey().compareTo(nextCol) < 0) {
-      source.next();
-    }
+    // the source is already past a combined column
+    if (combinedKey == null)
+      skipTo(source.getTopKey().followingKey(PartialKey.ROW_COLFAM_COLQUAL_COLVIS));
     
     findTop();
     
@@ -146,7 +332,22 @@ public class SnapshotIterator implements SortedKeyValueIterator<Key,Value> {
       }
     }
     
-    // TODO could possibly exclude notification locality group
+    // notifications are never part of a snapshot, excluding their family keeps the notify locality group from being read
+    if (inclusive) {
+      if (columnFamilies.contains(NOTIFY_CF_BS)) {
+        columnFamilies = new HashSet<>(columnFamilies);
+        columnFamilies.remove(NOTIFY_CF_BS);
+      }
+    } else if (!columnFamilies.contains(NOTIFY_CF_BS)) {
+      columnFamilies = new HashSet<>(columnFamilies);
+      columnFamilies.add(NOTIFY_CF_BS);
+    }
+
+    this.range = range;
+    this.columnFamilies = columnFamilies;
+    this.inclusive = inclusive;
+    pastRange = false;
+
     source.seek(range, columnFamilies, inclusive);
     
     findTop();
@@ -154,11 +355,15 @@ public class SnapshotIterator implements SortedKeyValueIterator<Key,Value> {
   
   @Override
   public Key getTopKey() {
+    if (combinedKey != null)
+      return combinedKey;
     return source.getTopKey();
   }
   
   @Override
   public Value getTopValue() {
+    if (combinedValue != null)
+      return combinedValue;
     return source.getTopValue();
   }
   
@@ -174,4 +379,33 @@ public class SnapshotIterator implements SortedKeyValueIterator<Key,Value> {
     }
     cfg.addOption(TIMESTAMP_OPT, time + "");
   }
+
+  /**
+   * Only return data for columns whose value as of the snapshot time was committed at or before the given time. Those values are the same for any
+   * snapshot time between the two, so one scan can read data for many transactions with start timestamps in that range.
+   */
+  public static void setUnchangedSince(IteratorSetting cfg, long time) {
+    if (time < 0 || (ColumnConstants.PREFIX_MASK & time) != 0) {
+      throw new IllegalArgumentException();
+    }
+    cfg.addOption(UNCHANGED_SINCE_OPT, time + "");
+  }
+
+  /**
+   * Only return data for the given columns. Unlike columns fetched by a scanner, the visibility of a column must match too, so columns with other
+   * visibilities are not sent to the client.
+   */
+  public static void setColumns(IteratorSetting cfg, Collection<Column> columns) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    try {
+      out.writeInt(columns.size());
+      for (Column col : columns)
+        col.write(out);
+      out.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    cfg.addOption(COLUMNS_OPT, new String(Base64.encodeBase64(baos.toByteArray()), StandardCharsets.UTF_8));
+  }
 }
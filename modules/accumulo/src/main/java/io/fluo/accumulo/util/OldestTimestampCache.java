@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.accumulo.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the oldest active timestamp for all garbage collection iterators running in a process, such as a tablet server. Reads the timestamp the
+ * oracle leader publishes at {@link ZookeeperConstants#transactorOldestTsPath(String)} using one zookeeper session per zookeeper connect string.
+ * Falls back to scanning all transactor timestamps with {@link ZookeeperUtil#getOldestTimestamp(ZooKeeper, String)} when nothing has been
+ * published.
+ * <p/>
+ * The oldest active timestamp only increases, so a cached value is always safe to garbage collect with. It may just keep some versions longer than
+ * needed.
+ */
+public class OldestTimestampCache {
+
+  private static final Logger log = LoggerFactory.getLogger(OldestTimestampCache.class);
+
+  private static class CachedTimestamp {
+    long timestamp;
+    long readTime = 0;
+  }
+
+  private static final Map<String,ZooKeeper> sessions = new HashMap<>();
+  private static final Map<String,CachedTimestamp> cache = new HashMap<>();
+
+  private OldestTimestampCache() {}
+
+  /**
+   * @param zookeepers Zookeeper connection string
+   * @param zkPath Zookeeper root path
+   * @return Oldest active timestamp, read from zookeeper at most once per {@link ZookeeperConstants#ZK_UPDATE_PERIOD_MS}, or oldest possible ts (-1)
+   *         if it could not be read
+   */
+  public static long getOldestTimestamp(String zookeepers, String zkPath) {
+    CachedTimestamp cached;
+    synchronized (cache) {
+      String key = zookeepers + zkPath;
+      cached = cache.get(key);
+      if (cached == null) {
+        cached = new CachedTimestamp();
+        cache.put(key, cached);
+      }
+    }
+
+    // concurrent callers wait for one read rather than all reading from zookeeper
+    synchronized (cached) {
+      long now = System.currentTimeMillis();
+      if (cached.readTime == 0 || now - cached.readTime >= ZookeeperConstants.ZK_UPDATE_PERIOD_MS) {
+        long ts = readOldestTimestamp(zookeepers, zkPath);
+        if (ts == ZookeeperUtil.OLDEST_POSSIBLE)
+          return ts;
+        cached.timestamp = ts;
+        cached.readTime = now;
+      }
+      return cached.timestamp;
+    }
+  }
+
+  private static long readOldestTimestamp(String zookeepers, String zkPath) {
+    ZooKeeper zk;
+    try {
+      zk = getSession(zookeepers);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    try {
+      return LongUtil.fromByteArray(zk.getData(ZookeeperConstants.transactorOldestTsPath(zkPath), false, null));
+    } catch (KeeperException.NoNodeException e) {
+      return ZookeeperUtil.getOldestTimestamp(zk, zkPath);
+    } catch (KeeperException | InterruptedException e) {
+      log.error("Failed to get published oldest timestamp from Zookeeper", e);
+      return ZookeeperUtil.OLDEST_POSSIBLE;
+    }
+  }
+
+  private static ZooKeeper getSession(String zookeepers) throws IOException {
+    synchronized (sessions) {
+      ZooKeeper zk = sessions.get(zookeepers);
+      if (zk == null || !zk.getState().isAlive()) {
+        zk = new ZooKeeper(zookeepers, 30000, null);
+        sessions.put(zookeepers, zk);
+      }
+      return zk;
+    }
+  }
+}
@@ -38,6 +38,8 @@ public class ZookeeperConstants {
   public static final String TRANSACTOR_COUNT = TRANSACTOR + "/count";
   public static final String TRANSACTOR_NODES = TRANSACTOR + "/nodes";
   public static final String TRANSACTOR_TIMESTAMPS = TRANSACTOR + "/timestamps";
+  // oldest active timestamp of all transactors, periodically published by the oracle leader for garbage collection
+  public static final String TRANSACTOR_OLDEST_TIMESTAMP = TRANSACTOR + "/oldest-timestamp";
   
   // Time period that each client will update ZK with their oldest active timestamp
   // If period is too short, Zookeeper may be overloaded.  If too long, garbage collection
@@ -88,6 +90,10 @@ public class ZookeeperConstants {
     return zkPath + TRANSACTOR_TIMESTAMPS;
   }
   
+  public static final String transactorOldestTsPath(String zkPath) {
+    return zkPath + TRANSACTOR_OLDEST_TIMESTAMP;
+  }
+
   public static final String transactorNodesRoot(String zkPath) {
     return zkPath + TRANSACTOR_NODES;
   }  
@@ -41,47 +41,10 @@ public class ZookeeperUtil {
    * @return Oldest active timestamp or oldest possible ts (-1) if not found
    */
   public static long getOldestTimestamp(String zookeepers, String zkPath) {
-    long oldestTs = Long.MAX_VALUE;
-    boolean nodeFound = false;
-
     ZooKeeper zk = null;
     try {
       zk = new ZooKeeper(zookeepers, 30000, null);
-
-      // Try to find oldest active timestamp of transactors 
-      String tsRootPath = ZookeeperConstants.transactorTsRoot(zkPath);
-      try {
-        if (zk.exists(tsRootPath, false) != null) { 
-          for (String child : zk.getChildren(tsRootPath, false)) {
-            Long ts = LongUtil.fromByteArray(zk.getData(tsRootPath+"/"+child, false, null));
-            nodeFound = true;
-            if (ts < oldestTs) {
-              oldestTs = ts;
-            }
-          }
-        }
-      } catch (Exception e) {
-        log.error("Failed to get oldest timestamp of transactors from Zookeeper", e);
-        return OLDEST_POSSIBLE;
-      }
-
-      // If no transactors found, lookup oldest active timestamp set by oracle in zookeeper
-      if (nodeFound == false) {
-        try {
-          byte[] d = zk.getData(ZookeeperConstants.oracleCurrentTimestampPath(zkPath), false, null);
-          oldestTs = LongUtil.fromByteArray(d);
-          nodeFound = true;
-        } catch (KeeperException | InterruptedException e) {
-          log.error("Failed to get oldest timestamp of Oracle from Zookeeper", e);
-          return OLDEST_POSSIBLE;
-        }
-      }
-
-      // Return oldest possible timestamp if no node found
-      if (!nodeFound) {
-        return OLDEST_POSSIBLE;
-      }
-      return oldestTs;
+      return getOldestTimestamp(zk, zkPath);
     } catch (IOException e) {
       throw new IllegalStateException(e);
     } finally {
@@ -94,4 +57,51 @@ public class ZookeeperUtil {
       }
     }
   }
+
+  /**
+   * Retrieves the oldest active timestamp in Fluo by scanning zookeeper using an existing session
+   * 
+   * @param zk Zookeeper session
+   * @param zkPath Zookeeper root path
+   * @return Oldest active timestamp or oldest possible ts (-1) if not found
+   */
+  public static long getOldestTimestamp(ZooKeeper zk, String zkPath) {
+    long oldestTs = Long.MAX_VALUE;
+    boolean nodeFound = false;
+
+    // Try to find oldest active timestamp of transactors 
+    String tsRootPath = ZookeeperConstants.transactorTsRoot(zkPath);
+    try {
+      if (zk.exists(tsRootPath, false) != null) { 
+        for (String child : zk.getChildren(tsRootPath, false)) {
+          Long ts = LongUtil.fromByteArray(zk.getData(tsRootPath+"/"+child, false, null));
+          nodeFound = true;
+          if (ts < oldestTs) {
+            oldestTs = ts;
+          }
+        }
+      }
+    } catch (Exception e) {
+      log.error("Failed to get oldest timestamp of transactors from Zookeeper", e);
+      return OLDEST_POSSIBLE;
+    }
+
+    // If no transactors found, lookup oldest active timestamp set by oracle in zookeeper
+    if (nodeFound == false) {
+      try {
+        byte[] d = zk.getData(ZookeeperConstants.oracleCurrentTimestampPath(zkPath), false, null);
+        oldestTs = LongUtil.fromByteArray(d);
+        nodeFound = true;
+      } catch (KeeperException | InterruptedException e) {
+        log.error("Failed to get oldest timestamp of Oracle from Zookeeper", e);
+        return OLDEST_POSSIBLE;
+      }
+    }
+
+    // Return oldest possible timestamp if no node found
+    if (!nodeFound) {
+      return OLDEST_POSSIBLE;
+    }
+    return oldestTs;
+  }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.accumulo.values;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the data of delta writes and of the values they are added to. Values are longs encoded as decimal strings, the same way the string type layer
+ * encodes them, so a column updated with deltas can be read like any other column.
+ */
+public class DeltaValue {
+
+  private DeltaValue() {}
+
+  public static byte[] encode(long l) {
+    return Long.toString(l).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the long encoded in the data
+   * @throws IllegalArgumentException
+   *           if the data does not encode a long, deltas can not be added to it
+   */
+  public static long decode(byte[] data) {
+    try {
+      return Long.parseLong(new String(data, StandardCharsets.UTF_8));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Value is not a long that deltas can be added to : " + new String(data, StandardCharsets.UTF_8), e);
+    }
+  }
+
+  /**
+   * @return true if the data encodes a long that deltas can be added to
+   */
+  public static boolean isLong(byte[] data) {
+    try {
+      Long.parseLong(new String(data, StandardCharsets.UTF_8));
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
@@ -32,6 +32,7 @@ public class LockValue {
   private final boolean isWrite;
   private final boolean isDelete;
   private final boolean isTrigger;
+  private final boolean isDelta;
   private final Long transactor;
 
   public LockValue(byte[] enc) {
@@ -45,6 +46,7 @@ public class LockValue {
     this.isWrite = (fields.get(4).byteAt(0) & 0x1) == 0x1;
     this.isDelete = (fields.get(4).byteAt(0) & 0x2) == 0x2;
     this.isTrigger = (fields.get(4).byteAt(0) & 0x4) == 0x4;
+    this.isDelta = (fields.get(4).byteAt(0) & 0x8) == 0x8;
     this.transactor = ByteArrayUtil.decodeLong(fields.get(5).toArray());    
   }
   
@@ -68,11 +70,27 @@ public class LockValue {
     return isTrigger;
   }
   
+  public boolean isDelta() {
+    return isDelta;
+  }
+
+  /**
+   * A lock on a delta outside the row that triggered its transaction does not conflict with other such locks, so a column can have many of them at once.
+   * Each one is only resolved by a write or rollback that points to its timestamp.
+   */
+  public boolean isCommutative() {
+    return isDelta && !isTrigger;
+  }
+
   public Long getTransactor() {
     return transactor;
   }
 
   public static byte[] encode(Bytes prow, Column pcol, boolean isWrite, boolean isDelete, boolean isTrigger, Long transactor) {
+    return encode(prow, pcol, isWrite, isDelete, isTrigger, false, transactor);
+  }
+
+  public static byte[] encode(Bytes prow, Column pcol, boolean isWrite, boolean isDelete, boolean isTrigger, boolean isDelta, Long transactor) {
     byte bools[] = new byte[1];
     bools[0] = 0;
     if (isWrite)
@@ -81,6 +99,8 @@ public class LockValue {
       bools[0] |= 0x2;
     if (isTrigger)
       bools[0] |= 0x4;
+    if (isDelta)
+      bools[0] |= 0x8;
     return Bytes.concat(prow, pcol.getFamily(), pcol.getQualifier(), pcol.getVisibility(), 
         Bytes.wrap(bools), Bytes.wrap(ByteArrayUtil.encode(transactor))).toArray();
   }
@@ -88,6 +108,6 @@ public class LockValue {
   @Override
   public String toString() {
     return prow + " " + pcol + " " + (isWrite ? "WRITE" : "NOT_WRITE") + " " + (isDelete ? "DELETE" : "NOT_DELETE") 
-        + " " + (isTrigger ? "TRIGGER" : "NOT_TRIGGER") + " " + LongUtil.toMaxRadixString(transactor);
+        + " " + (isTrigger ? "TRIGGER" : "NOT_TRIGGER") + (isDelta ? " DELTA" : "") + " " + LongUtil.toMaxRadixString(transactor);
   }
 }
@@ -23,11 +23,13 @@ import io.fluo.accumulo.util.ByteArrayUtil;
 public class WriteValue {
   private final boolean primary;
   private final boolean truncated;
+  private final boolean delta;
   private final long ts;
   
   public WriteValue(byte[] data) {
     primary = isPrimary(data);
     truncated = isTruncated(data);
+    delta = isDelta(data);
     ts = getTimestamp(data);
   }
   
@@ -39,19 +41,30 @@ public class WriteValue {
     return truncated;
   }
 
+  public boolean isDelta() {
+    return delta;
+  }
+
   public long getTimestamp() {
     return ts;
   }
 
   @Override
   public String toString() {
-    return ts + (truncated ? " TRUNCATION" : "") + " " + (primary ? "PRIMARY" : "");
+    return ts + (truncated ? " TRUNCATION" : "") + (delta ? " DELTA" : "") + " " + (primary ? "PRIMARY" : "");
   }
 
   public static boolean isTruncated(byte[] data) {
     return (data[0] & 0x02) == 2;
   }
   
+  /**
+   * @return true if the data written is a delta that is added to the value of older writes
+   */
+  public static boolean isDelta(byte[] data) {
+    return (data[0] & 0x04) == 4;
+  }
+
   public static boolean isPrimary(byte[] data) {
     return (data[0] & 0x01) == 1;
   }
@@ -61,8 +74,12 @@ public class WriteValue {
   }
 
   public static byte[] encode(long ts, boolean primary, boolean truncated) {
+    return encode(ts, primary, truncated, false);
+  }
+
+  public static byte[] encode(long ts, boolean primary, boolean truncated, boolean delta) {
     byte ba[] = new byte[9];
-    ba[0] = (byte) ((primary ? 1 : 0) | (truncated ? 2 : 0));
+    ba[0] = (byte) ((primary ? 1 : 0) | (truncated ? 2 : 0) | (delta ? 4 : 0));
     ByteArrayUtil.encode(ba, 1, ts);
     return ba;
   }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import io.fluo.accumulo.util.ColumnConstants;
+import io.fluo.accumulo.values.WriteValue;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.core.iterators.system.ColumnFamilySkippingIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures scanning columns with deep version stacks through SnapshotIterator. Run it from the accumulo module after {@code mvn test-compile} with the
+ * main method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SnapshotIteratorBenchmark {
+
+  private static final int ROWS = 10;
+  private static final int COLS = 10;
+
+  @Param({"1", "10", "100", "1000"})
+  public int versions;
+
+  private TreeMap<Key,Value> data;
+
+  @Setup
+  public void createData() {
+    data = new TreeMap<>();
+    for (int r = 0; r < ROWS; r++) {
+      for (int c = 0; c < COLS; c++) {
+        String row = String.format("r%04d", r);
+        String col = String.format("c%04d", c);
+        for (int i = 1; i <= versions; i++) {
+          long startTs = i * 10;
+          long commitTs = startTs + 5;
+          data.put(new Key(row, "f", col, "", ColumnConstants.DATA_PREFIX | startTs), new Value(("value" + i).getBytes()));
+          data.put(new Key(row, "f", col, "", ColumnConstants.ACK_PREFIX | commitTs), new Value(new byte[0]));
+          data.put(new Key(row, "f", col, "", ColumnConstants.WRITE_PREFIX | commitTs), new Value(WriteValue.encode(startTs, false, false)));
+        }
+      }
+    }
+  }
+
+  private void scan(long snaptime, Blackhole bh) throws IOException {
+    IteratorSetting is = new IteratorSetting(10, SnapshotIterator.class);
+    SnapshotIterator.setSnaptime(is, snaptime);
+
+    SnapshotIterator si = new SnapshotIterator();
+    si.init(new ColumnFamilySkippingIterator(new SortedMapIterator(data)), is.getOptions(), null);
+    si.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    while (si.hasTop()) {
+      bh.consume(si.getTopValue());
+      si.next();
+    }
+  }
+
+  /**
+   * Reads the newest version of each column, skipping the older versions after it
+   */
+  @Benchmark
+  public void scanNewest(Blackhole bh) throws IOException {
+    scan(versions * 10 + 100, bh);
+  }
+
+  /**
+   * Reads the oldest version of each column, skipping the newer writes and data before it
+   */
+  @Benchmark
+  public void scanOldest(Blackhole bh) throws IOException {
+    scan(15, bh);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(SnapshotIteratorBenchmark.class.getSimpleName()).build()).run();
+  }
+}
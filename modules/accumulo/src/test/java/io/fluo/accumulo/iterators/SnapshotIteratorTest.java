@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import io.fluo.accumulo.util.ColumnConstants;
+import io.fluo.accumulo.values.DelLockValue;
+import io.fluo.accumulo.values.DeltaValue;
+import io.fluo.accumulo.values.LockValue;
+import io.fluo.accumulo.values.WriteValue;
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.core.iterators.system.ColumnFamilySkippingIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests SnapshotIterator over columns with more versions than it steps over before seeking
+ */
+public class SnapshotIteratorTest {
+
+  private static final int VERSIONS = SnapshotIterator.STEPS_BEFORE_SEEK * 10;
+
+  private static void put(TreeMap<Key,Value> data, String row, String col, long ts, byte[] val) {
+    data.put(new Key(row, "f", col, "", ts), new Value(val));
+  }
+
+  /**
+   * Adds versions of a column written by transactions that started at 10, 20, 30... and committed 5 later
+   */
+  private static void addVersions(TreeMap<Key,Value> data, String row, String col, int versions) {
+    for (int i = 1; i <= versions; i++) {
+      long startTs = i * 10;
+      long commitTs = startTs + 5;
+      put(data, row, col, ColumnConstants.DATA_PREFIX | startTs, ("v" + i).getBytes());
+      put(data, row, col, ColumnConstants.ACK_PREFIX | commitTs, new byte[0]);
+      put(data, row, col, ColumnConstants.WRITE_PREFIX | commitTs, WriteValue.encode(startTs, true, false));
+      put(data, row, col, ColumnConstants.TX_DONE_PREFIX | commitTs, new byte[0]);
+    }
+  }
+
+  private static TreeMap<Key,Value> createData() {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    for (String row : new String[] {"r1", "r2", "r3"})
+      for (String col : new String[] {"c1", "c2", "c3"})
+        addVersions(data, row, col, VERSIONS);
+    return data;
+  }
+
+  private static List<String> scan(TreeMap<Key,Value> data, long snaptime, Range range) throws IOException {
+    IteratorSetting is = new IteratorSetting(10, SnapshotIterator.class);
+    SnapshotIterator.setSnaptime(is, snaptime);
+    return scan(data, is, range);
+  }
+
+  private static List<String> scan(TreeMap<Key,Value> data, IteratorSetting is, Range range) throws IOException {
+    SnapshotIterator si = new SnapshotIterator();
+    si.init(new ColumnFamilySkippingIterator(new SortedMapIterator(data)), is.getOptions(), null);
+    si.seek(range, Collections.<ByteSequence> emptySet(), false);
+
+    List<String> results = new ArrayList<>();
+    while (si.hasTop()) {
+      Key k = si.getTopKey();
+      String val;
+      if ((k.getTimestamp() & ColumnConstants.PREFIX_MASK) == ColumnConstants.LOCK_PREFIX)
+        val = "LOCK";
+      else
+        val = si.getTopValue().toString();
+      String vis = k.getColumnVisibilityData().length() == 0 ? "" : "[" + k.getColumnVisibility() + "]";
+      results.add(k.getRow() + " " + k.getColumnQualifier() + vis + " " + val);
+      si.next();
+    }
+    return results;
+  }
+
+  private static Range columnRange(String row, String col) {
+    Key start = new Key(row, "f", col, "");
+    return new Range(start, true, start.followingKey(PartialKey.ROW_COLFAM_COLQUAL_COLVIS), false);
+  }
+
+  @Test
+  public void testDeepVersions() throws Exception {
+    TreeMap<Key,Value> data = createData();
+
+    Assert.assertEquals(Arrays.asList("r1 c1 v49", "r1 c2 v49", "r1 c3 v49", "r2 c1 v49", "r2 c2 v49", "r2 c3 v49", "r3 c1 v49", "r3 c2 v49", "r3 c3 v49"),
+        scan(data, 503, new Range()));
+
+    String newest = "v" + VERSIONS;
+    Assert.assertEquals(Arrays.asList("r1 c3 " + newest, "r2 c1 " + newest, "r2 c2 " + newest),
+        scan(data, VERSIONS * 10 + 100, new Range(new Key("r1", "f", "c3", ""), true, new Key("r2", "f", "c3", ""), false)));
+
+    Assert.assertEquals(Arrays.asList("r2 c2 v1"), scan(data, 15, columnRange("r2", "c2")));
+    Assert.assertEquals(Arrays.asList("r2 c2 v50"), scan(data, 505, columnRange("r2", "c2")));
+    Assert.assertEquals(Collections.emptyList(), scan(data, 12, new Range()));
+  }
+
+  @Test
+  public void testLocked() throws Exception {
+    TreeMap<Key,Value> data = createData();
+
+    long lockTs = VERSIONS * 10 + 10;
+    put(data, "r2", "c2", ColumnConstants.LOCK_PREFIX | lockTs, LockValue.encode(Bytes.wrap("r2"), new Column("f", "c2"), true, false, false, 1l));
+
+    Assert.assertEquals(Arrays.asList("r2 c1 v60", "r2 c2 v60", "r2 c3 v60"), scan(data, 605, new Range("r2")));
+    Assert.assertEquals(Arrays.asList("r2 c1 v" + VERSIONS, "r2 c2 LOCK", "r2 c3 v" + VERSIONS), scan(data, lockTs + 5, new Range("r2")));
+
+    // a rollback of the lock supersedes it
+    put(data, "r2", "c2", ColumnConstants.DEL_LOCK_PREFIX | lockTs, DelLockValue.encode(lockTs, true, true));
+    Assert.assertEquals(Arrays.asList("r2 c2 v" + VERSIONS), scan(data, lockTs + 5, columnRange("r2", "c2")));
+  }
+
+  @Test
+  public void testNotifications() throws Exception {
+    TreeMap<Key,Value> data = createData();
+    for (String row : new String[] {"r1", "r2", "r3"})
+      for (int i = 0; i < VERSIONS; i++)
+        data.put(new Key(row, ColumnConstants.NOTIFY_CF.toString(), "f:c" + i, "", i), new Value(new byte[0]));
+
+    Assert.assertEquals(Arrays.asList("r2 c1 v60", "r2 c2 v60", "r2 c3 v60"), scan(data, 605, new Range("r2")));
+
+    // the notify family is excluded even when fetched
+    IteratorSetting is = new IteratorSetting(10, SnapshotIterator.class);
+    SnapshotIterator.setSnaptime(is, 605);
+    SnapshotIterator si = new SnapshotIterator();
+    si.init(new ColumnFamilySkippingIterator(new SortedMapIterator(data)), is.getOptions(), null);
+    si.seek(new Range(), Arrays.<ByteSequence> asList(new ArrayByteSequence(ColumnConstants.NOTIFY_CF.toArray())), true);
+    Assert.assertFalse(si.hasTop());
+  }
+
+  @Test
+  public void testColumns() throws Exception {
+    TreeMap<Key,Value> data = createData();
+    for (String vis : new String[] {"A", "B"}) {
+      data.put(new Key("r2", "f", "c2", vis, ColumnConstants.DATA_PREFIX | 10), new Value(vis.getBytes()));
+      data.put(new Key("r2", "f", "c2", vis, ColumnConstants.WRITE_PREFIX | 15), new Value(WriteValue.encode(10, true, false)));
+    }
+
+    IteratorSetting is = new IteratorSetting(10, SnapshotIterator.class);
+    SnapshotIterator.setSnaptime(is, 505);
+    SnapshotIterator.setColumns(is, Arrays.asList(new Column("f", "c1"), new Column("f", "c2", "B"), new Column("g", "c2")));
+
+    Assert.assertEquals(Arrays.asList("r1 c1 v50", "r2 c1 v50", "r2 c2[B] B", "r3 c1 v50"), scan(data, is, new Range()));
+  }
+
+  @Test
+  public void testDeltas() throws Exception {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    put(data, "r1", "c1", ColumnConstants.DATA_PREFIX | 10, DeltaValue.encode(7));
+    put(data, "r1", "c1", ColumnConstants.WRITE_PREFIX | 15, WriteValue.encode(10, true, false));
+
+    for (int i = 2; i <= VERSIONS; i++) {
+      long startTs = i * 10;
+      long commitTs = startTs + 5;
+      put(data, "r1", "c1", ColumnConstants.DATA_PREFIX | startTs, DeltaValue.encode(1));
+      put(data, "r1", "c1", ColumnConstants.ACK_PREFIX | commitTs, new byte[0]);
+      put(data, "r1", "c1", ColumnConstants.WRITE_PREFIX | commitTs, WriteValue.encode(startTs, true, false, true));
+    }
+    addVersions(data, "r1", "c2", VERSIONS);
+
+    Assert.assertEquals(Arrays.asList("r1 c1 " + (7 + VERSIONS - 1), "r1 c2 v" + VERSIONS), scan(data, VERSIONS * 10 + 100, new Range()));
+    Assert.assertEquals(Arrays.asList("r1 c1 56", "r1 c2 v50"), scan(data, 505, new Range()));
+    Assert.assertEquals(Arrays.asList("r1 c1 7"), scan(data, 15, columnRange("r1", "c1")));
+  }
+}
@@ -22,6 +22,7 @@ import java.util.Set;
 import io.fluo.api.config.ScannerConfiguration;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.iterator.RowIterator;
 
 /**
@@ -45,6 +46,18 @@ public interface SnapshotBase {
    */
   public Map<Bytes,Map<Column,Bytes>> get(Collection<Bytes> rows, Set<Column> columns) throws Exception;
 
+  /**
+   * Given a map of rows to the {@link Column}s to read from each row, retrieves a map containing the values at those rows and {@link Column}s. All rows
+   * are read at once, rather than one after another. Only rows and columns that exist will be returned in map.
+   */
+  public Map<Bytes,Map<Column,Bytes>> get(Map<Bytes,Set<Column>> rowColumns) throws Exception;
+
+  /**
+   * Given a collection of {@link RowColumn}s, retrieves a map containing the values at those {@link RowColumn}s. All rows are read at once, rather than
+   * one after another. Only {@link RowColumn}s that exist will be returned in map.
+   */
+  public Map<RowColumn,Bytes> get(Collection<RowColumn> rowColumns) throws Exception;
+
   /**
    * Retrieves a {@link RowIterator} with the given {@link ScannerConfiguration}
    */
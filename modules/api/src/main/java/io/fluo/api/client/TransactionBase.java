@@ -39,4 +39,20 @@ public interface TransactionBase extends SnapshotBase {
    * Deletes the value at the given row and {@link Column}
    */
   public void delete(Bytes row, Column col);
+
+  /**
+   * Adds an amount to the long value, encoded as a decimal string, at the given row and {@link Column}. Transactions that only add to a column do not
+   * collide with each other or with transactions that set it. The value read for the column is the sum of all added amounts, including amounts this
+   * transaction added. A column that was set or deleted by this transaction can not be added to.
+   */
+  public void add(Bytes row, Column col, long amount) throws AlreadySetException;
+
+  /**
+   * Locks the given row and {@link Column} and then reads its value, instead of finding out at commit time that another transaction changed it.
+   * Transactions that would collide on the column fail here with a {@link io.fluo.api.exceptions.CommitException} before doing further work, and a
+   * transaction that locked the column can not collide on it when committing. The lock is released when the transaction commits or is closed.
+   * 
+   * @return the value of the column, or null if it has no value
+   */
+  public Bytes getForUpdate(Bytes row, Column col) throws Exception;
 }
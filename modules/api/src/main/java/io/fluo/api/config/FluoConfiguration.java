@@ -46,10 +46,12 @@ public class FluoConfiguration extends CompositeConfiguration {
   public static final String CLIENT_ZOOKEEPER_TIMEOUT_PROP = CLIENT_PREFIX + ".zookeeper.timeout";
   public static final String CLIENT_ZOOKEEPER_CONNECT_PROP = CLIENT_PREFIX + ".zookeeper.connect";
   public static final String CLIENT_CLASS_PROP = CLIENT_PREFIX + ".class";
+  public static final String CLIENT_SCAN_THREADS_PROP = CLIENT_PREFIX + ".scan.threads";
   public static final String CLIENT_ZOOKEEPER_ROOT_DEFAULT = "/fluo";
   public static final int CLIENT_ZOOKEEPER_TIMEOUT_DEFAULT = 30000;
   public static final String CLIENT_ZOOKEEPER_CONNECT_DEFAULT = "localhost";
   public static final String CLIENT_CLASS_DEFAULT = FLUO_PREFIX + ".core.client.FluoClientImpl";
+  public static final int CLIENT_SCAN_THREADS_DEFAULT = 1;
   
   // Administration
   private static final String ADMIN_PREFIX = FLUO_PREFIX + ".admin";
@@ -97,6 +99,19 @@ public class FluoConfiguration extends CompositeConfiguration {
   private static final String TRANSACTION_PREFIX = FLUO_PREFIX + ".tx";
   public static final String TRANSACTION_ROLLBACK_TIME_PROP = TRANSACTION_PREFIX + ".rollback.time";
   public static final long TRANSACTION_ROLLBACK_TIME_DEFAULT = 300000;
+  public static final String TRANSACTION_SPILL_THRESHOLD_MB_PROP = TRANSACTION_PREFIX + ".spill.threshold.mb";
+  public static final int TRANSACTION_SPILL_THRESHOLD_MB_DEFAULT = 0;
+  public static final String TRANSACTION_SPILL_DIR_PROP = TRANSACTION_PREFIX + ".spill.dir";
+  public static final String TRANSACTION_LAZY_ROLLBACK_PROP = TRANSACTION_PREFIX + ".lazy.rollback";
+  public static final boolean TRANSACTION_LAZY_ROLLBACK_DEFAULT = false;
+  public static final String TRANSACTION_ASYNC_COMMIT_PROP = TRANSACTION_PREFIX + ".async.commit";
+  public static final boolean TRANSACTION_ASYNC_COMMIT_DEFAULT = false;
+  public static final String TRANSACTION_ASYNC_BUFFER_MB_PROP = TRANSACTION_PREFIX + ".async.buffer.mb";
+  public static final int TRANSACTION_ASYNC_BUFFER_MB_DEFAULT = 64;
+  public static final String TRANSACTION_RETRY_MAX_BACKOFF_PROP = TRANSACTION_PREFIX + ".retry.max.backoff";
+  public static final long TRANSACTION_RETRY_MAX_BACKOFF_DEFAULT = 1000;
+  public static final String TRANSACTION_RETRY_SERIALIZE_HOT_PROP = TRANSACTION_PREFIX + ".retry.serialize.hot";
+  public static final boolean TRANSACTION_RETRY_SERIALIZE_HOT_DEFAULT = true;
   
   public FluoConfiguration() {
     super();
@@ -184,6 +199,20 @@ public class FluoConfiguration extends CompositeConfiguration {
   public String getClientClass() {
     return getString(CLIENT_CLASS_PROP, CLIENT_CLASS_DEFAULT);
   }
+
+  /**
+   * Sets the most threads a transaction uses to read many rows at once. A read never uses more threads than rows it reads.
+   */
+  public FluoConfiguration setScanThreads(int numThreads) {
+    if (numThreads <= 0)
+      throw new IllegalArgumentException("Must be positive " + numThreads);
+    setProperty(CLIENT_SCAN_THREADS_PROP, numThreads);
+    return this;
+  }
+
+  public int getScanThreads() {
+    return getInt(CLIENT_SCAN_THREADS_PROP, CLIENT_SCAN_THREADS_DEFAULT);
+  }
   
   /**
    * Sets Accumulo table.  This property only needs to 
@@ -274,6 +303,98 @@ public class FluoConfiguration extends CompositeConfiguration {
     return getLong(TRANSACTION_ROLLBACK_TIME_PROP, TRANSACTION_ROLLBACK_TIME_DEFAULT);
   }
 
+  /**
+   * Sets the size of writes a transaction buffers in memory before spilling them to local files. Zero, the default, never spills.
+   */
+  public FluoConfiguration setTransactionSpillThreshold(int thresholdMB) {
+    if (thresholdMB < 0 || thresholdMB > 1024)
+      throw new IllegalArgumentException("Must be between 0 and 1024 " + thresholdMB);
+    setProperty(TRANSACTION_SPILL_THRESHOLD_MB_PROP, thresholdMB);
+    return this;
+  }
+
+  public int getTransactionSpillThreshold() {
+    return getInt(TRANSACTION_SPILL_THRESHOLD_MB_PROP, TRANSACTION_SPILL_THRESHOLD_MB_DEFAULT);
+  }
+
+  /**
+   * Sets the local directory transactions spill writes to, defaults to the java temporary directory.
+   */
+  public FluoConfiguration setTransactionSpillDir(String dir) {
+    setProperty(TRANSACTION_SPILL_DIR_PROP, dir);
+    return this;
+  }
+
+  public String getTransactionSpillDir() {
+    return getString(TRANSACTION_SPILL_DIR_PROP, System.getProperty("java.io.tmpdir"));
+  }
+
+  /**
+   * When enabled, a transaction that fails to lock all of its columns only waits for its primary column to be rolled back. Its secondary locks are rolled
+   * back in the background, or by readers that find them first.
+   */
+  public FluoConfiguration setTransactionLazyRollback(boolean lazyRollback) {
+    setProperty(TRANSACTION_LAZY_ROLLBACK_PROP, lazyRollback);
+    return this;
+  }
+
+  public boolean getTransactionLazyRollback() {
+    return getBoolean(TRANSACTION_LAZY_ROLLBACK_PROP, TRANSACTION_LAZY_ROLLBACK_DEFAULT);
+  }
+
+  /**
+   * When enabled, a transaction's commit returns once its primary column is committed. Its other columns are committed in the background, or by readers
+   * that find them first.
+   */
+  public FluoConfiguration setTransactionAsyncCommit(boolean asyncCommit) {
+    setProperty(TRANSACTION_ASYNC_COMMIT_PROP, asyncCommit);
+    return this;
+  }
+
+  public boolean getTransactionAsyncCommit() {
+    return getBoolean(TRANSACTION_ASYNC_COMMIT_PROP, TRANSACTION_ASYNC_COMMIT_DEFAULT);
+  }
+
+  /**
+   * Sets the size of mutations that can be queued for background writes before transactions wait for them to be written.
+   */
+  public FluoConfiguration setTransactionAsyncBuffer(int bufferMB) {
+    if (bufferMB <= 0 || bufferMB > 1024)
+      throw new IllegalArgumentException("Must be between 1 and 1024 " + bufferMB);
+    setProperty(TRANSACTION_ASYNC_BUFFER_MB_PROP, bufferMB);
+    return this;
+  }
+
+  public int getTransactionAsyncBuffer() {
+    return getInt(TRANSACTION_ASYNC_BUFFER_MB_PROP, TRANSACTION_ASYNC_BUFFER_MB_DEFAULT);
+  }
+
+  /**
+   * Sets the longest time a transaction that failed to commit waits before it is retried. The wait grows randomly with each failed attempt.
+   */
+  public FluoConfiguration setTransactionRetryMaxBackoff(long time, TimeUnit tu) {
+    if (time < 0)
+      throw new IllegalArgumentException("Must be positive " + time);
+    setProperty(TRANSACTION_RETRY_MAX_BACKOFF_PROP, tu.toMillis(time));
+    return this;
+  }
+
+  public long getTransactionRetryMaxBackoff() {
+    return getLong(TRANSACTION_RETRY_MAX_BACKOFF_PROP, TRANSACTION_RETRY_MAX_BACKOFF_DEFAULT);
+  }
+
+  /**
+   * When enabled, retries of transactions that collided on a frequently contended column run one at a time within a process.
+   */
+  public FluoConfiguration setTransactionRetrySerializeHot(boolean serializeHot) {
+    setProperty(TRANSACTION_RETRY_SERIALIZE_HOT_PROP, serializeHot);
+    return this;
+  }
+
+  public boolean getTransactionRetrySerializeHot() {
+    return getBoolean(TRANSACTION_RETRY_SERIALIZE_HOT_PROP, TRANSACTION_RETRY_SERIALIZE_HOT_DEFAULT);
+  }
+
   public FluoConfiguration setWorkerInstances(int workerInstances) {
     setProperty(WORKER_INSTANCES_PROP, workerInstances);
     return this;
@@ -433,12 +554,19 @@ public class FluoConfiguration extends CompositeConfiguration {
     config.setProperty(CLIENT_ZOOKEEPER_ROOT_PROP, CLIENT_ZOOKEEPER_ROOT_DEFAULT);
     config.setProperty(CLIENT_ZOOKEEPER_TIMEOUT_PROP, CLIENT_ZOOKEEPER_TIMEOUT_DEFAULT);
     config.setProperty(CLIENT_CLASS_PROP, CLIENT_CLASS_DEFAULT);
+    config.setProperty(CLIENT_SCAN_THREADS_PROP, CLIENT_SCAN_THREADS_DEFAULT);
     config.setProperty(ADMIN_ALLOW_REINITIALIZE_PROP, ADMIN_ALLOW_REINITIALIZE_DEFAULT);
     config.setProperty(ADMIN_CLASS_PROP, ADMIN_CLASS_DEFAULT);
     config.setProperty(WORKER_NUM_THREADS_PROP, WORKER_NUM_THREADS_DEFAULT);
     config.setProperty(WORKER_INSTANCES_PROP, WORKER_INSTANCES_DEFAULT);
     config.setProperty(WORKER_MAX_MEMORY_MB_PROP, WORKER_MAX_MEMORY_MB_DEFAULT);
     config.setProperty(TRANSACTION_ROLLBACK_TIME_PROP, TRANSACTION_ROLLBACK_TIME_DEFAULT);
+    config.setProperty(TRANSACTION_SPILL_THRESHOLD_MB_PROP, TRANSACTION_SPILL_THRESHOLD_MB_DEFAULT);
+    config.setProperty(TRANSACTION_LAZY_ROLLBACK_PROP, TRANSACTION_LAZY_ROLLBACK_DEFAULT);
+    config.setProperty(TRANSACTION_ASYNC_COMMIT_PROP, TRANSACTION_ASYNC_COMMIT_DEFAULT);
+    config.setProperty(TRANSACTION_ASYNC_BUFFER_MB_PROP, TRANSACTION_ASYNC_BUFFER_MB_DEFAULT);
+    config.setProperty(TRANSACTION_RETRY_MAX_BACKOFF_PROP, TRANSACTION_RETRY_MAX_BACKOFF_DEFAULT);
+    config.setProperty(TRANSACTION_RETRY_SERIALIZE_HOT_PROP, TRANSACTION_RETRY_SERIALIZE_HOT_DEFAULT);
     config.setProperty(LOADER_NUM_THREADS_PROP, LOADER_NUM_THREADS_DEFAULT);
     config.setProperty(LOADER_QUEUE_SIZE_PROP, LOADER_QUEUE_SIZE_DEFAULT);
     config.setProperty(ORACLE_PORT_PROP, ORACLE_PORT_DEFAULT);
@@ -100,6 +100,11 @@ public class RowColumn {
     return row + " " + col;
   }
   
+  @Override
+  public int hashCode() {
+    return row.hashCode() + col.hashCode();
+  }
+  
   @Override
   public boolean equals(Object o) {
     if (o instanceof RowColumn) { 
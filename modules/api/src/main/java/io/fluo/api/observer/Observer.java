@@ -15,7 +15,9 @@
  */
 package io.fluo.api.observer;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 import io.fluo.api.client.TransactionBase;
 import io.fluo.api.data.Bytes;
@@ -33,15 +35,25 @@ public interface Observer {
   }
 
   /**
-   * A {@link Column} and {@link NotificationType} pair
+   * A {@link Column} and {@link NotificationType} pair, optionally with columns of the notified row that the observer will read
    */
   public static class ObservedColumn {
     private final Column col;
     private final NotificationType notificationType;
+    private final Set<Column> prefetchColumns;
 
     public ObservedColumn(Column col, NotificationType notificationType) {
+      this(col, notificationType, Collections.<Column> emptySet());
+    }
+
+    /**
+     * @param prefetchColumns Columns of the notified row that {@link Observer#process(TransactionBase, Bytes, Column)} reads. Workers read these for
+     *        many notifications at once before processing them, so the observer's reads of these columns do not go to the table.
+     */
+    public ObservedColumn(Column col, NotificationType notificationType, Set<Column> prefetchColumns) {
       this.col = col;
       this.notificationType = notificationType;
+      this.prefetchColumns = Collections.unmodifiableSet(prefetchColumns);
     }
 
     public Column getColumn() {
@@ -51,6 +63,10 @@ public interface Observer {
     public NotificationType getType() {
       return notificationType;
     }
+
+    public Set<Column> getPrefetchColumns() {
+      return prefetchColumns;
+    }
   }
 
   /**
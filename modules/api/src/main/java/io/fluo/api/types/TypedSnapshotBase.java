@@ -32,6 +32,7 @@ import io.fluo.api.client.SnapshotBase;
 import io.fluo.api.config.ScannerConfiguration;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.iterator.RowIterator;
 import io.fluo.api.types.TypeLayer.Data;
 import io.fluo.api.types.TypeLayer.FamilyMethods;
@@ -279,14 +280,21 @@ public class TypedSnapshotBase implements SnapshotBase {
   public class MapConverter {
     private Collection<Bytes> rows;
     private Set<Column> columns;
+    private Map<Bytes,Set<Column>> rowColumns;
 
     public MapConverter(Collection<Bytes> rows, Set<Column> columns) {
       this.rows = rows;
       this.columns = columns;
     }
 
+    public MapConverter(Map<Bytes,Set<Column>> rowColumns) {
+      this.rowColumns = rowColumns;
+    }
+
     private Map<Bytes,Map<Column,Bytes>> getInput() {
       try {
+        if (rowColumns != null)
+          return snapshot.get(rowColumns);
         return snapshot.get(rows, columns);
       } catch (Exception e) {
         throw new RuntimeException(e);
@@ -419,6 +427,35 @@ public class TypedSnapshotBase implements SnapshotBase {
       return rows(conv);
     }
 
+    /**
+     * Reads different columns for each row, all rows are read at once
+     */
+    public MapConverter rowColumns(Map<Bytes,Set<Column>> rowColumns) {
+      return new MapConverter(rowColumns);
+    }
+
+    /**
+     * Reads all row columns at once
+     */
+    @SuppressWarnings({"unchecked"})
+    public Map<RowColumn,Value> rowColumns(Collection<RowColumn> rowColumns) {
+      Map<RowColumn,Bytes> in;
+      try {
+        in = snapshot.get(rowColumns);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+
+      Map<RowColumn,Value> ret = Maps.transformValues(in, new Function<Bytes,Value>() {
+        @Override
+        public Value apply(Bytes input) {
+          return new Value(input);
+        }
+      });
+
+      return Collections.unmodifiableMap(DefaultedMap.decorate(ret, new Value((Bytes) null)));
+    }
+
   }
 
   TypedSnapshotBase(SnapshotBase snapshot, Encoder encoder, TypeLayer tl) {
@@ -447,6 +484,16 @@ public class TypedSnapshotBase implements SnapshotBase {
     return snapshot.get(rows, columns);
   }
 
+  @Override
+  public Map<Bytes,Map<Column,Bytes>> get(Map<Bytes,Set<Column>> rowColumns) throws Exception {
+    return snapshot.get(rowColumns);
+  }
+
+  @Override
+  public Map<RowColumn,Bytes> get(Collection<RowColumn> rowColumns) throws Exception {
+    return snapshot.get(rowColumns);
+  }
+
   public ValueRowMethods get() {
     return new ValueRowMethods();
   }
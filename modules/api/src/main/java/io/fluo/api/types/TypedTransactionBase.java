@@ -125,6 +125,18 @@ public class TypedTransactionBase extends TypedSnapshotBase implements Transacti
       tx.set(data.row, data.getCol(), encoder.encode(v + l));
     }
 
+    /**
+     * Adds l to the row/column without reading it, see {@link TransactionBase#add(Bytes, Column, long)}. The sum is encoded as a decimal string, so it
+     * is only decoded correctly by encoders that encode longs the same way, such as {@link StringEncoder}.
+     * 
+     * @param l
+     * @throws AlreadySetException
+     */
+    public void add(long l) throws AlreadySetException {
+      checkNotSet();
+      tx.add(data.row, data.getCol(), l);
+    }
+
     public void delete() throws AlreadySetException {
       checkNotSet();
       tx.delete(data.row, data.getCol());
@@ -238,4 +250,14 @@ public class TypedTransactionBase extends TypedSnapshotBase implements Transacti
   public void delete(Bytes row, Column col) throws AlreadySetException {
     tx.delete(row, col);
   }
+
+  @Override
+  public void add(Bytes row, Column col, long amount) throws AlreadySetException {
+    tx.add(row, col, amount);
+  }
+
+  @Override
+  public Bytes getForUpdate(Bytes row, Column col) throws Exception {
+    return tx.getForUpdate(row, col);
+  }
 }
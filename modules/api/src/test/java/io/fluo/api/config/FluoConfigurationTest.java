@@ -17,6 +17,7 @@ package io.fluo.api.config;
 
 import java.io.File;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -34,6 +35,7 @@ public class FluoConfigurationTest {
     Assert.assertEquals(FluoConfiguration.CLIENT_ZOOKEEPER_ROOT_DEFAULT, base.getZookeeperRoot());
     Assert.assertEquals(FluoConfiguration.CLIENT_ZOOKEEPER_TIMEOUT_DEFAULT, base.getZookeeperTimeout());
     Assert.assertEquals(FluoConfiguration.CLIENT_CLASS_DEFAULT, base.getClientClass());
+    Assert.assertEquals(FluoConfiguration.CLIENT_SCAN_THREADS_DEFAULT, base.getScanThreads());
     Assert.assertEquals(FluoConfiguration.ADMIN_ALLOW_REINITIALIZE_DEFAULT, base.getAllowReinitialize());
     Assert.assertEquals(FluoConfiguration.ADMIN_CLASS_DEFAULT, base.getAdminClass());
     Assert.assertEquals(FluoConfiguration.ADMIN_ACCUMULO_CLASSPATH_DEFAULT, base.getAccumuloClasspath());
@@ -41,6 +43,12 @@ public class FluoConfigurationTest {
     Assert.assertEquals(FluoConfiguration.WORKER_INSTANCES_DEFAULT, base.getWorkerInstances());
     Assert.assertEquals(FluoConfiguration.WORKER_MAX_MEMORY_MB_DEFAULT, base.getWorkerMaxMemory());
     Assert.assertEquals(FluoConfiguration.TRANSACTION_ROLLBACK_TIME_DEFAULT, base.getTransactionRollbackTime());
+    Assert.assertEquals(FluoConfiguration.TRANSACTION_SPILL_THRESHOLD_MB_DEFAULT, base.getTransactionSpillThreshold());
+    Assert.assertEquals(FluoConfiguration.TRANSACTION_LAZY_ROLLBACK_DEFAULT, base.getTransactionLazyRollback());
+    Assert.assertEquals(FluoConfiguration.TRANSACTION_ASYNC_COMMIT_DEFAULT, base.getTransactionAsyncCommit());
+    Assert.assertEquals(FluoConfiguration.TRANSACTION_ASYNC_BUFFER_MB_DEFAULT, base.getTransactionAsyncBuffer());
+    Assert.assertEquals(FluoConfiguration.TRANSACTION_RETRY_MAX_BACKOFF_DEFAULT, base.getTransactionRetryMaxBackoff());
+    Assert.assertEquals(FluoConfiguration.TRANSACTION_RETRY_SERIALIZE_HOT_DEFAULT, base.getTransactionRetrySerializeHot());
     Assert.assertEquals(FluoConfiguration.LOADER_NUM_THREADS_DEFAULT, base.getLoaderThreads());
     Assert.assertEquals(FluoConfiguration.LOADER_QUEUE_SIZE_DEFAULT, base.getLoaderQueueSize());
     Assert.assertEquals(FluoConfiguration.ORACLE_PORT_DEFAULT, base.getOraclePort());
@@ -79,11 +87,19 @@ public class FluoConfigurationTest {
     Assert.assertEquals("admin", config.setAdminClass("admin").getAdminClass());
     Assert.assertTrue(config.setAllowReinitialize(true).getAllowReinitialize());
     Assert.assertEquals("client", config.setClientClass("client").getClientClass());
+    Assert.assertEquals(3, config.setScanThreads(3).getScanThreads());
     Assert.assertEquals(4, config.setLoaderQueueSize(4).getLoaderQueueSize());
     Assert.assertEquals(7, config.setLoaderThreads(7).getLoaderThreads());
     Assert.assertEquals("mini", config.setMiniClass("mini").getMiniClass());
     Assert.assertEquals(8, config.setOracleMaxMemory(8).getOracleMaxMemory());
     Assert.assertEquals(9, config.setOraclePort(9).getOraclePort());
+    Assert.assertEquals(10, config.setTransactionSpillThreshold(10).getTransactionSpillThreshold());
+    Assert.assertEquals("spill", config.setTransactionSpillDir("spill").getTransactionSpillDir());
+    Assert.assertTrue(config.setTransactionLazyRollback(true).getTransactionLazyRollback());
+    Assert.assertTrue(config.setTransactionAsyncCommit(true).getTransactionAsyncCommit());
+    Assert.assertEquals(15, config.setTransactionAsyncBuffer(15).getTransactionAsyncBuffer());
+    Assert.assertEquals(2000, config.setTransactionRetryMaxBackoff(2, TimeUnit.SECONDS).getTransactionRetryMaxBackoff());
+    Assert.assertFalse(config.setTransactionRetrySerializeHot(false).getTransactionRetrySerializeHot());
     Assert.assertEquals(11, config.setWorkerInstances(11).getWorkerInstances());
     Assert.assertEquals(12, config.setWorkerMaxMemory(12).getWorkerMaxMemory());
     Assert.assertEquals(13, config.setWorkerThreads(13).getWorkerThreads());
@@ -19,12 +19,14 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import io.fluo.api.client.SnapshotBase;
 import io.fluo.api.config.ScannerConfiguration;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.iterator.RowIterator;
 
 public class MockSnapshotBase implements SnapshotBase {
@@ -76,6 +78,36 @@ public class MockSnapshotBase implements SnapshotBase {
     return ret;
   }
 
+  @Override
+  public Map<Bytes,Map<Column,Bytes>> get(Map<Bytes,Set<Column>> rowColumns) throws Exception {
+
+    Map<Bytes,Map<Column,Bytes>> ret = new HashMap<>();
+
+    for (Entry<Bytes,Set<Column>> entry : rowColumns.entrySet()) {
+      Map<Column,Bytes> colMap = get(entry.getKey(), entry.getValue());
+      if (colMap != null && colMap.size() > 0) {
+        ret.put(entry.getKey(), colMap);
+      }
+    }
+
+    return ret;
+  }
+
+  @Override
+  public Map<RowColumn,Bytes> get(Collection<RowColumn> rowColumns) throws Exception {
+
+    Map<RowColumn,Bytes> ret = new HashMap<>();
+
+    for (RowColumn rc : rowColumns) {
+      Bytes val = get(rc.getRow(), rc.getColumn());
+      if (val != null) {
+        ret.put(rc, val);
+      }
+    }
+
+    return ret;
+  }
+
   @Override
   public RowIterator get(ScannerConfiguration config) throws Exception {
     throw new UnsupportedOperationException();
@@ -26,12 +26,13 @@ import io.fluo.api.data.Column;
 
 /**
  * A very simple implementation of {@link TransactionBase} used for testing. All reads are serviced from {@link #getData}. Updates are stored in {@link #setData},
- * {@link #deletes}, or {@link #weakNotifications} depending on the update type.
+ * {@link #deletes}, {@link #deltas}, or {@link #weakNotifications} depending on the update type.
  */
 public class MockTransactionBase extends MockSnapshotBase implements TransactionBase {
 
   final Map<Bytes,Map<Column,Bytes>> setData = new HashMap<>();
   final Map<Bytes,Set<Column>> deletes = new HashMap<>();
+  final Map<Bytes,Map<Column,Long>> deltas = new HashMap<>();
   final Map<Bytes,Set<Column>> weakNotifications = new HashMap<>();
 
   MockTransactionBase(String... entries) {
@@ -70,4 +71,21 @@ public class MockTransactionBase extends MockSnapshotBase implements Transaction
 
     cols.add(col);
   }
+
+  @Override
+  public void add(Bytes row, Column col, long amount) {
+    Map<Column,Long> cols = deltas.get(row);
+    if (cols == null) {
+      cols = new HashMap<>();
+      deltas.put(row, cols);
+    }
+
+    Long prev = cols.get(col);
+    cols.put(col, prev == null ? amount : prev + amount);
+  }
+
+  @Override
+  public Bytes getForUpdate(Bytes row, Column col) throws Exception {
+    return get(row, col);
+  }
 }
\ No newline at end of file
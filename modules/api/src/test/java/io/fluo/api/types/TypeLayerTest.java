@@ -17,11 +17,14 @@ package io.fluo.api.types;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.ImmutableSet;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.types.TypedSnapshotBase.Value;
 import org.junit.Assert;
 import org.junit.Test;
@@ -282,6 +285,18 @@ MockTransactionBase.toRCVM("13,9:16,", "13,9:17,3", "13,9:18,4", "13,9:19,5", "1
     tt.weakNotifications.clear();
     Assert.assertEquals(0, tt.setData.size());
     Assert.assertEquals(0, tt.deletes.size());
+
+    // test adding deltas
+    ttx.mutate().row("13").fam("9").qual("17").add(5);
+    ttx.mutate().row("13").fam("9").qual("17").add(-2);
+    ttx.mutate().row("13").fam("9").qual(18).add(7);
+
+    Assert.assertEquals(1, tt.deltas.size());
+    Assert.assertEquals(3l, (long) tt.deltas.get(Bytes.wrap("13")).get(new Column("9", "17")));
+    Assert.assertEquals(7l, (long) tt.deltas.get(Bytes.wrap("13")).get(new Column("9", "18")));
+    tt.deltas.clear();
+    Assert.assertEquals(0, tt.setData.size());
+    Assert.assertEquals(0, tt.deletes.size());
   }
 
   @Test
@@ -363,6 +378,50 @@ MockTransactionBase.toRCVM("13,9:16,", "13,9:17,3", "13,9:18,4", "13,9:19,5", "1
 
   }
 
+  @Test
+  public void testMultiRowColumn() throws Exception {
+    TypeLayer tl = new TypeLayer(new StringEncoder());
+
+    MockTransactionBase tt = new MockTransactionBase("11,cf1:cq1,1", "11,cf1:cq2,2", "12,cf1:cq1,3", "12,cf1:cq2,4", "13,cf1:cq1,5", "13,cf1:cq2,6");
+
+    TypedTransactionBase ttx = tl.wrap(tt);
+
+    Bytes br1 = Bytes.wrap("11");
+    Bytes br2 = Bytes.wrap("12");
+    Bytes br3 = Bytes.wrap("13");
+
+    Column c1 = new Column("cf1", "cq1");
+    Column c2 = new Column("cf1", "cq2");
+    Column c3 = new Column("cf1", "cq3");
+
+    Map<Bytes,Set<Column>> rowColumns = new HashMap<>();
+    rowColumns.put(br1, ImmutableSet.of(c1));
+    rowColumns.put(br2, ImmutableSet.of(c1, c2));
+    rowColumns.put(br3, ImmutableSet.of(c3));
+
+    Map<String,Map<Column,Value>> map1 = ttx.get().rowColumns(rowColumns).toStringMap();
+
+    Assert.assertEquals(2, map1.size());
+    Assert.assertEquals(1, map1.get("11").size());
+    Assert.assertEquals(1, map1.get("11").get(c1).toInteger(0));
+    Assert.assertNull(map1.get("11").get(c2).toInteger());
+    Assert.assertEquals(2, map1.get("12").size());
+    Assert.assertEquals(3, map1.get("12").get(c1).toInteger(0));
+    Assert.assertEquals(4, map1.get("12").get(c2).toInteger(0));
+    Assert.assertNull(map1.get("13").get(c3).toInteger());
+
+    RowColumn rc1 = new RowColumn(br1, c2);
+    RowColumn rc2 = new RowColumn(br3, c1);
+    RowColumn rc3 = new RowColumn(br3, c3);
+
+    Map<RowColumn,Value> map2 = ttx.get().rowColumns(Arrays.asList(rc1, rc2, rc3));
+
+    Assert.assertEquals(2, map2.size());
+    Assert.assertEquals(2l, map2.get(rc1).toLong(0));
+    Assert.assertEquals("5", map2.get(rc2).toString());
+    Assert.assertNull(map2.get(rc3).toString());
+  }
+
   @Test
   public void testBasic() throws Exception {
     TypeLayer tl = new TypeLayer(new StringEncoder());
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks the start timestamps of active transactions in a fixed number of independently locked stripes of primitive longs, so that concurrent
+ * transactions rarely contend and no timestamps are boxed.
+ * <p/>
+ * A transaction reserves a place holder in the stripe of the thread allocating it before requesting a timestamp from the oracle. The place holder
+ * is lower than the timestamp that will be returned, so the oldest timestamp computed while a request is outstanding is always safe to use for
+ * garbage collection. Once the timestamp arrives it is added to the stripe chosen by its value, so it can be removed from any thread.
+ * <p/>
+ * Reading the oldest timestamp or the number of timestamps requires all stripes to be locked with {@link #lockAll()}.
+ */
+class ActiveTimestamps {
+
+  private static class Stripe extends ReentrantLock {
+
+    private static final long serialVersionUID = 1L;
+
+    private long[] values = new long[8];
+    private int size = 0;
+    // largest timestamp added to this stripe, used as a place holder for requests that are outstanding
+    private long last = 0;
+
+    void add(long value) {
+      if (size == values.length)
+        values = Arrays.copyOf(values, size * 2);
+      values[size++] = value;
+    }
+
+    boolean remove(long value) {
+      for (int i = 0; i < size; i++) {
+        if (values[i] == value) {
+          values[i] = values[--size];
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long min() {
+      long min = Long.MAX_VALUE;
+      for (int i = 0; i < size; i++)
+        min = Math.min(min, values[i]);
+      return min;
+    }
+  }
+
+  private final Stripe[] stripes;
+
+  ActiveTimestamps(int numStripes) {
+    stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++)
+      stripes[i] = new Stripe();
+  }
+
+  ActiveTimestamps() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  private Stripe getStripe(long value) {
+    return stripes[(int) ((value & Long.MAX_VALUE) % stripes.length)];
+  }
+
+  /**
+   * @return the stripe place holders should be added to for the current thread
+   */
+  int getPendingStripe() {
+    return (int) (Thread.currentThread().getId() % stripes.length);
+  }
+
+  /**
+   * Adds a place holder for a timestamp that is about to be requested from the oracle.
+   *
+   * @param lowerBound a timestamp known to be lower than the one that will be requested
+   * @return the place holder, which must later be passed to {@link #activate(int, long, long)} or {@link #removePending(int, long)}
+   */
+  long addPending(int stripeId, long lowerBound) {
+    Stripe stripe = stripes[stripeId];
+    stripe.lock();
+    try {
+      long placeHolder = Math.max(lowerBound, stripe.last);
+      stripe.add(placeHolder);
+      return placeHolder;
+    } finally {
+      stripe.unlock();
+    }
+  }
+
+  /**
+   * Replaces a place holder with the timestamp that was returned by the oracle.
+   */
+  void activate(int stripeId, long placeHolder, long ts) {
+    // add before removing the place holder, so the timestamp is always covered when all stripes are locked
+    Stripe stripe = getStripe(ts);
+    stripe.lock();
+    try {
+      stripe.add(ts);
+      stripe.last = Math.max(stripe.last, ts);
+    } finally {
+      stripe.unlock();
+    }
+
+    removePending(stripeId, placeHolder);
+  }
+
+  /**
+   * Removes a place holder for a request that failed.
+   */
+  void removePending(int stripeId, long placeHolder) {
+    Stripe stripe = stripes[stripeId];
+    stripe.lock();
+    try {
+      if (!stripe.remove(placeHolder))
+        throw new IllegalStateException("place holder " + placeHolder + " not found");
+    } finally {
+      stripe.unlock();
+    }
+  }
+
+  /**
+   * @return false if the timestamp was not active
+   */
+  boolean remove(long ts) {
+    Stripe stripe = getStripe(ts);
+    stripe.lock();
+    try {
+      return stripe.remove(ts);
+    } finally {
+      stripe.unlock();
+    }
+  }
+
+  /**
+   * Locks all stripes, so that the oldest timestamp and size are consistent. Stripes are always locked in the same order.
+   */
+  void lockAll() {
+    for (Stripe stripe : stripes)
+      stripe.lock();
+  }
+
+  void unlockAll() {
+    for (int i = stripes.length - 1; i >= 0; i--)
+      stripes[i].unlock();
+  }
+
+  /**
+   * @return the number of active timestamps and place holders, all stripes must be locked
+   */
+  int size() {
+    int size = 0;
+    for (Stripe stripe : stripes)
+      size += stripe.size;
+    return size;
+  }
+
+  /**
+   * @return the oldest active timestamp or place holder, all stripes must be locked
+   */
+  long min() throws NoSuchElementException {
+    if (size() == 0)
+      throw new NoSuchElementException();
+
+    long min = Long.MAX_VALUE;
+    for (Stripe stripe : stripes)
+      min = Math.min(min, stripe.min());
+    return min;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.Random;
+import java.util.concurrent.locks.Lock;
+
+import io.fluo.api.data.RowColumn;
+import io.fluo.core.util.UtilWaitThread;
+
+/**
+ * Waits before work whose transaction failed to commit is retried. Waits are random so that threads which collided do not retry in lockstep, and their
+ * upper bound doubles with each failed attempt. Attempts that collided on a hot column wait twice as long and, when configured, retry one at a time with
+ * other work in this process that collided on the same column.
+ * <p/>
+ * Not thread safe, a new instance is used for each unit of work.
+ */
+class CommitRetry {
+
+  // upper bound of the wait after the first failed attempt
+  private static final long BASE_BACKOFF = 10;
+  private static final Random rand = new Random();
+
+  private final Environment env;
+  private final ContentionTracker tracker;
+
+  private int retries = 0;
+  private long priorCollisions = 0;
+  private long backoffTime = 0;
+  private Lock hotLock = null;
+
+  CommitRetry(Environment env) {
+    this.env = env;
+    this.tracker = env.getSharedResources().getContentionTracker();
+  }
+
+  /**
+   * Records the failed attempts that came before a new attempt in its stats.
+   */
+  void started(TransactionImpl txi) {
+    txi.getStats().setRetryInfo(retries, priorCollisions, backoffTime);
+  }
+
+  /**
+   * Waits before retrying work whose transaction failed to commit. {@link #done()} must be called once the work is no longer retried.
+   */
+  void failed(TransactionImpl txi) {
+    done();
+
+    retries++;
+    priorCollisions += txi.getStats().getCollisions();
+
+    RowColumn hot = tracker.getHottest(txi.getRejected());
+    long max = BASE_BACKOFF << Math.min(retries - 1, 20);
+    if (hot != null)
+      max *= 2;
+    max = Math.min(max, env.getRetryMaxBackoff());
+
+    if (max > 0) {
+      long sleepTime = (long) (rand.nextDouble() * max);
+      UtilWaitThread.sleep(sleepTime);
+      backoffTime += sleepTime;
+    }
+
+    if (hot != null && env.isRetrySerializeHot()) {
+      hotLock = tracker.getLock(hot);
+      hotLock.lock();
+    }
+  }
+
+  /**
+   * Lets other work that collided on the same hot column retry.
+   */
+  void done() {
+    if (hotLock != null) {
+      hotLock.unlock();
+      hotLock = null;
+    }
+  }
+}
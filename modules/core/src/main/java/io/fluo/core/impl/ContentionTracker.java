@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
+
+/**
+ * Counts the collisions of transactions in this process per row and column, as reported by the columns rejected when committing. Counts of columns that
+ * stop colliding expire, so only recently contended columns are reported as hot. While transactions collide, the most contended columns are
+ * periodically written to the transaction log.
+ */
+public class ContentionTracker {
+
+  // number of recent collisions after which a column is considered hot
+  static final long HOT_COLLISIONS = 10;
+  private static final long EXPIRE_SEC = 60;
+  private static final long LOG_PERIOD_MS = 60000;
+  private static final int HOTSPOTS_LOGGED = 10;
+
+  private final Cache<RowColumn,AtomicLong> collisions;
+  // one lock per hot column, dropped once no work holds or waits on it
+  private final LoadingCache<RowColumn,Lock> locks;
+  private final AtomicLong lastLogged = new AtomicLong(0);
+
+  ContentionTracker() {
+    collisions = CacheBuilder.newBuilder().expireAfterAccess(EXPIRE_SEC, TimeUnit.SECONDS).maximumSize(10000).concurrencyLevel(10).build();
+    locks = CacheBuilder.newBuilder().weakValues().concurrencyLevel(10).build(new CacheLoader<RowColumn,Lock>() {
+      @Override
+      public Lock load(RowColumn rc) {
+        return new ReentrantLock();
+      }
+    });
+  }
+
+  void collided(Map<Bytes,Set<Column>> rejected) {
+    for (Entry<Bytes,Set<Column>> entry : rejected.entrySet()) {
+      for (Column col : entry.getValue()) {
+        RowColumn rc = new RowColumn(entry.getKey(), col);
+        AtomicLong count = collisions.getIfPresent(rc);
+        if (count == null) {
+          count = new AtomicLong();
+          AtomicLong prev = collisions.asMap().putIfAbsent(rc, count);
+          if (prev != null)
+            count = prev;
+        }
+        count.incrementAndGet();
+      }
+    }
+
+    maybeLogHotspots();
+  }
+
+  private void maybeLogHotspots() {
+    if (!TxLogger.isLoggingEnabled())
+      return;
+
+    long now = System.currentTimeMillis();
+    long last = lastLogged.get();
+    if (now - last >= LOG_PERIOD_MS && lastLogged.compareAndSet(last, now))
+      TxLogger.logHotspots(getHotspots(HOTSPOTS_LOGGED));
+  }
+
+  public long getCollisions(RowColumn rc) {
+    AtomicLong count = collisions.getIfPresent(rc);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * @return the most contended of the given columns if it is hot, otherwise null
+   */
+  RowColumn getHottest(Map<Bytes,Set<Column>> rejected) {
+    RowColumn hottest = null;
+    long max = HOT_COLLISIONS - 1;
+    for (Entry<Bytes,Set<Column>> entry : rejected.entrySet()) {
+      for (Column col : entry.getValue()) {
+        RowColumn rc = new RowColumn(entry.getKey(), col);
+        long count = getCollisions(rc);
+        if (count > max) {
+          max = count;
+          hottest = rc;
+        }
+      }
+    }
+    return hottest;
+  }
+
+  /**
+   * @return up to max row columns with the most recent collisions, most contended first
+   */
+  public List<Entry<RowColumn,Long>> getHotspots(int max) {
+    List<Entry<RowColumn,Long>> hotspots = new ArrayList<>();
+    for (Entry<RowColumn,AtomicLong> entry : collisions.asMap().entrySet())
+      hotspots.add(new AbstractMap.SimpleImmutableEntry<RowColumn,Long>(entry.getKey(), entry.getValue().get()));
+
+    Collections.sort(hotspots, new Comparator<Entry<RowColumn,Long>>() {
+      @Override
+      public int compare(Entry<RowColumn,Long> e1, Entry<RowColumn,Long> e2) {
+        return e2.getValue().compareTo(e1.getValue());
+      }
+    });
+
+    return hotspots.size() > max ? new ArrayList<>(hotspots.subList(0, max)) : hotspots;
+  }
+
+  /**
+   * @return a lock used to run transactions that collided on a hot column one at a time
+   */
+  Lock getLock(RowColumn rc) {
+    return locks.getUnchecked(rc);
+  }
+}
@@ -62,6 +62,14 @@ public class Environment implements AutoCloseable {
   private FluoConfiguration config;
   private SharedResources resources;
   private long rollbackTime;
+  private long spillThreshold;
+  private File spillDir;
+  private boolean lazyRollback;
+  private boolean asyncCommit;
+  private long asyncBufferSize;
+  private long retryMaxBackoff;
+  private boolean retrySerializeHot;
+  private int scanThreads;
   
   public Environment(Environment env) throws Exception {
     this.table = env.table;
@@ -72,6 +80,14 @@ public class Environment implements AutoCloseable {
     this.accumuloInstanceID = env.accumuloInstanceID;
     this.observers = env.observers;
     this.conn = env.conn;
+    this.spillThreshold = env.spillThreshold;
+    this.spillDir = env.spillDir;
+    this.lazyRollback = env.lazyRollback;
+    this.asyncCommit = env.asyncCommit;
+    this.asyncBufferSize = env.asyncBufferSize;
+    this.retryMaxBackoff = env.retryMaxBackoff;
+    this.retrySerializeHot = env.retrySerializeHot;
+    this.scanThreads = env.scanThreads;
     this.resources = new SharedResources(this);
   }
 
@@ -100,6 +116,14 @@ public class Environment implements AutoCloseable {
       throw new IllegalArgumentException("unexpected accumulo instance id " + conn.getInstance().getInstanceID() + " != " + accumuloInstanceID);
 
     rollbackTime = config.getTransactionRollbackTime();
+    spillThreshold = config.getTransactionSpillThreshold() * 1024L * 1024L;
+    spillDir = new File(config.getTransactionSpillDir());
+    lazyRollback = config.getTransactionLazyRollback();
+    asyncCommit = config.getTransactionAsyncCommit();
+    asyncBufferSize = config.getTransactionAsyncBuffer() * 1024L * 1024L;
+    retryMaxBackoff = config.getTransactionRetryMaxBackoff();
+    retrySerializeHot = config.getTransactionRetrySerializeHot();
+    scanThreads = config.getScanThreads();
 
     try {
       this.resources = new SharedResources(this);
@@ -254,6 +278,50 @@ public class Environment implements AutoCloseable {
     return rollbackTime;
   }
   
+  /**
+   * @return number of bytes a transaction buffers in memory before spilling writes to files, zero to never spill
+   */
+  public long getTransactionSpillThreshold() {
+    return spillThreshold;
+  }
+
+  public File getTransactionSpillDir() {
+    return spillDir;
+  }
+
+  public boolean isLazyRollback() {
+    return lazyRollback;
+  }
+
+  public boolean isAsyncCommit() {
+    return asyncCommit;
+  }
+
+  /**
+   * @return number of bytes of mutations that can be queued for background writes
+   */
+  public long getAsyncBufferSize() {
+    return asyncBufferSize;
+  }
+
+  /**
+   * @return longest time in milliseconds to wait before retrying a transaction that failed to commit
+   */
+  public long getRetryMaxBackoff() {
+    return retryMaxBackoff;
+  }
+
+  public boolean isRetrySerializeHot() {
+    return retrySerializeHot;
+  }
+
+  /**
+   * @return most threads used by one scan of many rows
+   */
+  public int getScanThreads() {
+    return scanThreads;
+  }
+
   public int getOraclePort() {
     return oraclePort;
   }
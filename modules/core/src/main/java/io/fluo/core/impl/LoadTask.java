@@ -39,11 +39,13 @@ public class LoadTask implements Runnable {
   @Override
   public void run() {
     TransactionImpl txi = null;
+    CommitRetry retry = new CommitRetry(env);
     try {
       while (true) {
         String status = "FAILED";
         try {
           txi = new TransactionImpl(env);
+          retry.started(txi);
           TransactionBase tx = txi;
           if (TracingTransaction.isTracingEnabled())
             tx = new TracingTransaction(tx);
@@ -52,7 +54,7 @@ public class LoadTask implements Runnable {
           status = "COMMITTED";
           return;
         } catch (CommitException e) {
-          // retry
+          retry.failed(txi);
         } catch (Exception e) {
           log.error("Failed to execute loader " + loader, e);
           throw new RuntimeException(e);
@@ -62,6 +64,7 @@ public class LoadTask implements Runnable {
         }
       }
     } finally {
+      retry.done();
       // close after multiple possible commit attempts
       if (txi != null) {
         txi.close();
@@ -23,6 +23,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import io.fluo.accumulo.iterators.PrewriteIterator;
+import io.fluo.accumulo.iterators.RollbackCheckIterator;
 import io.fluo.accumulo.util.ColumnConstants;
 import io.fluo.accumulo.values.DelLockValue;
 import io.fluo.accumulo.values.LockValue;
@@ -43,7 +44,9 @@ import org.apache.accumulo.core.data.Value;
 
 /**
  * This is utility code for either rolling forward or back failed transactions. A transaction is deemed to have failed if the reading transaction waited too
- * long or the transactor id does not exist in zookeeper.
+ * long or the transactor id does not exist in zookeeper. Locks whose primary was already rolled back or committed are also resolved, as a transaction that
+ * rolls back lazily or commits asynchronously leaves them behind a live transactor. Readers look for these whatever their own settings are, because the
+ * transactions that left them may run in other processes.
  */
 
 public class LockResolver {
@@ -110,6 +113,7 @@ public class LockResolver {
       timedOut = true;
     } else {
       locksToRecover = new ArrayList<>(locks.size());
+      List<Entry<Key,Value>> liveLocks = new ArrayList<>();
       for (Entry<Key,Value> entry : locks) {
 
         Long transactorId = new LockValue(entry.getValue().get()).getTransactor();
@@ -121,6 +125,22 @@ public class LockResolver {
         } else if (!transactorCache.checkExists(transactorId)) {
           locksToRecover.add(entry);
           stats.incrementDeadLocks();
+        } else {
+          liveLocks.add(entry);
+        }
+      }
+
+      if (liveLocks.size() > 0) {
+        // transactions that roll back lazily or commit asynchronously leave secondary locks behind a primary that was already rolled back or committed, no
+        // need to wait for those. The primaries are looked up with one batch scan.
+        Map<PrimaryRowColumn,List<Entry<Key,Value>>> liveGroups = groupLocksByPrimary(liveLocks);
+        Map<PrimaryRowColumn,TxInfo> liveInfo = env.getSharedResources().getTxInfoCache().getTransactionInfo(liveGroups.keySet());
+        for (Entry<PrimaryRowColumn,List<Entry<Key,Value>>> group : liveGroups.entrySet()) {
+          TxStatus status = liveInfo.get(group.getKey()).status;
+          if (status == TxStatus.ROLLED_BACK || status == TxStatus.COMMITTED) {
+            locksToRecover.addAll(group.getValue());
+            stats.incrementAbandonedLocks(group.getValue().size());
+          }
         }
       }
     }
@@ -137,11 +157,12 @@ public class LockResolver {
       }
     }
 
-    TxInfoCache txiCache = env.getSharedResources().getTxInfoCache();
+    // look up the primaries of all transactions at once, instead of a scan per primary
+    Map<PrimaryRowColumn,TxInfo> txInfos = env.getSharedResources().getTxInfoCache().getTransactionInfo(groupedLocks.keySet());
 
     Set<Entry<PrimaryRowColumn,List<Entry<Key,Value>>>> es = groupedLocks.entrySet();
     for (Entry<PrimaryRowColumn,List<Entry<Key,Value>>> group : es) {
-      TxInfo txInfo = txiCache.getTransactionInfo(group.getKey());
+      TxInfo txInfo = txInfos.get(group.getKey());
       switch (txInfo.status) {
         case COMMITTED:
           commitColumns(env, group.getKey(), group.getValue(), txInfo.commitTs, mutations);
@@ -178,8 +199,10 @@ public class LockResolver {
       long lockTs = entry.getKey().getTimestamp() & ColumnConstants.TIMESTAMP_MASK;
       Mutation mut = getMutation(entry.getKey().getRowData(), mutations);
       Key k = entry.getKey();
-      mut.put(k.getColumnFamilyData().toArray(), k.getColumnQualifierData().toArray(), k.getColumnVisibilityParsed(), ColumnConstants.DEL_LOCK_PREFIX | startTs,
-          DelLockValue.encode(lockTs, false, true));
+      // a column can have many commutative locks, rolling them back at the same timestamp would overwrite all but one rollback
+      long delLockTs = new LockValue(entry.getValue().get()).isCommutative() ? lockTs : startTs;
+      mut.put(k.getColumnFamilyData().toArray(), k.getColumnQualifierData().toArray(), k.getColumnVisibilityParsed(),
+          ColumnConstants.DEL_LOCK_PREFIX | delLockTs, DelLockValue.encode(lockTs, false, true));
     }
 
   }
@@ -187,13 +210,22 @@ public class LockResolver {
   private static boolean rollbackPrimary(Environment env, long startTs, PrimaryRowColumn prc, byte[] lockValue) {
     // TODO review use of PrewriteIter here
 
-    IteratorSetting iterConf = new IteratorSetting(10, PrewriteIterator.class);
-    PrewriteIterator.setSnaptime(iterConf, startTs);
+    IteratorSetting iterConf;
+    long delLockTs = startTs;
+    if (new LockValue(lockValue).isCommutative()) {
+      // other commutative locks on the primary column can have the same value, so check for the lock at its timestamp
+      iterConf = new IteratorSetting(10, RollbackCheckIterator.class);
+      RollbackCheckIterator.setLocktime(iterConf, prc.startTs);
+      delLockTs = prc.startTs;
+    } else {
+      iterConf = new IteratorSetting(10, PrewriteIterator.class);
+      PrewriteIterator.setSnaptime(iterConf, startTs);
+    }
     ConditionalFlutation delLockMutation = new ConditionalFlutation(env, prc.prow, new FluoCondition(env, prc.pcol).setIterators(iterConf).setValue(lockValue));
 
     // TODO sanity check on lockTs vs startTs
 
-    delLockMutation.put(prc.pcol, ColumnConstants.DEL_LOCK_PREFIX | startTs, DelLockValue.encode(prc.startTs, true, true));
+    delLockMutation.put(prc.pcol, ColumnConstants.DEL_LOCK_PREFIX | delLockTs, DelLockValue.encode(prc.startTs, true, true));
 
     ConditionalWriter cw = null;
 
@@ -225,7 +257,8 @@ public class LockResolver {
       Column col = SpanUtil.toRowColumn(entry.getKey()).getColumn();
       
       LockValue lv = new LockValue(entry.getValue().get());
-      ColumnUtil.commitColumn(env, lv.isTrigger(), false, col, lv.isWrite(), lv.isDelete(), lockTs, commitTs, env.getObservers().keySet(), mut);
+      ColumnUtil.commitColumn(env, lv.isTrigger(), false, col, lv.isWrite(), lv.isDelete(), lv.isDelta(), lockTs, commitTs, env.getObservers().keySet(),
+          mut);
     }
 
   }
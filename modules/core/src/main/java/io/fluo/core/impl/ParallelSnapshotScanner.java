@@ -16,7 +16,6 @@
 package io.fluo.core.impl;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -36,29 +35,38 @@ import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
 
 public class ParallelSnapshotScanner {
 
   private Environment env;
   private long startTs;
-  private HashSet<Bytes> unscannedRows;
-  private Set<Column> columns;
+  private Map<Bytes,Set<Column>> rowColumns;
+  // the columns of each row left to scan, after a scan only the columns that were locked
+  private Map<Bytes,Set<Column>> unscanned;
+  private boolean rescan = false;
+  // set when rows read different columns, so the scan can return columns fetched for other rows
+  private boolean filterRows;
   private TxStats stats;
 
-  ParallelSnapshotScanner(Collection<Bytes> rows, Set<Column> columns, Environment env, long startTs, TxStats stats) {
-    this.unscannedRows = new HashSet<>(rows);
-    this.columns = columns;
+  /**
+   * @param rowColumns the columns to read for each row, the scan fetches the union of all the columns and only returns the ones asked for each row
+   */
+  ParallelSnapshotScanner(Map<Bytes,Set<Column>> rowColumns, Environment env, long startTs, TxStats stats) {
+    this.rowColumns = rowColumns;
+    this.unscanned = rowColumns;
     this.env = env;
     this.startTs = startTs;
     this.stats = stats;
   }
 
-  private BatchScanner setupBatchScanner(Collection<Bytes> rows, Set<Column> columns) {
+  private BatchScanner setupBatchScanner() {
+    // more threads than rows would never have work, one thread is probably good when going for throughput with many concurrent transactions
+    int numThreads = Math.min(env.getScanThreads(), unscanned.size());
+
     BatchScanner scanner;
     try {
-      // TODO hardcoded number of threads!
-      // one thread is probably good.. going for throughput
-      scanner = env.getConnector().createBatchScanner(env.getTable(), env.getAuthorizations(), 1);
+      scanner = env.getConnector().createBatchScanner(env.getTable(), env.getAuthorizations(), numThreads);
     } catch (TableNotFoundException e) {
       throw new RuntimeException(e);
     }
@@ -66,15 +74,31 @@ public class ParallelSnapshotScanner {
     scanner.clearColumns();
     scanner.clearScanIterators();
 
-    List<Range> ranges = new ArrayList<>(rows.size());
-
-    for (Bytes row : rows) {
-      ranges.add(Range.exact(ByteUtil.toText(row)));
+    List<Range> ranges = new ArrayList<>(unscanned.size());
+    Set<Column> columns = new HashSet<>();
+
+    for (Entry<Bytes,Set<Column>> entry : unscanned.entrySet()) {
+      Text row = ByteUtil.toText(entry.getKey());
+      if (rescan) {
+        // only the columns that were locked are scanned again
+        for (Column col : entry.getValue())
+          ranges.add(Range.exact(row, ByteUtil.toText(col.getFamily()), ByteUtil.toText(col.getQualifier()), ByteUtil.toText(col.getVisibility())));
+      } else {
+        ranges.add(Range.exact(row));
+      }
+      columns.addAll(entry.getValue());
     }
 
     scanner.setRanges(ranges);
 
-    SnapshotScanner.setupScanner(scanner, new ArrayList<>(columns), startTs);
+    filterRows = false;
+    for (Set<Column> rowCols : unscanned.values()) {
+      // the columns of each row are a subset of all columns
+      if (rowCols.size() != columns.size())
+        filterRows = true;
+    }
+
+    SnapshotScanner.setupScanner(scanner, new ArrayList<>(columns), startTs, columns);
 
     return scanner;
   }
@@ -100,15 +124,20 @@ public class ParallelSnapshotScanner {
           stats.incrementLockWaitTime(waitTime);
           waitTime = Math.min(SnapshotScanner.MAX_WAIT_TIME, waitTime * 2);
         }
-        // TODO, could only rescan the row/cols that were locked instead of just the entire row
-
-        // retain the rows that were locked for future scans
-        HashSet<Bytes> lockedRows = new HashSet<>();
+        // only scan the columns that were locked again
+        Map<Bytes,Set<Column>> locked = new HashMap<>();
         for (Entry<Key,Value> entry : locks) {
-          lockedRows.add(ByteUtil.toBytes(entry.getKey().getRowData()));
+          Bytes row = ByteUtil.toBytes(entry.getKey().getRowData());
+          Set<Column> cols = locked.get(row);
+          if (cols == null) {
+            cols = new HashSet<>();
+            locked.put(row, cols);
+          }
+          cols.add(toColumn(entry.getKey()));
         }
 
-        unscannedRows.retainAll(lockedRows);
+        unscanned = locked;
+        rescan = true;
 
         continue;
       }
@@ -120,19 +149,27 @@ public class ParallelSnapshotScanner {
     }
   }
 
+  private static Column toColumn(Key key) {
+    Bytes cf = ByteUtil.toBytes(key.getColumnFamilyData());
+    Bytes cq = ByteUtil.toBytes(key.getColumnQualifierData());
+    return new Column(cf, cq).setVisibility(ByteUtil.toBytes(key.getColumnVisibilityData()));
+  }
+
   void scan(Map<Bytes,Map<Column,Bytes>> ret, List<Entry<Key,Value>> locks) {
 
-    BatchScanner bs = setupBatchScanner(unscannedRows, columns);
+    BatchScanner bs = setupBatchScanner();
     try {
       for (Entry<Key,Value> entry : bs) {
         Bytes row = ByteUtil.toBytes(entry.getKey().getRowData());
-        Bytes cf = ByteUtil.toBytes(entry.getKey().getColumnFamilyData());
-        Bytes cq = ByteUtil.toBytes(entry.getKey().getColumnQualifierData());
-
-        Column col = new Column(cf, cq).setVisibility(ByteUtil.toBytes(entry.getKey().getColumnVisibilityData()));
+        Column col = toColumn(entry.getKey());
 
         long colType = entry.getKey().getTimestamp() & ColumnConstants.PREFIX_MASK;
 
+        if (filterRows && !rowColumns.get(row).contains(col)) {
+          // fetched for another row
+          continue;
+        }
+
         if (colType == ColumnConstants.LOCK_PREFIX) {
           locks.add(entry);
         } else if (colType == ColumnConstants.DATA_PREFIX) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import io.fluo.accumulo.iterators.SnapshotIterator;
+import io.fluo.accumulo.util.ColumnConstants;
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.core.util.ByteUtil;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+
+/**
+ * Reads columns of many rows with one batch scan on behalf of transactions with start timestamps in a range. Only returns values that are the same
+ * at every timestamp in the range. Columns that are locked, do not exist, or changed within the range are left out, the transactions read those
+ * themselves.
+ */
+class PrefetchScanner {
+
+  private final Environment env;
+  private final long minStartTs;
+  private final long maxStartTs;
+
+  PrefetchScanner(Environment env, long minStartTs, long maxStartTs) {
+    this.env = env;
+    this.minStartTs = minStartTs;
+    this.maxStartTs = maxStartTs;
+  }
+
+  Map<Bytes,Map<Column,Bytes>> scan(Map<Bytes,Set<Column>> rowColumns) {
+    BatchScanner bs;
+    try {
+      bs = env.getConnector().createBatchScanner(env.getTable(), env.getAuthorizations(), 1);
+    } catch (TableNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+
+    try {
+      List<Range> ranges = new ArrayList<>(rowColumns.size());
+      Set<Column> allColumns = new HashSet<>();
+      for (Entry<Bytes,Set<Column>> entry : rowColumns.entrySet()) {
+        ranges.add(Range.exact(ByteUtil.toText(entry.getKey())));
+        allColumns.addAll(entry.getValue());
+      }
+
+      bs.setRanges(ranges);
+
+      for (Column col : allColumns) {
+        if (col.getQualifier() != null) {
+          bs.fetchColumn(ByteUtil.toText(col.getFamily()), ByteUtil.toText(col.getQualifier()));
+        } else {
+          bs.fetchColumnFamily(ByteUtil.toText(col.getFamily()));
+        }
+      }
+
+      IteratorSetting iterConf = new IteratorSetting(10, SnapshotIterator.class);
+      SnapshotIterator.setSnaptime(iterConf, maxStartTs);
+      SnapshotIterator.setUnchangedSince(iterConf, minStartTs);
+      bs.addScanIterator(iterConf);
+
+      Map<Bytes,Map<Column,Bytes>> ret = new HashMap<>();
+
+      for (Entry<Key,Value> entry : bs) {
+        // locks and truncated writes are left for the transaction to deal with
+        if ((entry.getKey().getTimestamp() & ColumnConstants.PREFIX_MASK) != ColumnConstants.DATA_PREFIX)
+          continue;
+
+        Bytes row = ByteUtil.toBytes(entry.getKey().getRowData());
+        Column col = new Column(ByteUtil.toBytes(entry.getKey().getColumnFamilyData()), ByteUtil.toBytes(entry.getKey().getColumnQualifierData()))
+            .setVisibility(ByteUtil.toBytes(entry.getKey().getColumnVisibilityData()));
+
+        // the scan fetches the union of all columns, only keep what was asked for this row
+        if (!rowColumns.get(row).contains(col))
+          continue;
+
+        Map<Column,Bytes> cols = ret.get(row);
+        if (cols == null) {
+          cols = new HashMap<>();
+          ret.put(row, cols);
+        }
+        cols.put(col, Bytes.wrap(entry.getValue().get()));
+      }
+
+      return ret;
+    } finally {
+      bs.close();
+    }
+  }
+}
@@ -23,19 +23,30 @@ import java.util.concurrent.CountDownLatch;
 
 import org.apache.accumulo.core.client.BatchWriter;
 import org.apache.accumulo.core.data.Mutation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 //created this class because batch writer blocks adding mutations while its flushing
 
 public class SharedBatchWriter {
 
+  private static final Logger log = LoggerFactory.getLogger(SharedBatchWriter.class);
+
   private final BatchWriter bw;
   private ArrayBlockingQueue<MutationBatch> mQueue = new ArrayBlockingQueue<>(1000);
   private MutationBatch end = new MutationBatch(new ArrayList<Mutation>());
+  // bytes of mutations queued by writers that do not wait for them, guarded by this
+  private final long maxAsyncBytes;
+  private long asyncBytes = 0;
   
   private static class MutationBatch {
 
     private List<Mutation> mutations;
+    private Mutation followUp;
+    private long asyncSize = 0;
     private CountDownLatch cdl;
+    // set before the latch is released if the flush that wrote this batch failed
+    private Exception failure;
 
     public MutationBatch(Mutation m) {
       mutations = Collections.singletonList(m);
@@ -53,13 +64,20 @@ public class SharedBatchWriter {
     @Override
     public void run() {
       boolean keepRunning = true;
-      while (keepRunning) {
+      // follow up mutations whose batch was flushed, written with the next flush
+      ArrayList<Mutation> followUps = new ArrayList<>();
+      while (keepRunning || followUps.size() > 0) {
+        ArrayList<MutationBatch> batches = new ArrayList<>();
+        ArrayList<Mutation> flushFollowUps = followUps;
+        followUps = new ArrayList<>();
         try {
 
-          ArrayList<MutationBatch> batches = new ArrayList<>();
-          batches.add(mQueue.take());
+          if (flushFollowUps.size() == 0)
+            batches.add(mQueue.take());
           mQueue.drainTo(batches);
 
+          bw.addMutations(flushFollowUps);
+
           for (MutationBatch mutationBatch : batches) {
             if(mutationBatch != end)
               bw.addMutations(mutationBatch.mutations);
@@ -67,24 +85,44 @@ public class SharedBatchWriter {
 
           bw.flush();
 
+          // follow ups only record batches that were written
           for (MutationBatch mutationBatch : batches) {
-            if(mutationBatch == end)
-              keepRunning = false;
-            mutationBatch.cdl.countDown();
+            if (mutationBatch != end && mutationBatch.followUp != null)
+              followUps.add(mutationBatch.followUp);
           }
 
         } catch (Exception e) {
-          // TODO error handling
-          e.printStackTrace();
+          log.error("Failed to write " + batches.size() + " batches of mutations and " + flushFollowUps.size() + " follow ups", e);
+          for (MutationBatch mutationBatch : batches)
+            mutationBatch.failure = e;
+        } finally {
+          // writers waiting on a batch or for room to queue one must never be left blocked, even if it failed
+          for (MutationBatch mutationBatch : batches) {
+            if (mutationBatch == end) {
+              // released once any follow ups are written
+              keepRunning = false;
+              continue;
+            }
+            if (mutationBatch.asyncSize > 0)
+              release(mutationBatch.asyncSize);
+            mutationBatch.cdl.countDown();
+          }
         }
       }
 
+      end.cdl.countDown();
+
     }
 
   }
 
-  public SharedBatchWriter(BatchWriter bw) {
+  /**
+   * @param maxAsyncBytes
+   *          size of mutations that can be queued without waiting, before {@link #writeMutationsAsync(List, Mutation)} blocks
+   */
+  public SharedBatchWriter(BatchWriter bw, long maxAsyncBytes) {
     this.bw = bw;
+    this.maxAsyncBytes = maxAsyncBytes;
     Thread thread = new Thread(new FlushTask());
     thread.setDaemon(true);
     thread.start();
@@ -95,6 +133,7 @@ public class SharedBatchWriter {
       MutationBatch mb = new MutationBatch(m);
       mQueue.put(mb);
       mb.cdl.await();
+      checkFailure(mb);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -109,11 +148,17 @@ public class SharedBatchWriter {
       MutationBatch mb = new MutationBatch(ml);
       mQueue.put(mb);
       mb.cdl.await();
+      checkFailure(mb);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
+  private static void checkFailure(MutationBatch mb) throws Exception {
+    if (mb.failure != null)
+      throw mb.failure;
+  }
+
   public void close() {
     try {
       mQueue.put(end);
@@ -132,5 +177,34 @@ public class SharedBatchWriter {
     }
   }
 
-}
+  /**
+   * Queues mutations without waiting for them to be written. The follow up mutation is only written after all of the mutations were flushed, so it can
+   * record that they are durable. If the flush fails the follow up is dropped and the failure is logged. Blocks while too many mutations queued this way
+   * are waiting to be written.
+   */
+  public void writeMutationsAsync(List<Mutation> ml, Mutation followUp) {
+    try {
+      MutationBatch mb = new MutationBatch(ml);
+      mb.followUp = followUp;
+      for (Mutation m : ml)
+        mb.asyncSize += m.estimatedMemoryUsed();
+      reserve(mb.asyncSize);
+      mQueue.put(mb);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private synchronized void reserve(long size) throws InterruptedException {
+    // a batch larger than the limit can still be written once nothing else is queued
+    while (asyncBytes > 0 && asyncBytes + size > maxAsyncBytes)
+      wait();
+    asyncBytes += size;
+  }
 
+  private synchronized void release(long size) {
+    asyncBytes -= size;
+    notifyAll();
+  }
+
+}
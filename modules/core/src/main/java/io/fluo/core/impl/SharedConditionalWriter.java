@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import io.fluo.api.data.Bytes;
+import org.apache.accumulo.core.client.ConditionalWriter;
+import org.apache.accumulo.core.data.ConditionalMutation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group commit for conditional mutations. Collects the conditional mutations of concurrently committing transactions and writes them with shared
+ * {@link ConditionalWriter#write(Iterator)} calls, so that many transactions committing at once need fewer RPCs. Results are routed back to each
+ * caller by row.
+ * <p/>
+ * A batch never contains two mutations for the same row and a row is never in two batches that are being written at once. A mutation for a row that
+ * is already being written waits for the next batch, so that conditional mutations for a row are still applied in the order they were written.
+ */
+public class SharedConditionalWriter implements ConditionalWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(SharedConditionalWriter.class);
+
+  // number of batches that can be written at once, while these are being written new mutations queue up for the next batches
+  static final int NUM_THREADS = 4;
+  static final int MAX_BATCH_SIZE = 1000;
+
+  private final ConditionalWriter cw;
+
+  private final LinkedList<WriteRequest> queue = new LinkedList<>();
+  private final Set<Bytes> rowsInFlight = new HashSet<>();
+  private boolean closed = false;
+  private final List<Thread> threads = new ArrayList<>();
+
+  private final AtomicLong numBatches = new AtomicLong(0);
+  private final AtomicLong numMutations = new AtomicLong(0);
+
+  private static class WriteRequest {
+    final ConditionalMutation mutation;
+    final Bytes row;
+    CountDownLatch cdl;
+    Result result;
+
+    WriteRequest(ConditionalMutation mutation) {
+      this.mutation = mutation;
+      this.row = Bytes.wrap(mutation.getRow());
+    }
+  }
+
+  private static final Function<WriteRequest,Result> GET_RESULT = new Function<WriteRequest,Result>() {
+    @Override
+    public Result apply(WriteRequest request) {
+      return request.result;
+    }
+  };
+
+  private class GroupTask implements Runnable {
+    @Override
+    public void run() {
+      while (true) {
+        Map<Bytes,WriteRequest> batch;
+        try {
+          batch = takeBatch();
+        } catch (InterruptedException e) {
+          return;
+        }
+
+        if (batch == null)
+          return;
+
+        try {
+          writeBatch(batch);
+        } finally {
+          finishBatch(batch);
+        }
+      }
+    }
+  }
+
+  public SharedConditionalWriter(ConditionalWriter cw) {
+    this.cw = cw;
+    for (int i = 0; i < NUM_THREADS; i++) {
+      Thread thread = new Thread(new GroupTask(), "Fluo group commit " + i);
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+  }
+
+  /**
+   * Waits for queued mutations and takes all that can be written together.
+   *
+   * @return mutations keyed by row or null if closed
+   */
+  private synchronized Map<Bytes,WriteRequest> takeBatch() throws InterruptedException {
+    while (true) {
+      Map<Bytes,WriteRequest> batch = new HashMap<>();
+
+      Iterator<WriteRequest> iter = queue.iterator();
+      while (iter.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+        WriteRequest request = iter.next();
+        if (!rowsInFlight.contains(request.row) && !batch.containsKey(request.row)) {
+          batch.put(request.row, request);
+          iter.remove();
+        }
+      }
+
+      if (batch.size() > 0) {
+        rowsInFlight.addAll(batch.keySet());
+        return batch;
+      }
+
+      if (closed && queue.isEmpty())
+        return null;
+
+      wait();
+    }
+  }
+
+  private synchronized void finishBatch(Map<Bytes,WriteRequest> batch) {
+    rowsInFlight.removeAll(batch.keySet());
+    // mutations waiting on these rows can now be written
+    notifyAll();
+  }
+
+  private void writeBatch(Map<Bytes,WriteRequest> batch) {
+    numBatches.incrementAndGet();
+    numMutations.addAndGet(batch.size());
+
+    List<ConditionalMutation> mutations = new ArrayList<>(batch.size());
+    for (WriteRequest request : batch.values())
+      mutations.add(request.mutation);
+
+    try {
+      Iterator<Result> results = cw.write(mutations.iterator());
+      while (results.hasNext()) {
+        Result result = results.next();
+        // results contain a copy of the mutation, so match them up by row
+        WriteRequest request = batch.get(Bytes.wrap(result.getMutation().getRow()));
+        request.result = result;
+        request.cdl.countDown();
+      }
+    } catch (RuntimeException e) {
+      log.error("Failed to write conditional mutations", e);
+    }
+
+    for (WriteRequest request : batch.values()) {
+      if (request.result == null) {
+        request.result = new Result(new IllegalStateException("No result for conditional mutation"), request.mutation, null);
+        request.cdl.countDown();
+      }
+    }
+  }
+
+  private synchronized void queue(List<WriteRequest> requests) {
+    if (closed)
+      throw new IllegalStateException("SharedConditionalWriter is closed");
+
+    queue.addAll(requests);
+    notifyAll();
+  }
+
+  @Override
+  public Iterator<Result> write(Iterator<ConditionalMutation> mutations) {
+    // callers bound how many mutations they write at once, the requests are the only copy of the list
+    List<WriteRequest> requests = new ArrayList<>();
+    while (mutations.hasNext())
+      requests.add(new WriteRequest(mutations.next()));
+
+    CountDownLatch cdl = new CountDownLatch(requests.size());
+    for (WriteRequest request : requests)
+      request.cdl = cdl;
+
+    queue(requests);
+
+    try {
+      cdl.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+
+    return Iterators.transform(requests.iterator(), GET_RESULT);
+  }
+
+  @Override
+  public Result write(ConditionalMutation mutation) {
+    List<WriteRequest> requests = new ArrayList<>(1);
+    WriteRequest request = new WriteRequest(mutation);
+    request.cdl = new CountDownLatch(1);
+    requests.add(request);
+
+    queue(requests);
+
+    try {
+      request.cdl.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+
+    return request.result;
+  }
+
+  /**
+   * @return the number of batches written, each is one call to the underlying conditional writer
+   */
+  public long getNumBatches() {
+    return numBatches.get();
+  }
+
+  /**
+   * @return the number of conditional mutations written
+   */
+  public long getNumMutations() {
+    return numMutations.get();
+  }
+
+  /**
+   * Writes any queued mutations and then closes the underlying conditional writer.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    cw.close();
+  }
+}
@@ -34,7 +34,7 @@ public class SharedResources implements AutoCloseable {
 
   private final Environment env;
   private final BatchWriter bw;
-  private final ConditionalWriter cw;
+  private final SharedConditionalWriter cw;
   private final SharedBatchWriter sbw;
   private final CuratorFramework curator;
   private TransactorID tid = null;
@@ -44,6 +44,7 @@ public class SharedResources implements AutoCloseable {
   private volatile boolean isClosed = false;
   private final TxInfoCache txInfoCache;
   private final VisibilityCache visCache;
+  private final ContentionTracker contentionTracker;
 
   public SharedResources(Environment env) throws TableNotFoundException {
     this.env = env;
@@ -51,11 +52,13 @@ public class SharedResources implements AutoCloseable {
         new ExponentialBackoffRetry(1000, 10));
     curator.start();
     bw = env.getConnector().createBatchWriter(env.getTable(), new BatchWriterConfig());
-    sbw = new SharedBatchWriter(bw);
-    cw = env.getConnector().createConditionalWriter(env.getTable(), 
+    sbw = new SharedBatchWriter(bw, env.getAsyncBufferSize());
+    ConditionalWriter accumuloCw = env.getConnector().createConditionalWriter(env.getTable(), 
         new ConditionalWriterConfig().setAuthorizations(env.getAuthorizations()));
+    cw = new SharedConditionalWriter(accumuloCw);
     txInfoCache = new TxInfoCache(env);
     visCache = new VisibilityCache();
+    contentionTracker = new ContentionTracker();
   }
   
   public SharedBatchWriter getBatchWriter() {
@@ -63,7 +66,7 @@ public class SharedResources implements AutoCloseable {
     return sbw;
   }
   
-  public ConditionalWriter getConditionalWriter() {
+  public SharedConditionalWriter getConditionalWriter() {
     checkIfClosed();
     return cw;
   }
@@ -119,6 +122,11 @@ public class SharedResources implements AutoCloseable {
     return visCache;
   }
 
+  public ContentionTracker getContentionTracker() {
+    checkIfClosed();
+    return contentionTracker;
+  }
+
   @Override
   public synchronized void close() {
     isClosed = true;
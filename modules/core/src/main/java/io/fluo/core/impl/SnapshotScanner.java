@@ -16,6 +16,7 @@
 package io.fluo.core.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
@@ -51,16 +52,25 @@ public class SnapshotScanner implements Iterator<Entry<Key,Value>> {
   private Iterator<Entry<Key,Value>> iterator;
   private Entry<Key,Value> next;
   private ScannerConfiguration config;
+  private final Collection<Column> exactColumns;
 
   static final long INITIAL_WAIT_TIME = 50;
   // TODO make configurable
   static final long MAX_WAIT_TIME = 60000;
 
   public SnapshotScanner(Environment env, ScannerConfiguration config, long startTs, TxStats stats) {
+    this(env, config, startTs, stats, null);
+  }
+
+  /**
+   * @param exactColumns if not null, only these columns are returned. The columns are filtered on the server and must match in visibility too.
+   */
+  SnapshotScanner(Environment env, ScannerConfiguration config, long startTs, TxStats stats, Collection<Column> exactColumns) {
     this.env = env;
     this.config = config;
     this.startTs = startTs;
     this.stats = stats;
+    this.exactColumns = exactColumns;
     setUpIterator();
   }
   
@@ -76,12 +86,12 @@ public class SnapshotScanner implements Iterator<Entry<Key,Value>> {
     
     scanner.setRange(SpanUtil.toRange(config.getSpan()));
 
-    setupScanner(scanner, config.getColumns(), startTs);
+    setupScanner(scanner, config.getColumns(), startTs, exactColumns);
     
     this.iterator = scanner.iterator();
   }
 
-  static void setupScanner(ScannerBase scanner, List<Column> columns, long startTs) {
+  static void setupScanner(ScannerBase scanner, List<Column> columns, long startTs, Collection<Column> exactColumns) {
     for (Column col : columns) {
       if (col.getQualifier() != null) {
         scanner.fetchColumn(ByteUtil.toText(col.getFamily()), ByteUtil.toText(col.getQualifier()));
@@ -92,6 +102,8 @@ public class SnapshotScanner implements Iterator<Entry<Key,Value>> {
     
     IteratorSetting iterConf = new IteratorSetting(10, SnapshotIterator.class);
     SnapshotIterator.setSnaptime(iterConf, startTs);
+    if (exactColumns != null)
+      SnapshotIterator.setColumns(iterConf, exactColumns);
     scanner.addScanIterator(iterConf);
   }
   
@@ -17,13 +17,12 @@ package io.fluo.core.impl;
 
 import java.io.IOException;
 import java.util.NoSuchElementException;
-import java.util.SortedSet;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.TreeSet;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.fluo.accumulo.util.LongUtil;
 import io.fluo.accumulo.util.ZookeeperConstants;
 import io.fluo.core.oracle.OracleClient;
@@ -36,19 +35,21 @@ import org.slf4j.LoggerFactory;
 /**
  * Allocates timestamps from Oracle for transactions and tracks 
  * the oldest active timestamp in Zookeeper for garbage collection
+ * <p/>
+ * Active timestamps are kept in {@link ActiveTimestamps}, so allocating and removing timestamps only locks one of several stripes. The tracker's
+ * monitor is only taken to create and close the Zookeeper node and by the timer thread.
  */
 public class TimestampTracker implements AutoCloseable {
 
   private static final Logger log = LoggerFactory.getLogger(TimestampTracker.class);
   private volatile long zkTimestamp = -1;
   private final Environment env;
-  private final SortedSet<Long> timestamps = new TreeSet<>();
+  private final ActiveTimestamps timestamps = new ActiveTimestamps();
   private volatile PersistentEphemeralNode node = null;
   private final TransactorID tid;
   private final Timer timer;
 
-  private boolean closed = false;
-  private int allocationsInProgress = 0;
+  private volatile boolean closed = false;
   private boolean updatingZk = false;
 
   public TimestampTracker(Environment env, TransactorID tid, long updatePeriodMs) {
@@ -71,24 +72,27 @@ public class TimestampTracker implements AutoCloseable {
             if (closed)
               return;
 
-            if (allocationsInProgress > 0) {
-              sawZeroCount = 0;
+            timestamps.lockAll();
+            try {
               if (timestamps.size() > 0) {
-                if (updatingZk)
-                  throw new IllegalStateException("expected updatingZk to be false");
-                ts = timestamps.first();
-                updatingZk = true;
-              }
-            } else if (allocationsInProgress == 0) {
-              sawZeroCount++;
-              if (sawZeroCount >= 2) {
                 sawZeroCount = 0;
-                closeZkNode();
+                if (node != null) {
+                  if (updatingZk)
+                    throw new IllegalStateException("expected updatingZk to be false");
+                  ts = oldestForZk();
+                  updatingZk = true;
+                }
+              } else {
+                sawZeroCount++;
+                if (sawZeroCount >= 2) {
+                  sawZeroCount = 0;
+                  // stripes stay locked while closing, so an allocation can not see the node before it is closed
+                  closeZkNode();
+                }
               }
-            } else {
-              throw new IllegalStateException("allocationsInProgress = " + allocationsInProgress);
+            } finally {
+              timestamps.unlockAll();
             }
-
           }
 
           // update can be done outside of sync block as timer has one thread and future
@@ -119,53 +123,55 @@ public class TimestampTracker implements AutoCloseable {
    * Allocate a timestamp
    */
   public long allocateTimestamp() {
+    Preconditions.checkState(!closed, "tracker closed ");
 
-    synchronized (this) {
-      Preconditions.checkState(!closed, "tracker closed ");
-
-      if (node == null) {
-        Preconditions.checkState(allocationsInProgress == 0, "expected allocationsInProgress == 0 when node == null");
-        Preconditions.checkState(!updatingZk, "unexpected concurrent ZK update");
-
-        createZkNode(getTimestamp());
-      }
-
-      allocationsInProgress++;
-    }
+    // add a place holder before requesting, so the timestamp will be greater than any oldest timestamp written to zookeeper
+    int stripe = timestamps.getPendingStripe();
+    long placeHolder = timestamps.addPending(stripe, zkTimestamp);
 
     try {
-      long ts = getTimestamp();
+      ListenableFuture<Long> future = OracleClient.getInstance(env).getTimestampAsync();
 
-      synchronized (this) {
-        timestamps.add(ts);
+      if (node == null) {
+        synchronized (this) {
+          if (node == null) {
+            // the node starts just before the timestamp being allocated, so only one round trip to the oracle is needed
+            createZkNode(getTimestamp(future) - 1);
+          }
+        }
       }
 
+      long ts = getTimestamp(future);
+      timestamps.activate(stripe, placeHolder, ts);
       return ts;
     } catch (RuntimeException re) {
-      synchronized (this) {
-        allocationsInProgress--;
-      }
+      timestamps.removePending(stripe, placeHolder);
       throw re;
-    } 
+    }
   }
 
   /**
    * Remove a timestamp (of completed transaction)
    */
-  public synchronized void removeTimestamp(long ts) throws NoSuchElementException {
+  public void removeTimestamp(long ts) throws NoSuchElementException {
     Preconditions.checkState(!closed, "tracker closed ");
-    Preconditions.checkState(allocationsInProgress > 0, "allocationsInProgress should be > 0 " + allocationsInProgress);
     Preconditions.checkNotNull(node);
     if (timestamps.remove(ts) == false) {
       throw new NoSuchElementException("Timestamp "+ts+" was previously removed or does not exist");
     }
+  }
 
-    allocationsInProgress--;
+  /**
+   * @return the oldest timestamp to write to zookeeper, all stripes must be locked
+   */
+  private long oldestForZk() {
+    // place holders added before the node was created may be lower than the node, but active timestamps never are
+    return Math.max(timestamps.min(), zkTimestamp);
   }
 
-  private long getTimestamp() {
+  private long getTimestamp(ListenableFuture<Long> future) {
     try {
-      return OracleClient.getInstance(env).getTimestamp();
+      return future.get();
     } catch (Exception e) {
       throw new IllegalStateException(e);
     }
@@ -205,20 +211,27 @@ public class TimestampTracker implements AutoCloseable {
   synchronized void updateZkNode() {
     Preconditions.checkState(!updatingZk, "unexpected concurrent ZK update");
 
-    if (allocationsInProgress > 0) {
+    timestamps.lockAll();
+    try {
       if (timestamps.size() > 0) {
-        updateZkNode(timestamps.first());
+        if (node != null)
+          updateZkNode(oldestForZk());
+      } else {
+        closeZkNode();
       }
-    } else if (allocationsInProgress == 0) {
-      closeZkNode();
-    } else {
-      throw new IllegalStateException("allocationsInProgress = " + allocationsInProgress);
+    } finally {
+      timestamps.unlockAll();
     }
   }
 
   @VisibleForTesting
   long getOldestActiveTimestamp() {
-    return timestamps.first();
+    timestamps.lockAll();
+    try {
+      return timestamps.min();
+    } finally {
+      timestamps.unlockAll();
+    }
   }
 
   @VisibleForTesting
@@ -228,7 +241,12 @@ public class TimestampTracker implements AutoCloseable {
 
   @VisibleForTesting
   boolean isEmpty() {
-    return timestamps.isEmpty();
+    timestamps.lockAll();
+    try {
+      return timestamps.size() == 0;
+    } finally {
+      timestamps.unlockAll();
+    }
   }
 
   @VisibleForTesting
@@ -24,6 +24,7 @@ import io.fluo.api.client.TransactionBase;
 import io.fluo.api.config.ScannerConfiguration;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.exceptions.AlreadySetException;
 import io.fluo.api.iterator.RowIterator;
 import org.apache.log4j.Logger;
@@ -68,6 +69,22 @@ public class TracingTransaction implements TransactionBase {
     return ret;
   }
 
+  @Override
+  public Map<Bytes,Map<Column,Bytes>> get(Map<Bytes,Set<Column>> rowColumns) throws Exception {
+    Map<Bytes,Map<Column,Bytes>> ret = tx.get(rowColumns);
+    // TODO make multiple log calls
+    log("get(%s) -> %s", rowColumns, ret);
+    return ret;
+  }
+
+  @Override
+  public Map<RowColumn,Bytes> get(Collection<RowColumn> rowColumns) throws Exception {
+    Map<RowColumn,Bytes> ret = tx.get(rowColumns);
+    // TODO make multiple log calls
+    log("get(%s) -> %s", rowColumns, ret);
+    return ret;
+  }
+
   @Override
   public RowIterator get(ScannerConfiguration config) throws Exception {
     // TODO log something better
@@ -93,6 +110,19 @@ public class TracingTransaction implements TransactionBase {
     tx.delete(row, col);
   }
 
+  @Override
+  public void add(Bytes row, Column col, long amount) throws AlreadySetException {
+    log("add(%s, %s, %d)", row, col, amount);
+    tx.add(row, col, amount);
+  }
+
+  @Override
+  public Bytes getForUpdate(Bytes row, Column col) throws Exception {
+    Bytes ret = tx.getForUpdate(row, col);
+    log("getForUpdate(%s, %s) -> %s", row, col, ret);
+    return ret;
+  }
+
   static boolean isTracingEnabled() {
     return log.isTraceEnabled();
   }
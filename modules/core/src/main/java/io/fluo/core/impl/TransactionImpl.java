@@ -28,21 +28,28 @@ import java.util.Set;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.fluo.accumulo.iterators.PrewriteIterator;
+import io.fluo.accumulo.iterators.RollbackCheckIterator;
 import io.fluo.accumulo.util.ColumnConstants;
 import io.fluo.accumulo.values.DelLockValue;
+import io.fluo.accumulo.values.DeltaValue;
 import io.fluo.accumulo.values.LockValue;
 import io.fluo.api.client.Snapshot;
 import io.fluo.api.client.Transaction;
 import io.fluo.api.config.ScannerConfiguration;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.data.Span;
 import io.fluo.api.exceptions.AlreadySetException;
 import io.fluo.api.exceptions.CommitException;
 import io.fluo.api.iterator.ColumnIterator;
 import io.fluo.api.iterator.RowIterator;
 import io.fluo.core.exceptions.AlreadyAcknowledgedException;
+import io.fluo.core.impl.WriteBuffer.Cell;
 import io.fluo.core.oracle.OracleClient;
 import io.fluo.core.util.ColumnUtil;
 import io.fluo.core.util.ConditionalFlutation;
@@ -61,6 +68,7 @@ import org.apache.accumulo.core.data.Condition;
 import org.apache.accumulo.core.data.ConditionalMutation;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.core.util.ArgumentChecker;
 
@@ -72,14 +80,21 @@ public class TransactionImpl implements Transaction, Snapshot {
   public static final byte[] EMPTY = new byte[0];
   public static final Bytes EMPTY_BS = Bytes.wrap(EMPTY);
   private static final Bytes DELETE = Bytes.wrap("special delete object");
+  // cached for columns that were read and did not exist
+  private static final Bytes ABSENT = Bytes.wrap("special absent object");
+  // size of the mutations built from the write buffer before they are written, so a transaction that spilled never has all of them on the heap
+  static final long COMMIT_CHUNK_BYTES = 1 << 20;
+  // rows read out of the write buffer while waiting on the oracle for the commit timestamp
+  private static final int COMMIT_PREFETCH_ROWS = 1000;
   private static enum TxStatus { OPEN, COMMIT_STARTED, COMMITTED, CLOSED };
   
   private final long startTs;
-  private final Map<Bytes,Map<Column,Bytes>> updates = new HashMap<>();;
-  private final Map<Bytes,Set<Column>> weakNotifications = new HashMap<>();
+  private final WriteBuffer updates;
+  private final WriteBuffer weakNotifications = new WriteBuffer();
   private final Set<Column> observedColumns;
   private final Environment env;
-  final Map<Bytes,Set<Column>> columnsRead = new HashMap<>();
+  // values read by this transaction, repeated reads are served from here
+  private final Map<Bytes,Map<Column,Bytes>> readCache = new HashMap<>();
   private final TxStats stats = new TxStats();
   private Bytes triggerRow;
   private Column triggerColumn;
@@ -87,6 +102,12 @@ public class TransactionImpl implements Transaction, Snapshot {
   private Column weakColumn;
   private TransactorNode tnode = null;
   private TxStatus status = TxStatus.OPEN;
+  // columns that could not be locked or committed by the last commit attempt
+  private Map<Bytes,Set<Column>> rejected = Collections.emptyMap();
+  // columns locked when they were read by getForUpdate and the values read, the first one locked is the primary column of the transaction
+  private final Map<Bytes,Map<Column,Bytes>> lockedForUpdate = new HashMap<>();
+  private Bytes updatePrimaryRow = null;
+  private Column updatePrimaryCol = null;
 
   private ColumnVisibility gv(Column colvis) {
     return env.getSharedResources().getVisCache().getCV(colvis);
@@ -98,6 +119,7 @@ public class TransactionImpl implements Transaction, Snapshot {
     this.env = env;
     this.startTs = startTs;
     this.observedColumns = env.getObservers().keySet();
+    this.updates = new WriteBuffer(env.getTransactionSpillThreshold(), env.getTransactionSpillDir());
     
     if (triggerColumn != null && env.getWeakObservers().containsKey(triggerColumn)) {
       this.weakRow = triggerRow;
@@ -108,9 +130,7 @@ public class TransactionImpl implements Transaction, Snapshot {
     }
     
     if (triggerRow != null) {
-      Map<Column,Bytes> colUpdates = new HashMap<>();
-      colUpdates.put(triggerColumn, null);
-      updates.put(triggerRow, colUpdates);
+      updates.putNoValue(triggerRow, triggerColumn);
     }
   }
   
@@ -133,7 +153,6 @@ public class TransactionImpl implements Transaction, Snapshot {
   @Override
   public Bytes get(Bytes row, Column column) throws Exception {
     checkIfOpen();
-    // TODO cache? precache?
     return get(row, Collections.singleton(column)).get(column);
   }
 
@@ -143,19 +162,35 @@ public class TransactionImpl implements Transaction, Snapshot {
     return getImpl(row, columns);
   }
   
+  /**
+   * Reads columns of a row, only looking up columns in the table that this transaction has not already read or written.
+   */
   private Map<Column,Bytes> getImpl(Bytes row, Set<Column> columns) throws Exception {
-    
-    // TODO push visibility filtering to server side?
 
     env.getSharedResources().getVisCache().validate(columns);
 
+    Set<Column> toRead = getUncached(row, columns);
+
+    if (toRead.size() > 0) {
+      stats.incrementCacheMisses(toRead.size());
+      cacheRead(row, toRead, scanRow(row, toRead));
+    }
+
+    stats.incrementCacheHits(columns.size() - toRead.size());
+
+    return getCached(row, columns);
+  }
+
+  private Map<Column,Bytes> scanRow(Bytes row, Set<Column> columns) throws Exception {
+
     ScannerConfiguration config = new ScannerConfiguration();
     config.setSpan(Span.exact(row));
     for (Column column : columns) {
       config.fetchColumn(column.getFamily(), column.getQualifier());
     }
-    
-    RowIterator iter = getImpl(config);
+
+    // the scan only returns the requested columns, visibility included
+    RowIterator iter = new RowIteratorImpl(new SnapshotScanner(this.env, config, startTs, stats, columns));
     
     Map<Column,Bytes> ret = new HashMap<>();
 
@@ -164,15 +199,10 @@ public class TransactionImpl implements Transaction, Snapshot {
       ColumnIterator citer = entry.getValue();
       while (citer.hasNext()) {
         Entry<Column,Bytes> centry = citer.next();
-        if (columns.contains(centry.getKey())) {
-          ret.put(centry.getKey(), centry.getValue());
-        }
+        ret.put(centry.getKey(), centry.getValue());
       }
     }
     
-    // only update columns read after successful read
-    updateColumnsRead(row, columns);
-    
     return ret;
   }
     
@@ -180,26 +210,159 @@ public class TransactionImpl implements Transaction, Snapshot {
   public Map<Bytes,Map<Column,Bytes>> get(Collection<Bytes> rows, Set<Column> columns) throws Exception {
     checkIfOpen();
 
-    env.getSharedResources().getVisCache().validate(columns);
+    Map<Bytes,Set<Column>> rowColumns = new HashMap<>();
+    for (Bytes row : rows)
+      rowColumns.put(row, columns);
 
-    ParallelSnapshotScanner pss = new ParallelSnapshotScanner(rows, columns, env, startTs, stats);
+    return getImpl(rowColumns);
+  }
+
+  @Override
+  public Map<Bytes,Map<Column,Bytes>> get(Map<Bytes,Set<Column>> rowColumns) throws Exception {
+    checkIfOpen();
+    return getImpl(rowColumns);
+  }
 
-    Map<Bytes,Map<Column,Bytes>> ret = pss.scan();
+  @Override
+  public Map<RowColumn,Bytes> get(Collection<RowColumn> rowColumns) throws Exception {
+    checkIfOpen();
 
-    for (Entry<Bytes,Map<Column,Bytes>> entry : ret.entrySet()) {
-      updateColumnsRead(entry.getKey(), entry.getValue().keySet());
+    Map<Bytes,Set<Column>> rowColumnMap = new HashMap<>();
+    for (RowColumn rc : rowColumns) {
+      Set<Column> cols = rowColumnMap.get(rc.getRow());
+      if (cols == null) {
+        cols = new HashSet<>();
+        rowColumnMap.put(rc.getRow(), cols);
+      }
+      cols.add(rc.getColumn());
+    }
+
+    Map<Bytes,Map<Column,Bytes>> read = getImpl(rowColumnMap);
+
+    Map<RowColumn,Bytes> ret = new HashMap<>();
+    for (Entry<Bytes,Map<Column,Bytes>> rowEntry : read.entrySet()) {
+      for (Entry<Column,Bytes> colEntry : rowEntry.getValue().entrySet()) {
+        ret.put(new RowColumn(rowEntry.getKey(), colEntry.getKey()), colEntry.getValue());
+      }
     }
 
     return ret;
   }
 
-  private void updateColumnsRead(Bytes row, Set<Column> columns) {
-    Set<Column> colsRead = columnsRead.get(row);
-    if (colsRead == null) {
-      colsRead = new HashSet<>();
-      columnsRead.put(row, colsRead);
+  /**
+   * Reads different columns for each row with one parallel scan of the columns this transaction has not already read or written.
+   */
+  private Map<Bytes,Map<Column,Bytes>> getImpl(Map<Bytes,Set<Column>> rowColumns) throws Exception {
+    Map<Bytes,Set<Column>> toRead = new HashMap<>();
+    int requested = 0;
+    int uncached = 0;
+    for (Entry<Bytes,Set<Column>> entry : rowColumns.entrySet()) {
+      env.getSharedResources().getVisCache().validate(entry.getValue());
+
+      Set<Column> rowUncached = getUncached(entry.getKey(), entry.getValue());
+      if (rowUncached.size() > 0) {
+        toRead.put(entry.getKey(), rowUncached);
+        uncached += rowUncached.size();
+      }
+      requested += entry.getValue().size();
+    }
+
+    if (toRead.size() > 0) {
+      ParallelSnapshotScanner pss = new ParallelSnapshotScanner(toRead, env, startTs, stats);
+
+      Map<Bytes,Map<Column,Bytes>> read = pss.scan();
+
+      for (Entry<Bytes,Set<Column>> entry : toRead.entrySet()) {
+        Map<Column,Bytes> rowRead = read.get(entry.getKey());
+        cacheRead(entry.getKey(), entry.getValue(), rowRead == null ? Collections.<Column,Bytes> emptyMap() : rowRead);
+      }
+    }
+
+    stats.incrementCacheMisses(uncached);
+    stats.incrementCacheHits(requested - uncached);
+
+    Map<Bytes,Map<Column,Bytes>> ret = new HashMap<>();
+    for (Entry<Bytes,Set<Column>> entry : rowColumns.entrySet()) {
+      Map<Column,Bytes> rowRet = getCached(entry.getKey(), entry.getValue());
+      if (rowRet.size() > 0)
+        ret.put(entry.getKey(), rowRet);
+    }
+
+    return ret;
+  }
+
+  /**
+   * @return the columns that this transaction has not read or written
+   */
+  private Set<Column> getUncached(Bytes row, Set<Column> columns) {
+    Map<Column,Bytes> rowCache = readCache.get(row);
+
+    Set<Column> uncached = new HashSet<>();
+    for (Column col : columns) {
+      if ((rowCache == null || !rowCache.containsKey(col)) && !isOverwritten(row, col))
+        uncached.add(col);
+    }
+    return uncached;
+  }
+
+  /**
+   * @return true if this transaction set or deleted a column, a delta is added to what was read so its column still needs to be read
+   */
+  private boolean isOverwritten(Bytes row, Column col) {
+    return updates.isOverwrite(row, col);
+  }
+
+  private boolean isSet(Bytes row, Column col) {
+    return updates.isSet(row, col);
+  }
+
+  private void cacheRead(Bytes row, Set<Column> columns, Map<Column,Bytes> read) {
+    Map<Column,Bytes> rowCache = readCache.get(row);
+    if (rowCache == null) {
+      rowCache = new HashMap<>();
+      readCache.put(row, rowCache);
+    }
+
+    for (Column col : columns) {
+      Bytes val = read.get(col);
+      rowCache.put(col, val == null ? ABSENT : val);
+    }
+  }
+
+  /**
+   * Gets columns from the cache, with this transaction's own sets and deletes taking precedence over what was read and its deltas added to it.
+   */
+  private Map<Column,Bytes> getCached(Bytes row, Set<Column> columns) {
+    Map<Column,Bytes> rowCache = readCache.get(row);
+
+    Map<Column,Bytes> ret = new HashMap<>();
+    for (Column col : columns) {
+      Bytes val = null;
+      // only cells this transaction set are copied out of the write buffer
+      Cell cell = updates.isSet(row, col) ? updates.get(row, col) : null;
+      if (cell != null && !cell.isDelta())
+        val = cell.hasValue() ? cell.getValue() : DELETE;
+      else if (rowCache != null)
+        val = rowCache.get(col);
+
+      if (cell != null && cell.isDelta()) {
+        long base = val == null || val == ABSENT ? 0 : DeltaValue.decode(val.toArray());
+        val = Bytes.wrap(DeltaValue.encode(base + cell.getDelta()));
+      }
+
+      if (val != null && val != DELETE && val != ABSENT)
+        ret.put(col, val);
     }
-    colsRead.addAll(columns);
+    return ret;
+  }
+
+  /**
+   * Adds values that were read for this transaction before it started processing, such as columns prefetched by a worker. The values must be what
+   * this transaction would read at its start timestamp.
+   */
+  void addPrefetched(Bytes row, Map<Column,Bytes> values) {
+    checkIfOpen();
+    cacheRead(row, values.keySet(), values);
   }
 
   // TODO add a get that uses the batch scanner
@@ -225,21 +388,165 @@ public class TransactionImpl implements Transaction, Snapshot {
 
     env.getSharedResources().getVisCache().validate(col);
 
-    // TODO copy?
-
-    Map<Column,Bytes> colUpdates = updates.get(row);
-    if (colUpdates == null) {
-      colUpdates = new HashMap<>();
-      updates.put(row, colUpdates);
-    }
-    
-    if (colUpdates.get(col) != null) {
+    if (isSet(row, col)) {
       throw new AlreadySetException("Value already set " + row + " " + col);
     }
-    colUpdates.put(col, value);
+
+    // the buffer copies the row, column and value
+    if (value == DELETE)
+      updates.putDelete(row, col);
+    else
+      updates.put(row, col, value);
   }
   
 
+  @Override
+  public Bytes getForUpdate(Bytes row, Column col) throws Exception {
+    checkIfOpen();
+    ArgumentChecker.notNull(row, col);
+
+    if (col.getFamily().equals(ColumnConstants.NOTIFY_CF)) {
+      throw new IllegalArgumentException(ColumnConstants.NOTIFY_CF + " is a reserved family");
+    }
+
+    env.getSharedResources().getVisCache().validate(col);
+
+    if (updates.isDelta(row, col))
+      throw new AlreadySetException("Delta already added " + row + " " + col);
+
+    boolean locked = isLockedForUpdate(row, col);
+    if (!locked && !lockForUpdate(row, col)) {
+      rejected = Collections.singletonMap(row, Collections.singleton(col));
+      stats.incrementCollisions(1);
+      env.getSharedResources().getContentionTracker().collided(rejected);
+      rollbackLocksForUpdate();
+      throw new CommitException("Failed to lock " + row + " " + col + " for update");
+    }
+
+    // nothing else can write the column while it is locked, so the value read is the value it has when this transaction commits
+    Bytes val = get(row, col);
+    if (!locked)
+      lockedForUpdate.get(row).put(col, val == null ? ABSENT : val);
+    return val;
+  }
+
+  private boolean isLockedForUpdate(Bytes row, Column col) {
+    Map<Column,Bytes> cols = lockedForUpdate.get(row);
+    return cols != null && cols.containsKey(col);
+  }
+
+  /**
+   * @return the value of a lock taken by getForUpdate. The lock is never written again, so it is a write lock even if the column is not changed. A
+   *         column that is not changed is committed with the value read, see {@link #prewrite}.
+   */
+  private byte[] getLockForUpdateValue(Bytes row) {
+    return LockValue.encode(updatePrimaryRow, updatePrimaryCol, true, false, row.equals(triggerRow), getTransactorID());
+  }
+
+  /**
+   * Locks a column before it is read, failing if the column is locked by another transaction or was written after this transaction started. Locks of
+   * dead transactions are resolved and the lock is tried once more.
+   */
+  private boolean lockForUpdate(Bytes row, Column col) throws Exception {
+    if (updatePrimaryRow == null) {
+      updatePrimaryRow = row;
+      updatePrimaryCol = col;
+    }
+
+    IteratorSetting iterConf = new IteratorSetting(10, PrewriteIterator.class);
+    PrewriteIterator.setSnaptime(iterConf, startTs);
+    if (row.equals(triggerRow) && col.equals(triggerColumn))
+      PrewriteIterator.enableAckCheck(iterConf);
+
+    ConditionalFlutation cm = new ConditionalFlutation(env, row, new FluoCondition(env, col).setIterators(iterConf));
+    cm.put(col, ColumnConstants.LOCK_PREFIX | startTs, getLockForUpdateValue(row));
+
+    ConditionalWriter cw = env.getSharedResources().getConditionalWriter();
+    Status status = writeLock(cw, row, col, cm);
+    if (status != Status.ACCEPTED) {
+      Entry<Key,Value> entry = ColumnUtil.checkColumn(env, iterConf, row, col);
+      if (entry != null && (entry.getKey().getTimestamp() & ColumnConstants.PREFIX_MASK) == ColumnConstants.LOCK_PREFIX
+          && LockResolver.resolveLocks(env, startTs, stats, Collections.singletonList(entry), System.currentTimeMillis()))
+        status = writeLock(cw, row, col, cm);
+    }
+
+    if (status != Status.ACCEPTED) {
+      if (lockedForUpdate.isEmpty()) {
+        updatePrimaryRow = null;
+        updatePrimaryCol = null;
+      }
+      return false;
+    }
+
+    Map<Column,Bytes> cols = lockedForUpdate.get(row);
+    if (cols == null) {
+      cols = new HashMap<>();
+      lockedForUpdate.put(row, cols);
+    }
+    // the value read is added by getForUpdate
+    cols.put(col, null);
+
+    // committing the transaction releases the lock
+    updates.putNoValue(row, col);
+    return true;
+  }
+
+  /**
+   * Rolls back the locks taken by getForUpdate. The primary is rolled back first, so readers that find the other locks roll them back if this fails.
+   */
+  private void rollbackLocksForUpdate() {
+    if (updatePrimaryRow == null)
+      return;
+
+    Flutation m = new Flutation(env, updatePrimaryRow);
+    m.put(updatePrimaryCol, ColumnConstants.DEL_LOCK_PREFIX | startTs, DelLockValue.encode(startTs, true, true));
+    env.getSharedResources().getBatchWriter().writeMutation(m);
+
+    ArrayList<Mutation> mutations = new ArrayList<>();
+    for (Entry<Bytes,Map<Column,Bytes>> entry : lockedForUpdate.entrySet()) {
+      m = new Flutation(env, entry.getKey());
+      for (Column col : entry.getValue().keySet()) {
+        if (!entry.getKey().equals(updatePrimaryRow) || !col.equals(updatePrimaryCol))
+          m.put(col, ColumnConstants.DEL_LOCK_PREFIX | startTs, DelLockValue.encode(startTs, false, true));
+      }
+      if (m.size() > 0)
+        mutations.add(m);
+    }
+    env.getSharedResources().getBatchWriter().writeMutations(mutations);
+
+    m = new Flutation(env, updatePrimaryRow);
+    m.put(updatePrimaryCol, ColumnConstants.TX_DONE_PREFIX | startTs, EMPTY);
+    env.getSharedResources().getBatchWriter().writeMutation(m);
+
+    lockedForUpdate.clear();
+    updatePrimaryRow = null;
+    updatePrimaryCol = null;
+  }
+
+  @Override
+  public void add(Bytes row, Column col, long amount) throws AlreadySetException {
+    checkIfOpen();
+    ArgumentChecker.notNull(row, col);
+
+    if (col.getFamily().equals(ColumnConstants.NOTIFY_CF)) {
+      throw new IllegalArgumentException(ColumnConstants.NOTIFY_CF + " is a reserved family");
+    }
+
+    env.getSharedResources().getVisCache().validate(col);
+
+    if (isLockedForUpdate(row, col))
+      throw new AlreadySetException("Column locked for update " + row + " " + col);
+
+    Cell cell = updates.get(row, col);
+    if (cell != null && cell.isSet()) {
+      if (!cell.isDelta())
+        throw new AlreadySetException("Value already set " + row + " " + col);
+      amount += cell.getDelta();
+    }
+
+    updates.putDelta(row, col, amount);
+  }
+
   @Override
   public void setWeakNotification(Bytes row, Column col) {
     checkIfOpen();
@@ -252,13 +559,7 @@ public class TransactionImpl implements Transaction, Snapshot {
 
     env.getSharedResources().getVisCache().validate(col);
 
-    Set<Column> columns = weakNotifications.get(row);
-    if (columns == null) {
-      columns = new HashSet<>();
-      weakNotifications.put(row, columns);
-    }
-
-    columns.add(col);
+    weakNotifications.putNoValue(row, col);
   }
 
   @Override
@@ -268,35 +569,94 @@ public class TransactionImpl implements Transaction, Snapshot {
     set(row, col, DELETE);
   }
   
-  private ConditionalFlutation prewrite(ConditionalFlutation cm, Bytes row, Column col, Bytes val, Bytes primaryRow, Column primaryColumn,
-      boolean isTriggerRow) {
+  private ConditionalFlutation prewrite(ConditionalFlutation cm, Cell cell, Bytes primaryRow, Column primaryColumn, boolean isTriggerRow) {
+    Column col = cell.getColumn();
     IteratorSetting iterConf = new IteratorSetting(10, PrewriteIterator.class);
     PrewriteIterator.setSnaptime(iterConf, startTs);
     boolean isTrigger = isTriggerRow && col.equals(triggerColumn);
     if (isTrigger)
       PrewriteIterator.enableAckCheck(iterConf);
+    // deltas in the row that triggered the transaction take normal locks, see LockValue.isCommutative()
+    if (cell.isDelta() && !isTriggerRow)
+      PrewriteIterator.enableDelta(iterConf);
+    if (cell.isDelta())
+      PrewriteIterator.enableLongCheck(iterConf);
     
     Condition cond = new FluoCondition(env, col).setIterators(iterConf);
+    boolean forUpdate = isLockedForUpdate(cell.getRow(), col);
+    // a column locked by getForUpdate already has its final lock, only check that this transaction still holds it
+    if (forUpdate)
+      cond.setValue(getLockForUpdateValue(cell.getRow()));
     
     if (cm == null)
-      cm = new ConditionalFlutation(env, row, cond);
+      cm = new ConditionalFlutation(env, cell.getRow(), cond);
     else
       cm.addCondition(cond);
     
-    if (val != null && val != DELETE)
-      cm.put(col, ColumnConstants.DATA_PREFIX | startTs, val.toArray());
+    if (cell.hasValue())
+      cm.put(col, ColumnConstants.DATA_PREFIX | startTs, cell.getValue().toArray());
+    else if (cell.isDelta())
+      cm.put(col, ColumnConstants.DATA_PREFIX | startTs, DeltaValue.encode(cell.getDelta()));
+    else if (forUpdate && !cell.isSet()) {
+      // the lock is a write lock, so a column that was not changed is written again with the value read
+      Bytes val = lockedForUpdate.get(cell.getRow()).get(col);
+      if (val == null)
+        throw new IllegalStateException("value of column locked for update is unknown " + cell.getRow() + " " + col);
+      if (val != ABSENT)
+        cm.put(col, ColumnConstants.DATA_PREFIX | startTs, val.toArray());
+    }
 
-    cm.put(col, ColumnConstants.LOCK_PREFIX | startTs, LockValue.encode(primaryRow, primaryColumn, val != null, val == DELETE, isTriggerRow, getTransactorID()));
+    // writing a second lock with the same key and another value would leave it up to compactions which lock survives
+    if (!forUpdate)
+      cm.put(col, ColumnConstants.LOCK_PREFIX | startTs,
+          LockValue.encode(primaryRow, primaryColumn, cell.isSet(), cell.isDelete(), isTriggerRow, cell.isDelta(), getTransactorID()));
     
     return cm;
   }
-  
-  private ConditionalFlutation prewrite(Bytes row, Column col, Bytes val, Bytes primaryRow, Column primaryColumn, boolean isTriggerRow) {
-    return prewrite(null, row, col, val, primaryRow, primaryColumn, isTriggerRow);
+
+  /**
+   * Creates one conditional mutation that locks all cells of a row, leaving out the primary cell.
+   *
+   * @return null if the row only has the primary cell or only has columns locked for update that have nothing to write
+   */
+  private ConditionalFlutation prewriteRow(List<Cell> cells, CommitData cd) {
+    ConditionalFlutation cm = null;
+    boolean isTriggerRow = cells.get(0).getRow().equals(triggerRow);
+    for (Cell cell : cells) {
+      if (!cd.isPrimary(cell))
+        cm = prewrite(cm, cell, cd.prow, cd.pcol, isTriggerRow);
+    }
+    if (cm != null && cm.size() == 0)
+      return null;
+    return cm;
+  }
+
+  /**
+   * @return true if a column is committed as a write, columns locked for update are committed as writes even if they were not changed
+   */
+  private boolean isWrite(Cell cell) {
+    return cell.isSet() || isLockedForUpdate(cell.getRow(), cell.getColumn());
+  }
+
+  /**
+   * @return true if committing a column does not notify observers, a column locked for update that was not changed is treated like a delete
+   */
+  private boolean isDelete(Cell cell) {
+    return cell.isDelete() || (!cell.isSet() && isLockedForUpdate(cell.getRow(), cell.getColumn()));
   }
 
-  private void prewrite(ConditionalFlutation cm, Column col, Bytes val, Bytes primaryRow, Column primaryColumn, boolean isTriggerRow) {
-    prewrite(cm, null, col, val, primaryRow, primaryColumn, isTriggerRow);
+  /**
+   * Adds the writes that commit the cells of a row to a mutation, leaving out the primary cell.
+   */
+  private void commitRow(List<Cell> cells, CommitData cd, long commitTs, Mutation m) {
+    boolean isTriggerRow = cells.get(0).getRow().equals(triggerRow);
+    for (Cell cell : cells) {
+      if (cd.isPrimary(cell))
+        continue;
+      Column col = cell.getColumn();
+      ColumnUtil.commitColumn(env, isTriggerRow && col.equals(triggerColumn), false, col, isWrite(cell), isDelete(cell), cell.isDelta(), startTs,
+          commitTs, observedColumns, m);
+    }
   }
 
 
@@ -304,11 +664,20 @@ public class TransactionImpl implements Transaction, Snapshot {
     ConditionalWriter cw;
     private Bytes prow;
     private Column pcol;
-    private Bytes pval;
-
-    private HashSet<Bytes> acceptedRows;
+    // primary column as buffered by the transaction
+    private Cell pcell;
+
+    // locks are written in row order, rows up to this one that were not rejected hold secondary locks
+    private Bytes lastLockedRow;
+    // a column whose delta was rejected because its value is not a long
+    private RowColumn nonLongColumn;
+    private HashSet<Bytes> rejectedRows = new HashSet<>();
     private Map<Bytes,Set<Column>> rejected = new HashMap<>();
     
+    private boolean isPrimary(Cell cell) {
+      return cell.getRow().equals(prow) && cell.getColumn().equals(pcol);
+    }
+
     private void addPrimaryToRejected() {
       rejected = Collections.singletonMap(prow, Collections.singleton(pcol));
     }
@@ -330,139 +699,263 @@ public class TransactionImpl implements Transaction, Snapshot {
 
     @Override
     public String toString() {
-      return prow + " " + pcol + " " + pval + " " + rejected.size();
+      return prow + " " + pcol + " " + rejected.size();
     }
   }
 
   public boolean preCommit(CommitData cd) throws TableNotFoundException, AccumuloException, AccumuloSecurityException, AlreadyAcknowledgedException {
-    if (triggerRow != null) {
+    return lock(cd);
+  }
+  
+  public boolean preCommit(CommitData cd, Bytes primRow, Column primCol) throws TableNotFoundException, AccumuloException, AccumuloSecurityException,
+      AlreadyAcknowledgedException {
+    return lock(cd, primRow, primCol);
+  }
+
+  private boolean lock(CommitData cd) throws TableNotFoundException, AccumuloException, AccumuloSecurityException, AlreadyAcknowledgedException {
+    if (updatePrimaryRow != null) {
+      // other locks taken by getForUpdate already point to this primary
+      return lock(cd, updatePrimaryRow, updatePrimaryCol);
+    } else if (triggerRow != null) {
       // always want to throw already ack exception if collision, so process trigger first
-      return preCommit(cd, triggerRow, triggerColumn);
+      return lock(cd, triggerRow, triggerColumn);
     } else {
-      Bytes prow = updates.keySet().iterator().next();
-      Map<Column,Bytes> colSet = updates.get(prow);
-      Column pcol = colSet.keySet().iterator().next();
-      return preCommit(cd, prow, pcol);
+      Cell cell = updates.iterator().next();
+      return lock(cd, cell.getRow(), cell.getColumn());
     }
-
   }
-  
-  public boolean preCommit(CommitData cd, Bytes primRow, Column primCol) throws TableNotFoundException, AccumuloException, AccumuloSecurityException,
+
+  private boolean lock(CommitData cd, Bytes primRow, Column primCol) throws TableNotFoundException, AccumuloException, AccumuloSecurityException,
       AlreadyAcknowledgedException {
     
     checkIfOpen();
+    Preconditions.checkArgument(updatePrimaryRow == null || (updatePrimaryRow.equals(primRow) && updatePrimaryCol.equals(primCol)),
+        "primary column must be the first column locked for update " + updatePrimaryRow + " " + updatePrimaryCol);
     status = TxStatus.COMMIT_STARTED;
 
     // get a primary column
     cd.prow = primRow;
-    Map<Column,Bytes> colSet = updates.get(cd.prow);
     cd.pcol = primCol;
-    cd.pval = colSet.remove(primCol);
-    if (colSet.size() == 0)
-      updates.remove(cd.prow);
+    cd.pcell = updates.get(primRow, primCol);
+    Preconditions.checkArgument(cd.pcell != null, "primary column was not set by transaction " + primRow + " " + primCol);
     
     // try to lock primary column
-    ConditionalMutation pcm = prewrite(cd.prow, cd.pcol, cd.pval, cd.prow, cd.pcol, cd.prow.equals(triggerRow));
+    ConditionalMutation pcm = prewrite(null, cd.pcell, cd.prow, cd.pcol, cd.prow.equals(triggerRow));
     
-    Status mutationStatus = cd.cw.write(pcm).getStatus();
-    
-    while (mutationStatus == Status.UNKNOWN) {
-      
-      TxInfo txInfo = TxInfo.getTransactionInfo(env, cd.prow, cd.pcol, startTs);
-      
-      switch (txInfo.status) {
-        case LOCKED:
-          mutationStatus = Status.ACCEPTED;
-          break;
-        case ROLLED_BACK:
-          mutationStatus = Status.REJECTED;
-          break;
-        case UNKNOWN:
-          mutationStatus = cd.cw.write(pcm).getStatus();
-          // TODO handle case were data other tx has lock
-          break;
-        case COMMITTED:
-        default:
-          throw new IllegalStateException("unexpected tx state " + txInfo.status + " " + cd.prow + " " + cd.pcol);
-          
-      }
-    }
+    // a primary locked for update with nothing to write is already locked, committing it checks that the lock is still held
+    Status mutationStatus = pcm.size() == 0 ? Status.ACCEPTED : writePrimaryLock(cd, pcm);
     
     if (mutationStatus != Status.ACCEPTED) {
       cd.addPrimaryToRejected();
       if (checkForAckCollision(pcm)) {
         throw new AlreadyAcknowledgedException();
       }
+      checkForNonLong(findNonLongColumn(pcm));
       return false;
     }
     
     // TODO if trigger is always primary row:col, then do not need checks elsewhere
-    // try to lock other columns
-    ArrayList<ConditionalMutation> mutations = new ArrayList<>();
-    
-    for (Entry<Bytes,Map<Column,Bytes>> rowUpdates : updates.entrySet()) {
-      ConditionalFlutation cm = null;
-      boolean isTriggerRow = rowUpdates.getKey().equals(triggerRow);
-      
-      for (Entry<Column,Bytes> colUpdates : rowUpdates.getValue().entrySet()) {
-        if (cm == null)
-          cm = prewrite(rowUpdates.getKey(), colUpdates.getKey(), colUpdates.getValue(), cd.prow, cd.pcol, isTriggerRow);
-        else
-          prewrite(cm, colUpdates.getKey(), colUpdates.getValue(), cd.prow, cd.pcol, isTriggerRow);
+    // try to lock other columns, a chunk at a time. No more locks are written once one is rejected.
+    ArrayList<ConditionalMutation> chunk = new ArrayList<>();
+    long chunkBytes = 0;
+    boolean ackCollision = false;
+
+    for (List<Cell> cells : updates.rows()) {
+      ConditionalFlutation cm = prewriteRow(cells, cd);
+      if (cm == null)
+        continue;
+
+      chunk.add(cm);
+      chunkBytes += cm.numBytes();
+      if (chunkBytes >= COMMIT_CHUNK_BYTES) {
+        ackCollision |= writeLocks(cd, chunk);
+        chunk.clear();
+        chunkBytes = 0;
+        if (cd.getRejected().size() > 0)
+          break;
       }
-      
-      mutations.add(cm);
     }
+
+    if (cd.getRejected().size() == 0)
+      ackCollision |= writeLocks(cd, chunk);
     
-    cd.acceptedRows = new HashSet<>();
-    
+    if (cd.getRejected().size() > 0) {
+      rollback(cd);
+      
+      if (ackCollision)
+        throw new AlreadyAcknowledgedException();
+
+      checkForNonLong(cd.nonLongColumn);
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Writes a chunk of secondary locks and waits for their results.
+   *
+   * @return true if a rejected lock collided with an acknowledged notification
+   */
+  private boolean writeLocks(CommitData cd, List<ConditionalMutation> chunk) throws AccumuloException, AccumuloSecurityException {
+    if (chunk.isEmpty())
+      return false;
+
     boolean ackCollision = false;
 
-    Iterator<Result> resultsIter = cd.cw.write(mutations.iterator());
+    Iterator<Result> resultsIter = cd.cw.write(chunk.iterator());
     while (resultsIter.hasNext()) {
       Result result = resultsIter.next();
       // TODO handle unknown?
-      Bytes row = Bytes.wrap(result.getMutation().getRow());
-      if (result.getStatus() == Status.ACCEPTED)
-        cd.acceptedRows.add(row);
-      else {
+      if (result.getStatus() != Status.ACCEPTED) {
+        Bytes row = Bytes.wrap(result.getMutation().getRow());
         // TODO if trigger is always primary row:col, then do not need checks elsewhere
         ackCollision |= checkForAckCollision(result.getMutation());
-        cd.addToRejected(row, updates.get(row).keySet());
+        if (cd.nonLongColumn == null)
+          cd.nonLongColumn = findNonLongColumn(result.getMutation());
+        cd.rejectedRows.add(row);
+        cd.addToRejected(row, getSecondaryColumns(cd, row));
       }
     }
+
+    // rows are locked in sorted order
+    cd.lastLockedRow = Bytes.wrap(chunk.get(chunk.size() - 1).getRow());
+    return ackCollision;
+  }
+
+  /**
+   * @return the columns this transaction writes in a row, other than the primary column
+   */
+  private Set<Column> getSecondaryColumns(CommitData cd, Bytes row) {
+    Set<Column> columns = updates.getColumns(row);
+    if (row.equals(cd.prow))
+      columns.remove(cd.pcol);
+    return columns;
+  }
+
+  /**
+   * Writes a conditional mutation that locks the primary column, resolving an unknown status by looking at the primary column.
+   */
+  private Status writePrimaryLock(CommitData cd, ConditionalMutation pcm) throws AccumuloException, AccumuloSecurityException {
+    return writeLock(cd.cw, cd.prow, cd.pcol, pcm);
+  }
+
+  /**
+   * Writes a conditional mutation that locks a column, resolving an unknown status by looking at the column.
+   */
+  private Status writeLock(ConditionalWriter cw, Bytes row, Column col, ConditionalMutation cm) throws AccumuloException, AccumuloSecurityException {
+    Status mutationStatus = cw.write(cm).getStatus();
     
-    if (cd.getRejected().size() > 0) {
-      rollback(cd);
+    while (mutationStatus == Status.UNKNOWN) {
       
-      if (ackCollision)
-        throw new AlreadyAcknowledgedException();
+      TxInfo txInfo = TxInfo.getTransactionInfo(env, row, col, startTs);
       
-      return false;
+      switch (txInfo.status) {
+        case LOCKED:
+          mutationStatus = Status.ACCEPTED;
+          break;
+        case ROLLED_BACK:
+          mutationStatus = Status.REJECTED;
+          break;
+        case UNKNOWN:
+          mutationStatus = cw.write(cm).getStatus();
+          // TODO handle case were data other tx has lock
+          break;
+        case COMMITTED:
+        default:
+          throw new IllegalStateException("unexpected tx state " + txInfo.status + " " + row + " " + col);
+          
+      }
     }
 
-    // set weak notifications after all locks are written, but before finishing commit. If weak notifications were set after the commit, then information
-    // about weak notifications would need to be persisted in the lock phase. Setting here is safe because any observers that run as a result of the weak
-    // notification will wait for the commit to finish. Setting here may cause an observer to run unessecarily in the case of rollback, but thats ok.
-    // TODO look into setting weak notification as part of lock and commit phases to avoid this synchronous step
-    writeWeakNotifications();
+    return mutationStatus;
+  }
+
+  /**
+   * Locks all columns of a transaction that only updates one row using a single conditional mutation. Since the mutation is applied atomically,
+   * there are no secondary locks to roll back when it is rejected.
+   */
+  private boolean lockSingleRow(CommitData cd) throws AccumuloException, AccumuloSecurityException, AlreadyAcknowledgedException {
+
+    checkIfOpen();
+    status = TxStatus.COMMIT_STARTED;
+
+    List<Cell> cells = updates.rows().iterator().next();
+    Bytes row = cells.get(0).getRow();
+    boolean isTriggerRow = row.equals(triggerRow);
+
+    // always want to throw already ack exception if collision, so trigger is primary
+    cd.prow = row;
+    cd.pcell = isTriggerRow ? updates.get(triggerRow, triggerColumn) : cells.get(0);
+    cd.pcol = cd.pcell.getColumn();
+
+    ConditionalFlutation cm = prewrite(null, cd.pcell, row, cd.pcol, isTriggerRow);
+    for (Cell cell : cells) {
+      if (!cd.isPrimary(cell))
+        prewrite(cm, cell, row, cd.pcol, isTriggerRow);
+    }
+
+    if (writePrimaryLock(cd, cm) != Status.ACCEPTED) {
+      cd.addToRejected(row, updates.getColumns(row));
+      if (checkForAckCollision(cm)) {
+        throw new AlreadyAcknowledgedException();
+      }
+      checkForNonLong(findNonLongColumn(cm));
+      return false;
+    }
 
     return true;
   }
 
-  private void writeWeakNotifications() {
-    if (weakNotifications.size() > 0) {
-      SharedBatchWriter sbw = env.getSharedResources().getBatchWriter();
-      ArrayList<Mutation> mutations = new ArrayList<>();
+  // Weak notifications are written with the commit of their row, after the primary column is committed. Any observers that run as a result of a weak
+  // notification then find the transaction committed, or a secondary lock that rolls forward. Writing them with the locks would let an observer run
+  // before all locks exist, miss the data and delete the notification.
+  //
+  // Notifications in the primary row are written by the conditional mutation that commits the primary column.
 
-      for (Entry<Bytes,Set<Column>> entry : weakNotifications.entrySet()) {
-        Flutation m = new Flutation(env, entry.getKey());
-        for (Column col : entry.getValue()) {
-          m.put(ColumnConstants.NOTIFY_CF.toArray(), ColumnUtil.concatCFCQ(col), gv(col), startTs, TransactionImpl.EMPTY);
-        }
+  /**
+   * Adds mutations for the weak notifications in rows before a row, leaving out the primary row.
+   *
+   * @param row
+   *          null to add the notifications in all remaining rows
+   * @return the notifications in the row itself, or null if it has none
+   */
+  private List<Cell> nextWeakNotifications(CommitData cd, PeekingIterator<List<Cell>> notifications, Bytes row, MutationChunks mutations) {
+    while (notifications.hasNext()) {
+      Bytes nrow = notifications.peek().get(0).getRow();
+      int cmp = row == null ? -1 : nrow.compareTo(row);
+      if (cmp > 0)
+        return null;
+
+      List<Cell> cells = notifications.next();
+      if (cmp == 0)
+        return cells;
+
+      if (!nrow.equals(cd.prow)) {
+        Flutation m = new Flutation(env, nrow);
+        putWeakNotifications(cells.iterator(), m);
         mutations.add(m);
       }
-      sbw.writeMutations(mutations);
+    }
+    return null;
+  }
+
+  /**
+   * Writes the weak notifications outside the row of a transaction committed by {@link #commitSingleRow(CommitData, long)}.
+   */
+  private void writeWeakNotifications(CommitData cd) {
+    if (weakNotifications.size() == 0)
+      return;
+
+    MutationChunks mutations = new MutationChunks(env.isAsyncCommit());
+    nextWeakNotifications(cd, Iterators.peekingIterator(weakNotifications.rows().iterator()), null, mutations);
+    mutations.finish(null);
+  }
+
+  private void putWeakNotifications(Iterator<Cell> cells, Mutation m) {
+    while (cells.hasNext()) {
+      Column col = cells.next().getColumn();
+      m.put(ColumnConstants.NOTIFY_CF.toArray(), ColumnUtil.concatCFCQ(col), gv(col), startTs, TransactionImpl.EMPTY);
     }
   }
 
@@ -485,21 +978,55 @@ public class TransactionImpl implements Transaction, Snapshot {
     Map<Bytes,Set<Column>> columnsToRead = new HashMap<>();
     
     for (Entry<Bytes,Set<Column>> entry : cd.getRejected().entrySet()) {
-      Set<Column> rowColsRead = columnsRead.get(entry.getKey());
+      Map<Column,Bytes> rowColsRead = readCache.get(entry.getKey());
       if (rowColsRead == null) {
         columnsToRead.put(entry.getKey(), entry.getValue());
       } else {
         HashSet<Column> colsToRead = new HashSet<>(entry.getValue());
-        colsToRead.removeAll(rowColsRead);
+        colsToRead.removeAll(rowColsRead.keySet());
         if (colsToRead.size() > 0) {
           columnsToRead.put(entry.getKey(), colsToRead);
         }
       }
     }
 
+    // read from the table even for columns this transaction wrote, reading is what resolves the locks
     for (Entry<Bytes,Set<Column>> entry : columnsToRead.entrySet()) {
-      getImpl(entry.getKey(), entry.getValue());
+      cacheRead(entry.getKey(), entry.getValue(), scanRow(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  /**
+   * Finds why a lock on a delta column could be rejected by {@link PrewriteIterator#enableLongCheck(IteratorSetting)}. Only called after a rejection.
+   *
+   * @return a delta column in the mutation whose value is not a long, or null
+   */
+  private RowColumn findNonLongColumn(ConditionalMutation cm) {
+    Bytes row = Bytes.wrap(cm.getRow());
+
+    for (ColumnUpdate cu : cm.getUpdates()) {
+      if ((cu.getTimestamp() & ColumnConstants.PREFIX_MASK) != ColumnConstants.LOCK_PREFIX)
+        continue;
+
+      Column col = new Column(Bytes.wrap(cu.getColumnFamily()), Bytes.wrap(cu.getColumnQualifier())).setVisibility(Bytes.wrap(cu.getColumnVisibility()));
+      if (!updates.isDelta(row, col))
+        continue;
+
+      IteratorSetting iterConf = new IteratorSetting(10, PrewriteIterator.class);
+      PrewriteIterator.setSnaptime(iterConf, startTs);
+      PrewriteIterator.enableDelta(iterConf);
+      PrewriteIterator.enableLongCheck(iterConf);
+      Entry<Key,Value> entry = ColumnUtil.checkColumn(env, iterConf, row, col);
+      if (entry != null && (entry.getKey().getTimestamp() & ColumnConstants.PREFIX_MASK) == ColumnConstants.DATA_PREFIX)
+        return new RowColumn(row, col);
     }
+
+    return null;
+  }
+
+  private static void checkForNonLong(RowColumn rc) {
+    if (rc != null)
+      throw new IllegalArgumentException("Can not add a delta to " + rc + ", its value is not a long");
   }
 
   private boolean checkForAckCollision(ConditionalMutation cm) {
@@ -536,16 +1063,66 @@ public class TransactionImpl implements Transaction, Snapshot {
 
   public boolean commitPrimaryColumn(CommitData cd, long commitTs) throws AccumuloException, AccumuloSecurityException {
     // try to delete lock and add write for primary column
-    IteratorSetting iterConf = new IteratorSetting(10, PrewriteIterator.class);
-    PrewriteIterator.setSnaptime(iterConf, startTs);
-    boolean isTrigger = cd.prow.equals(triggerRow) && cd.pcol.equals(triggerColumn);
+    ConditionalMutation delLockMutation = createPrimaryCommit(cd, commitTs);
+    return writePrimaryCommit(cd, delLockMutation, commitTs);
+  }
+
+  /**
+   * Commits all columns of a transaction locked by {@link #lockSingleRow(CommitData)} with one conditional mutation on the primary lock. The row is
+   * committed atomically, so the transaction is marked done in the same mutation instead of writing it later.
+   */
+  private boolean commitSingleRow(CommitData cd, long commitTs) throws AccumuloException, AccumuloSecurityException {
+    ConditionalMutation cm = createPrimaryCommit(cd, commitTs);
+
+    commitRow(updates.rows().iterator().next(), cd, commitTs, cm);
+
+    if (weakRow != null)
+      cm.putDelete(ColumnConstants.NOTIFY_CF.toArray(), ColumnUtil.concatCFCQ(weakColumn), gv(weakColumn), commitTs);
 
-    Condition lockCheck = new FluoCondition(env, cd.pcol).setIterators(iterConf).setValue(
-        LockValue.encode(cd.prow, cd.pcol, cd.pval != null, cd.pval == DELETE, isTrigger, getTransactorID()));
+    Flutation.put(env, cm, cd.pcol, ColumnConstants.TX_DONE_PREFIX | commitTs, EMPTY);
+
+    return writePrimaryCommit(cd, cm, commitTs);
+  }
+
+  private ConditionalMutation createPrimaryCommit(CommitData cd, long commitTs) {
+    boolean isTriggerRow = cd.prow.equals(triggerRow);
+    boolean isTrigger = isTriggerRow && cd.pcol.equals(triggerColumn);
+
+    boolean isWrite = isWrite(cd.pcell);
+    boolean isDelete = isDelete(cd.pcell);
+    boolean isDelta = cd.pcell.isDelta();
+
+    byte[] lockValue;
+    if (isLockedForUpdate(cd.prow, cd.pcol))
+      lockValue = getLockForUpdateValue(cd.prow);
+    else
+      lockValue = LockValue.encode(cd.prow, cd.pcol, isWrite, isDelete, isTriggerRow, isDelta, getTransactorID());
+
+    IteratorSetting iterConf;
+    if (new LockValue(lockValue).isCommutative()) {
+      // other commutative locks on the primary column can have the same value, so check for this transaction's lock at its timestamp
+      iterConf = new IteratorSetting(10, RollbackCheckIterator.class);
+      RollbackCheckIterator.setLocktime(iterConf, startTs);
+    } else {
+      iterConf = new IteratorSetting(10, PrewriteIterator.class);
+      PrewriteIterator.setSnaptime(iterConf, startTs);
+    }
+
+    Condition lockCheck = new FluoCondition(env, cd.pcol).setIterators(iterConf).setValue(lockValue);
     ConditionalMutation delLockMutation = new ConditionalFlutation(env, cd.prow, lockCheck);
 
-    ColumnUtil.commitColumn(env, isTrigger, true, cd.pcol, cd.pval != null, cd.pval == DELETE, startTs, commitTs, observedColumns, delLockMutation);
-    
+    ColumnUtil.commitColumn(env, isTrigger, true, cd.pcol, isWrite, isDelete, isDelta, startTs, commitTs, observedColumns, delLockMutation);
+
+    putWeakNotifications(weakNotifications.iterator(cd.prow), delLockMutation);
+
+    return delLockMutation;
+  }
+
+  /**
+   * Writes a conditional mutation that commits the primary column, resolving an unknown status by looking at the primary column.
+   */
+  private boolean writePrimaryCommit(CommitData cd, ConditionalMutation delLockMutation, long commitTs) throws AccumuloException,
+      AccumuloSecurityException {
     Status mutationStatus = cd.cw.write(delLockMutation).getStatus();
     
     while (mutationStatus == Status.UNKNOWN) {
@@ -575,21 +1152,29 @@ public class TransactionImpl implements Transaction, Snapshot {
   
   private void rollback(CommitData cd) throws TableNotFoundException, MutationsRejectedException {
     // roll back locks
-    
-    // TODO let rollback be done lazily? this makes GC more difficult
-    
+
     Flutation m;
 
-    ArrayList<Mutation> mutations = new ArrayList<>(cd.acceptedRows.size());
-    for (Bytes row : cd.acceptedRows) {
-      m = new Flutation(env, row);
-      for (Column col : updates.get(row).keySet()) {
-        m.put(col, ColumnConstants.DEL_LOCK_PREFIX | startTs, DelLockValue.encode(startTs, false, true));
-      }
-      mutations.add(m);
+    MutationChunks mutations;
+    if (env.isLazyRollback()) {
+      // Only wait on the primary. Its rollback is marked primary and is not marked done until the secondaries are written, so garbage collection keeps it
+      // and readers that find a secondary lock can roll it back.
+      m = new Flutation(env, cd.prow);
+      m.put(cd.pcol, ColumnConstants.DEL_LOCK_PREFIX | startTs, DelLockValue.encode(startTs, true, true));
+      env.getSharedResources().getBatchWriter().writeMutation(m);
+
+      mutations = new MutationChunks(true);
+      rollbackSecondaries(cd, mutations);
+
+      m = new Flutation(env, cd.prow);
+      m.put(cd.pcol, ColumnConstants.TX_DONE_PREFIX | startTs, EMPTY);
+      mutations.finish(m);
+      return;
     }
-    
-    env.getSharedResources().getBatchWriter().writeMutations(mutations);
+
+    mutations = new MutationChunks(false);
+    rollbackSecondaries(cd, mutations);
+    mutations.finish(null);
     
     // mark transaction as complete for garbage collection purposes
     m = new Flutation(env, cd.prow);
@@ -602,19 +1187,100 @@ public class TransactionImpl implements Transaction, Snapshot {
     env.getSharedResources().getBatchWriter().writeMutation(m);
   }
   
+  /**
+   * Rolls back the secondary locks written by {@link #lock(CommitData, Bytes, Column)}, in the same order they were written.
+   */
+  private void rollbackSecondaries(CommitData cd, MutationChunks mutations) {
+    if (cd.lastLockedRow == null)
+      return;
+
+    for (List<Cell> cells : updates.rows()) {
+      Bytes row = cells.get(0).getRow();
+      if (row.compareTo(cd.lastLockedRow) > 0)
+        break;
+      if (cd.rejectedRows.contains(row))
+        continue;
+
+      Flutation m = new Flutation(env, row);
+      for (Cell cell : cells) {
+        if (!cd.isPrimary(cell))
+          m.put(cell.getColumn(), ColumnConstants.DEL_LOCK_PREFIX | startTs, DelLockValue.encode(startTs, false, true));
+      }
+      if (m.size() > 0)
+        mutations.add(m);
+    }
+  }
+
+  /**
+   * Writes mutations built from the write buffer to the shared batch writer in chunks of about {@link #COMMIT_CHUNK_BYTES}. A chunk is written
+   * before the next one is built, either waiting for it to flush or, when async, for room among the mutations queued without waiting.
+   */
+  private class MutationChunks {
+    private final boolean async;
+    private ArrayList<Mutation> chunk = new ArrayList<>();
+    private long chunkBytes = 0;
+
+    MutationChunks(boolean async) {
+      this.async = async;
+    }
+
+    void add(Mutation m) {
+      chunk.add(m);
+      chunkBytes += m.numBytes();
+      if (chunkBytes >= COMMIT_CHUNK_BYTES) {
+        write(chunk, null);
+        chunk = new ArrayList<>();
+        chunkBytes = 0;
+      }
+    }
+
+    /**
+     * Writes the last chunk.
+     *
+     * @param followUp
+     *          for async chunks, a mutation written once all chunks are flushed
+     */
+    void finish(Mutation followUp) {
+      write(chunk, followUp);
+      chunk = null;
+    }
+
+    private void write(List<Mutation> mutations, Mutation followUp) {
+      if (async)
+        // chunks are flushed in the order they are queued, so the follow up of the last chunk comes after all of them
+        env.getSharedResources().getBatchWriter().writeMutationsAsync(mutations, followUp);
+      else
+        env.getSharedResources().getBatchWriter().writeMutations(mutations);
+    }
+  }
+
   public boolean finishCommit(CommitData cd, long commitTs) throws TableNotFoundException, MutationsRejectedException {
+    return finishCommit(cd, commitTs, updates.rows().iterator());
+  }
+
+  /**
+   * @param rows
+   *          the rows of the write buffer, some of them may have been read before the commit timestamp was known
+   */
+  private boolean finishCommit(CommitData cd, long commitTs, Iterator<List<Cell>> rows) throws TableNotFoundException, MutationsRejectedException {
     // delete locks and add writes for other columns
-    ArrayList<Mutation> mutations = new ArrayList<>(updates.size() + 1);
-    for (Entry<Bytes,Map<Column,Bytes>> rowUpdates : updates.entrySet()) {
-      Flutation m = new Flutation(env, rowUpdates.getKey());
-      boolean isTriggerRow = rowUpdates.getKey().equals(triggerRow);
-      for (Entry<Column,Bytes> colUpdates : rowUpdates.getValue().entrySet()) {
-        ColumnUtil.commitColumn(env, isTriggerRow && colUpdates.getKey().equals(triggerColumn), false, colUpdates.getKey(), colUpdates.getValue() != null,
-            colUpdates.getValue() == DELETE, startTs, commitTs, observedColumns, m);
-      }
-      
+    MutationChunks mutations = new MutationChunks(env.isAsyncCommit());
+    PeekingIterator<List<Cell>> notifications = Iterators.peekingIterator(weakNotifications.rows().iterator());
+    while (rows.hasNext()) {
+      List<Cell> cells = rows.next();
+      Bytes row = cells.get(0).getRow();
+      List<Cell> rowNotifications = nextWeakNotifications(cd, notifications, row, mutations);
+
+      if (cells.size() == 1 && cd.isPrimary(cells.get(0)))
+        continue;
+
+      Flutation m = new Flutation(env, row);
+      commitRow(cells, cd, commitTs, m);
+      if (rowNotifications != null && !row.equals(cd.prow))
+        putWeakNotifications(rowNotifications.iterator(), m);
       mutations.add(m);
     }
+    nextWeakNotifications(cd, notifications, null, mutations);
     
     if (weakRow != null) {
       Flutation m = new Flutation(env, weakRow);
@@ -623,13 +1289,18 @@ public class TransactionImpl implements Transaction, Snapshot {
       mutations.add(m);
     }
 
-    env.getSharedResources().getBatchWriter().writeMutations(mutations);
-    
     // mark transaction as complete for garbage collection purposes
-
     Flutation m = new Flutation(env, cd.prow);
     m.put(cd.pcol, ColumnConstants.TX_DONE_PREFIX | commitTs, EMPTY);
 
+    if (env.isAsyncCommit()) {
+      // The transaction is durable once its primary column is committed. Until the secondaries are written the primary is not marked done, so garbage
+      // collection keeps its commit and readers that find a secondary lock can roll it forward.
+      mutations.finish(m);
+      return true;
+    }
+
+    mutations.finish(null);
     env.getSharedResources().getBatchWriter().writeMutationAsync(m);
     
     return true;
@@ -655,26 +1326,43 @@ public class TransactionImpl implements Transaction, Snapshot {
       return;
     }
 
-    for (Map<Column,Bytes> cols : updates.values())
-      stats.incrementEntriesSet(cols.size());
+    stats.incrementEntriesSet(updates.size());
 
     CommitData cd = createCommitData();
+
+    // a transaction that only updates one row can lock and commit it atomically, the weak notification it handled must be in the same row. Locks
+    // taken by getForUpdate are already written, so they are committed like the locks of any other transaction.
+    boolean singleRow = lockedForUpdate.isEmpty() && updates.isSingleRow() && (weakRow == null || updates.containsRow(weakRow));
     
     try {
-      if (!preCommit(cd)) {
+      if (singleRow ? !lockSingleRow(cd) : !lock(cd)) {
         readUnread(cd);
         throw new CommitException("Pre-commit failed");
       }
-      
-      long commitTs = OracleClient.getInstance(env).getTimestamp();
-      if (commitPrimaryColumn(cd, commitTs)) {
-        finishCommit(cd, commitTs);
+
+      // the commit timestamp must be requested after all locks are written. The commit mutations need it, but the first rows they are built from are
+      // read out of the write buffer, which may merge spilled runs, while waiting on the oracle.
+      ListenableFuture<Long> commitTsFuture = OracleClient.getInstance(env).getTimestampAsync();
+      Iterator<List<Cell>> rows = updates.rows().iterator();
+      List<List<Cell>> prefetched = new ArrayList<>();
+      while (!singleRow && rows.hasNext() && prefetched.size() < COMMIT_PREFETCH_ROWS)
+        prefetched.add(rows.next());
+      long commitTs = commitTsFuture.get();
+
+      if (singleRow) {
+        if (!commitSingleRow(cd, commitTs))
+          throw new CommitException("Commit failed");
+        writeWeakNotifications(cd);
+      } else if (commitPrimaryColumn(cd, commitTs)) {
+        finishCommit(cd, commitTs, Iterators.concat(prefetched.iterator(), rows));
       } else {
         // TODO write TX_DONE
         throw new CommitException("Commit failed");
       }
 
     } catch (CommitException e) {
+      // the primary was not committed, locks taken by getForUpdate in rows that were not locked again are not rolled back by rollback(cd)
+      rollbackLocksForUpdate();
       throw e;
     } catch (RuntimeException e) {
       throw e;
@@ -685,6 +1373,9 @@ public class TransactionImpl implements Transaction, Snapshot {
       for (Set<Column> cols : cd.getRejected().values()) {
         stats.incrementCollisions(cols.size());
       }
+      rejected = cd.getRejected();
+      if (rejected.size() > 0)
+        env.getSharedResources().getContentionTracker().collided(rejected);
       status = TxStatus.COMMITTED;
     }
   }
@@ -710,6 +1401,13 @@ public class TransactionImpl implements Transaction, Snapshot {
     return stats;
   }
 
+  /**
+   * @return the columns that caused the commit of this transaction to fail, by row
+   */
+  Map<Bytes,Set<Column>> getRejected() {
+    return rejected;
+  }
+
   public long getStartTs() {
     return startTs;
   }
@@ -739,8 +1437,11 @@ public class TransactionImpl implements Transaction, Snapshot {
 
   @Override
   public synchronized void close() {
+    if (status == TxStatus.OPEN)
+      rollbackLocksForUpdate();
     if (status != TxStatus.CLOSED) {
       status = TxStatus.CLOSED;
+      updates.close();
       env.getSharedResources().getTimestampTracker().removeTimestamp(startTs);
     }
   }
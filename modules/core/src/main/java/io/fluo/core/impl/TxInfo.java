@@ -16,6 +16,11 @@
 
 package io.fluo.core.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import io.fluo.accumulo.iterators.RollbackCheckIterator;
@@ -24,9 +29,14 @@ import io.fluo.accumulo.values.DelLockValue;
 import io.fluo.accumulo.values.WriteValue;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.core.util.ColumnUtil;
+import io.fluo.core.util.SpanUtil;
+import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 
 public class TxInfo {
@@ -45,6 +55,80 @@ public class TxInfo {
 
     Entry<Key,Value> entry = ColumnUtil.checkColumn(env, is, prow, pcol);
 
+    return toTxInfo(entry, prow, pcol, startTs);
+  }
+
+  /**
+   * determine the state of many transactions with one batch scan of their primary columns
+   */
+  public static Map<PrimaryRowColumn,TxInfo> getTransactionInfo(Environment env, Collection<PrimaryRowColumn> prcs) {
+    Map<PrimaryRowColumn,TxInfo> ret = new HashMap<>();
+
+    List<PrimaryRowColumn> remaining = new ArrayList<>(prcs);
+    while (remaining.size() > 0) {
+      // a batch scanner merges overlapping ranges, so each pass only checks one transaction per primary column
+      Map<RowColumn,PrimaryRowColumn> pass = new HashMap<>();
+      List<PrimaryRowColumn> next = new ArrayList<>();
+      for (PrimaryRowColumn prc : remaining) {
+        RowColumn rc = new RowColumn(prc.prow, prc.pcol);
+        if (pass.containsKey(rc))
+          next.add(prc);
+        else
+          pass.put(rc, prc);
+      }
+
+      if (pass.size() == 1) {
+        PrimaryRowColumn prc = pass.values().iterator().next();
+        ret.put(prc, getTransactionInfo(env, prc.prow, prc.pcol, prc.startTs));
+      } else {
+        scanTransactionInfo(env, pass, ret);
+      }
+
+      remaining = next;
+    }
+
+    return ret;
+  }
+
+  private static void scanTransactionInfo(Environment env, Map<RowColumn,PrimaryRowColumn> prcs, Map<PrimaryRowColumn,TxInfo> ret) {
+    BatchScanner bs;
+    try {
+      bs = env.getConnector().createBatchScanner(env.getTable(), env.getAuthorizations(), Math.min(env.getScanThreads(), prcs.size()));
+    } catch (TableNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+
+    try {
+      List<Range> ranges = new ArrayList<>(prcs.size());
+      for (PrimaryRowColumn prc : prcs.values()) {
+        Key col = new Key(prc.prow.toArray(), prc.pcol.getFamily().toArray(), prc.pcol.getQualifier().toArray(), prc.pcol.getVisibility().toArray(),
+            Long.MAX_VALUE);
+        ranges.add(RollbackCheckIterator.createRange(col, prc.startTs));
+      }
+      bs.setRanges(ranges);
+
+      IteratorSetting is = new IteratorSetting(10, RollbackCheckIterator.class);
+      RollbackCheckIterator.setLocktimePerRange(is);
+      bs.addScanIterator(is);
+
+      for (Entry<Key,Value> entry : bs) {
+        PrimaryRowColumn prc = prcs.get(SpanUtil.toRowColumn(entry.getKey()));
+        if (prc == null)
+          throw new RuntimeException("unexpected key " + entry.getKey());
+        ret.put(prc, toTxInfo(entry, prc.prow, prc.pcol, prc.startTs));
+      }
+    } finally {
+      bs.close();
+    }
+
+    // nothing was found in the primary columns of the rest
+    for (PrimaryRowColumn prc : prcs.values()) {
+      if (!ret.containsKey(prc))
+        ret.put(prc, toTxInfo(null, prc.prow, prc.pcol, prc.startTs));
+    }
+  }
+
+  private static TxInfo toTxInfo(Entry<Key,Value> entry, Bytes prow, Column pcol, long startTs) {
     TxInfo txInfo = new TxInfo();
 
     if (entry == null) {
@@ -18,6 +18,12 @@ package io.fluo.core.impl;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.cache.Cache;
@@ -53,12 +59,41 @@ public class TxInfoCache {
     TxInfo txInfo = cache.getIfPresent(key);
     if (txInfo == null) {
       txInfo = TxInfo.getTransactionInfo(env, key.prow, key.pcol, key.startTs);
-      if (txInfo.status == TxStatus.ROLLED_BACK || txInfo.status == TxStatus.COMMITTED) {
-        // only cache for these statuses which are not expected to change, other status can change over time
-        cache.put(key, txInfo);
-      }
+      cacheIfDone(key, txInfo);
     }
 
     return txInfo;
   }
+
+  /**
+   * Looks up the information of many transactions, reading all that are not cached with one scan.
+   */
+  public Map<PrimaryRowColumn,TxInfo> getTransactionInfo(Collection<PrimaryRowColumn> keys) {
+    Map<PrimaryRowColumn,TxInfo> ret = new HashMap<>();
+    List<PrimaryRowColumn> misses = new ArrayList<>();
+
+    for (PrimaryRowColumn key : keys) {
+      TxInfo txInfo = cache.getIfPresent(key);
+      if (txInfo == null)
+        misses.add(key);
+      else
+        ret.put(key, txInfo);
+    }
+
+    if (misses.size() > 0) {
+      for (Entry<PrimaryRowColumn,TxInfo> entry : TxInfo.getTransactionInfo(env, misses).entrySet()) {
+        cacheIfDone(entry.getKey(), entry.getValue());
+        ret.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    return ret;
+  }
+
+  private void cacheIfDone(PrimaryRowColumn key, TxInfo txInfo) {
+    if (txInfo.status == TxStatus.ROLLED_BACK || txInfo.status == TxStatus.COMMITTED) {
+      // only cache for these statuses which are not expected to change, other status can change over time
+      cache.put(key, txInfo);
+    }
+  }
 }
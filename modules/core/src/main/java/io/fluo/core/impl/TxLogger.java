@@ -16,6 +16,10 @@
 
 package io.fluo.core.impl;
 
+import java.util.List;
+import java.util.Map.Entry;
+
+import io.fluo.api.data.RowColumn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,13 +38,23 @@ public class TxLogger {
 
       // TODO need better names for #read and #ret... these indicate the number the user looked up and the number looked up that existed
 
-      String msg = String.format("tx info thread:%d status:%s time:%d #read:TODO #ret:%,d #set:%,d #collisions:%,d waitTime:%,d %sclass:%s", Thread
-          .currentThread().getId(), status, stats.getTime(),
-          stats.getEntriesReturned(), stats.getEntriesSet(), stats.getCollisions(), stats.getLockWaitTime(), triggerMsg, clazz);
+      String msg = String.format("tx info thread:%d status:%s time:%d #read:%,d #cached:%,d #ret:%,d #set:%,d #collisions:%,d waitTime:%,d #retries:%,d #priorCollisions:%,d backoffTime:%,d %sclass:%s",
+          Thread.currentThread().getId(), status, stats.getTime(), stats.getCacheHits() + stats.getCacheMisses(), stats.getCacheHits(),
+          stats.getEntriesReturned(), stats.getEntriesSet(), stats.getCollisions(), stats.getLockWaitTime(), stats.getRetries(), stats.getPriorCollisions(),
+          stats.getBackoffTime(), triggerMsg, clazz);
       log.trace(msg);
     }
   }
 
+  static void logHotspots(List<Entry<RowColumn,Long>> hotspots) {
+    if (log.isTraceEnabled() && hotspots.size() > 0) {
+      StringBuilder msg = new StringBuilder("tx hotspots thread:" + Thread.currentThread().getId());
+      for (Entry<RowColumn,Long> hotspot : hotspots)
+        msg.append(String.format(" [%s #collisions:%,d]", hotspot.getKey(), hotspot.getValue()));
+      log.trace(msg.toString());
+    }
+  }
+
   public static boolean isLoggingEnabled() {
     return log.isTraceEnabled();
   }
@@ -27,6 +27,16 @@ public class TxStats {
   private long recovered = 0;
   private long deadLocks = 0;
   private long timedOutLocks = 0;
+  // number of locks of live transactors found behind a rolled back or committed primary
+  private long abandonedLocks = 0;
+  // number of cells read that were served from the transaction's cache or its own writes
+  private long cacheHits = 0;
+  // number of cells read that had to be looked up in the table
+  private long cacheMisses = 0;
+  // number of earlier attempts of the same work that failed to commit, and the collisions and time spent backing off over all of them
+  private long retries = 0;
+  private long priorCollisions = 0;
+  private long backoffTime = 0;
 
   TxStats() {
     this.startTime = System.currentTimeMillis();
@@ -64,6 +74,30 @@ public class TxStats {
     return timedOutLocks;
   }
 
+  public long getAbandonedLocks() {
+    return abandonedLocks;
+  }
+
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
+  public long getRetries() {
+    return retries;
+  }
+
+  public long getPriorCollisions() {
+    return priorCollisions;
+  }
+
+  public long getBackoffTime() {
+    return backoffTime;
+  }
+
   void incrementLockWaitTime(long l) {
     lockWaitTime += l;
   }
@@ -92,6 +126,24 @@ public class TxStats {
     timedOutLocks += amt;
   }
 
+  void incrementAbandonedLocks(int amt) {
+    abandonedLocks += amt;
+  }
+
+  void incrementCacheHits(long l) {
+    cacheHits += l;
+  }
+
+  void incrementCacheMisses(long l) {
+    cacheMisses += l;
+  }
+
+  void setRetryInfo(long retries, long priorCollisions, long backoffTime) {
+    this.retries = retries;
+    this.priorCollisions = priorCollisions;
+    this.backoffTime = backoffTime;
+  }
+
   void setFinishTime(long t) {
     finishTime = t;
   }
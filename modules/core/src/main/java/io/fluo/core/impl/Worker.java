@@ -16,10 +16,14 @@
 package io.fluo.core.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 
 import io.fluo.api.exceptions.CommitException;
 
@@ -51,6 +55,14 @@ public class Worker {
 
   // TODO arbitrary
   private static long MAX_SLEEP_TIME = 5 * 60 * 1000;
+  // number of notifications read from the notification scan before processing them
+  static final int PREFETCH_BATCH_SIZE = 32;
+  // Prefetch columns are read with one scan for up to this many notifications whose observers declare them. Their transactions start before the first
+  // one is processed, so each later one holds back the oldest active timestamp and reads older data while the others run. More transactions per scan
+  // save round trips, but make stale reads and collisions more likely.
+  static final int PREFETCH_MAX_TXS = 8;
+  // a prefetched transaction that waited longer than this is not used, a new one is started when its notification is processed
+  static final long PREFETCH_MAX_WAIT_MS = 1000;
 
   private static final Logger log = LoggerFactory.getLogger(Worker.class);
 
@@ -151,71 +163,196 @@ public class Worker {
 
     boolean loggedFirst = false;
 
-    for (Entry<Key,Value> entry : scanner) {
-      List<Bytes> ca = Bytes.split(Bytes.wrap(entry.getKey().getColumnQualifierData().toArray()));
-      Column col = new Column(ca.get(0), ca.get(1));
+    Iterator<Entry<Key,Value>> iter = scanner.iterator();
 
-      col.setVisibility(ByteUtil.toBytes(entry.getKey().getColumnVisibilityData()));
+    while (iter.hasNext()) {
+      List<Notification> batch = new ArrayList<>();
+      while (iter.hasNext() && batch.size() < PREFETCH_BATCH_SIZE) {
+        Entry<Key,Value> entry = iter.next();
+        List<Bytes> ca = Bytes.split(Bytes.wrap(entry.getKey().getColumnQualifierData().toArray()));
+        Column col = new Column(ca.get(0), ca.get(1));
 
-      Observer observer = getObserver(colObservers, col);
+        col.setVisibility(ByteUtil.toBytes(entry.getKey().getColumnVisibilityData()));
 
-      Bytes row = ByteUtil.toBytes(entry.getKey().getRowData());
+        Bytes row = ByteUtil.toBytes(entry.getKey().getRowData());
+
+        batch.add(new Notification(entry.getKey(), row, col, getObserver(colObservers, col)));
+      }
 
       if (!loggedFirst) {
-        log.debug("thread id: " + Thread.currentThread().getId() + "  row :" + row);
+        log.debug("thread id: " + Thread.currentThread().getId() + "  row :" + batch.get(0).row);
         loggedFirst = true;
       }
 
-      TransactionImpl txi = null;
       try {
-        while (true) {
-          String status = "FAILED";
-          try {
-            txi = new TransactionImpl(env, row, col);
-            TransactionBase tx = txi;
-            if (TracingTransaction.isTracingEnabled())
-              tx = new TracingTransaction(tx);
-
-            observer.process(tx, row, col);
-            txi.commit();
-            status = "COMMITTED";
-            break;
-          } catch (AlreadyAcknowledgedException aae) {
-            status = "AACKED";
+        int prefetchedTo = 0;
+        for (int i = 0; i < batch.size(); i++) {
+          // prefetch just before processing, rather than for the whole batch
+          if (i == prefetchedTo)
+            prefetchedTo = prefetch(batch, i);
+
+          if (!process(scanner, batch.get(i)))
             return numProcessed;
-          } catch (CommitException e) {
-            // retry
-          } catch (Exception e) {
-            // this could be caused by multiple worker threads processing the same notification
-            // TODO this detection method has a race condition, notification could be recreated after being deleted... need to check notification timestamp
-            RowColumn rc = SpanUtil.toRowColumn(entry.getKey());
-            scanner.setRange(SpanUtil.toRange(new Span(rc, true, rc, true)));
-            if (scanner.iterator().hasNext()) {
-              // notification is still there, so maybe a bug in user code
-              throw e;
-            } else {
-              // no notification, so maybe another thread processed notification
-              log.debug("Failure processing notification concurrently ", e);
-              return numProcessed;
-            }
-          } finally {
-            if (txi != null && TxLogger.isLoggingEnabled())
-              TxLogger.logTx(status, observer.getClass().getSimpleName(), txi.getStats(), row + ":" + col);
-          }
-          // TODO if duplicate set detected, see if its because already acknowledged
+          numProcessed++;
         }
       } finally {
-        // close after multiple commit attempts
-        if (txi != null) {
-          txi.close();
+        // close transactions started for notifications that were not processed
+        for (Notification notification : batch) {
+          if (notification.prefetchedTx != null)
+            notification.prefetchedTx.close();
         }
       }
-      numProcessed++;
     }
 
     return numProcessed;
   }
 
+  private static class Notification {
+    final Key key;
+    final Bytes row;
+    final Column col;
+    final Observer observer;
+    TransactionImpl prefetchedTx;
+    long prefetchTime;
+
+    Notification(Key key, Bytes row, Column col, Observer observer) {
+      this.key = key;
+      this.row = row;
+      this.col = col;
+      this.observer = observer;
+    }
+  }
+
+  /**
+   * Starts transactions for notifications whose observers declare prefetch columns and reads those columns for all of them with one batch scan. The
+   * scan only returns values that did not change between the first and last start timestamp, so they are correct for each transaction.
+   *
+   * @param from
+   *          the first notification of the batch to prefetch for
+   * @return the index after the last notification looked at, at most {@link #PREFETCH_MAX_TXS} transactions are started
+   */
+  private int prefetch(List<Notification> batch, int from) {
+    Map<Bytes,Set<Column>> rowColumns = new HashMap<>();
+    List<Notification> toPrefetch = new ArrayList<>();
+
+    int next = from;
+    while (next < batch.size() && toPrefetch.size() < PREFETCH_MAX_TXS) {
+      Notification notification = batch.get(next++);
+      if (notification.observer == null)
+        continue;
+
+      Set<Column> prefetchCols = notification.observer.getObservedColumn().getPrefetchColumns();
+      if (prefetchCols.isEmpty())
+        continue;
+
+      notification.prefetchedTx = new TransactionImpl(env, notification.row, notification.col);
+      notification.prefetchTime = System.currentTimeMillis();
+      toPrefetch.add(notification);
+
+      Set<Column> cols = rowColumns.get(notification.row);
+      if (cols == null) {
+        cols = new HashSet<>();
+        rowColumns.put(notification.row, cols);
+      }
+      cols.addAll(prefetchCols);
+    }
+
+    if (toPrefetch.isEmpty())
+      return next;
+
+    long minStartTs = toPrefetch.get(0).prefetchedTx.getStartTs();
+    long maxStartTs = toPrefetch.get(toPrefetch.size() - 1).prefetchedTx.getStartTs();
+
+    Map<Bytes,Map<Column,Bytes>> prefetched = new PrefetchScanner(env, minStartTs, maxStartTs).scan(rowColumns);
+
+    for (Notification notification : toPrefetch) {
+      Map<Column,Bytes> rowValues = prefetched.get(notification.row);
+      if (rowValues == null)
+        continue;
+
+      Map<Column,Bytes> values = new HashMap<>();
+      for (Column col : notification.observer.getObservedColumn().getPrefetchColumns()) {
+        Bytes val = rowValues.get(col);
+        if (val != null)
+          values.put(col, val);
+      }
+      notification.prefetchedTx.addPrefetched(notification.row, values);
+    }
+
+    return next;
+  }
+
+  /**
+   * @return false if the worker should stop processing the notifications it scanned
+   */
+  private boolean process(Scanner scanner, Notification notification) throws Exception {
+    Bytes row = notification.row;
+    Column col = notification.col;
+    Observer observer = notification.observer;
+
+    TransactionImpl txi = null;
+    CommitRetry retry = new CommitRetry(env);
+    try {
+      while (true) {
+        String status = "FAILED";
+        try {
+          if (notification.prefetchedTx != null && System.currentTimeMillis() - notification.prefetchTime > PREFETCH_MAX_WAIT_MS) {
+            // observers processed before this one ran long, do not hold back the oldest active timestamp any longer or read data that old
+            notification.prefetchedTx.close();
+            notification.prefetchedTx = null;
+          }
+
+          if (notification.prefetchedTx != null) {
+            // only the first attempt can use the prefetched transaction, retries need a new start timestamp
+            txi = notification.prefetchedTx;
+            notification.prefetchedTx = null;
+          } else {
+            txi = new TransactionImpl(env, row, col);
+          }
+          retry.started(txi);
+          TransactionBase tx = txi;
+          if (TracingTransaction.isTracingEnabled())
+            tx = new TracingTransaction(tx);
+
+          observer.process(tx, row, col);
+          txi.commit();
+          status = "COMMITTED";
+          break;
+        } catch (AlreadyAcknowledgedException aae) {
+          status = "AACKED";
+          return false;
+        } catch (CommitException e) {
+          retry.failed(txi);
+        } catch (Exception e) {
+          // this could be caused by multiple worker threads processing the same notification
+          // TODO this detection method has a race condition, notification could be recreated after being deleted... need to check notification timestamp
+          RowColumn rc = SpanUtil.toRowColumn(notification.key);
+          scanner.setRange(SpanUtil.toRange(new Span(rc, true, rc, true)));
+          if (scanner.iterator().hasNext()) {
+            // notification is still there, so maybe a bug in user code
+            throw e;
+          } else {
+            // no notification, so maybe another thread processed notification
+            log.debug("Failure processing notification concurrently ", e);
+            return false;
+          }
+        } finally {
+          if (txi != null && TxLogger.isLoggingEnabled())
+            TxLogger.logTx(status, observer.getClass().getSimpleName(), txi.getStats(), row + ":" + col);
+        }
+        // TODO if duplicate set detected, see if its because already acknowledged
+      }
+    } finally {
+      retry.done();
+      // close after multiple commit attempts
+      if (txi != null) {
+        txi.close();
+      }
+    }
+
+    return true;
+  }
+
   private Observer getObserver(Map<Column,Observer> colObservers, Column col) throws Exception {
     Observer observer = colObservers.get(col);
     if (observer == null) {
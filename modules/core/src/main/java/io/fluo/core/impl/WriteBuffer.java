@@ -0,0 +1,1063 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+
+/**
+ * Buffers the cells written by a transaction. Row, column and value bytes are copied into large byte slabs and each cell is tracked with offsets and
+ * lengths in primitive arrays, so buffering a cell does not allocate any objects. Cells are found with an open addressing hash index and iterated in
+ * row and column order. Checking what the buffer holds for a cell does not allocate either. Cells handed out are views of the slabs that only create
+ * the row and column objects when asked for them.
+ * <p/>
+ * A cell either has a value, is a delete, is a delta, or has no value. A cell with no value is locked and committed without writing data, which is used
+ * for the trigger column of an observer. The amount of a delta is kept in place of a value address.
+ * <p/>
+ * When created with a spill threshold, the cells in memory are sorted and written to a local file each time the memory they use passes the threshold.
+ * Spilled files are memory mapped and deleted, so they go away with the buffer. Iterating merges the spilled runs with the cells in memory, reading the
+ * runs a cell at a time instead of loading them back onto the heap.
+ */
+class WriteBuffer implements Closeable {
+
+  static final int SLAB_SIZE = 1 << 16;
+
+  // runs are memory mapped, which is limited to 2GB per file
+  static final long MAX_SPILL_THRESHOLD = 1 << 30;
+
+  // estimate of the bytes used per cell by the arrays and index, covers the lengths written per cell when spilling
+  private static final int CELL_OVERHEAD = 48;
+
+  // value lengths of cells that do not have a value
+  private static final int NO_VALUE = -1;
+  private static final int DELETE = -2;
+  private static final int DELTA = -3;
+  // value length of a cell that is not in the buffer
+  private static final int ABSENT = -4;
+
+  /**
+   * A row, column and value read from the buffer. The key is the row, family, qualifier and visibility stored back to back.
+   */
+  static class Cell {
+    private final byte[] key;
+    private final int keyOff;
+    private final int rowLen;
+    private final int famLen;
+    private final int qualLen;
+    private final int visLen;
+    private final byte[] val;
+    private final int valOff;
+    private final int valLen;
+    private final long delta;
+
+    // created when first asked for
+    private Bytes row;
+    private Column col;
+
+    private Cell(byte[] key, int keyOff, int rowLen, int famLen, int qualLen, int visLen, byte[] val, int valOff, int valLen, long delta) {
+      this.key = key;
+      this.keyOff = keyOff;
+      this.rowLen = rowLen;
+      this.famLen = famLen;
+      this.qualLen = qualLen;
+      this.visLen = visLen;
+      this.val = val;
+      this.valOff = valOff;
+      this.valLen = valLen;
+      this.delta = delta;
+    }
+
+    Bytes getRow() {
+      if (row == null)
+        row = Bytes.wrap(key, keyOff, rowLen);
+      return row;
+    }
+
+    Column getColumn() {
+      if (col == null) {
+        int off = keyOff + rowLen;
+        Bytes fam = Bytes.wrap(key, off, famLen);
+        off += famLen;
+        Bytes qual = Bytes.wrap(key, off, qualLen);
+        off += qualLen;
+        col = new Column(fam, qual, Bytes.wrap(key, off, visLen));
+      }
+      return col;
+    }
+
+    boolean hasValue() {
+      return valLen >= 0;
+    }
+
+    boolean isDelete() {
+      return valLen == DELETE;
+    }
+
+    boolean isDelta() {
+      return valLen == DELTA;
+    }
+
+    /**
+     * @return true if the cell has a value, is a delete or is a delta
+     */
+    boolean isSet() {
+      return valLen != NO_VALUE;
+    }
+
+    /**
+     * @return the value of a cell that {@link #hasValue()}
+     */
+    Bytes getValue() {
+      if (!hasValue())
+        throw new IllegalStateException("cell has no value");
+      return Bytes.wrap(val, valOff, valLen);
+    }
+
+    /**
+     * @return the amount of a cell that {@link #isDelta()}
+     */
+    long getDelta() {
+      if (!isDelta())
+        throw new IllegalStateException("cell is not a delta");
+      return delta;
+    }
+  }
+
+  private final long spillThreshold;
+  private final File spillDir;
+  // spilled runs from oldest to newest
+  private final List<Run> runs = new ArrayList<>();
+  // distinct cells in memory and in runs
+  private int numCells = 0;
+
+  private final List<byte[]> slabs = new ArrayList<>();
+  private byte[] slab = null;
+  private int slabOffset = 0;
+  private long bytesUsed = 0;
+
+  private int size = 0;
+  // slab index in high 32 bits, offset in low 32 bits
+  private long[] keyAddrs = new long[16];
+  private int[] rowLens = new int[16];
+  private int[] famLens = new int[16];
+  private int[] qualLens = new int[16];
+  private int[] visLens = new int[16];
+  private long[] valAddrs = new long[16];
+  private int[] valLens = new int[16];
+
+  // cell index plus one, zero is an empty slot
+  private int[] index = new int[32];
+
+  private int[] sorted = null;
+
+  /**
+   * Creates a buffer that keeps all cells in memory
+   */
+  WriteBuffer() {
+    this(0, null);
+  }
+
+  /**
+   * @param spillThreshold
+   *          number of bytes to buffer in memory before spilling to a file, zero to never spill
+   * @param spillDir
+   *          directory for spilled files
+   */
+  WriteBuffer(long spillThreshold, File spillDir) {
+    if (spillThreshold < 0 || spillThreshold > MAX_SPILL_THRESHOLD)
+      throw new IllegalArgumentException("Spill threshold must be between 0 and " + MAX_SPILL_THRESHOLD + " : " + spillThreshold);
+    this.spillThreshold = spillThreshold;
+    this.spillDir = spillDir;
+  }
+
+  private long allocate(int len) {
+    if (slab == null || slabOffset + len > slab.length) {
+      slab = new byte[Math.max(SLAB_SIZE, len)];
+      slabOffset = 0;
+      slabs.add(slab);
+    }
+
+    long addr = (((long) slabs.size() - 1) << 32) | slabOffset;
+    slabOffset += len;
+    bytesUsed += len;
+    return addr;
+  }
+
+  private static byte[] slabOf(List<byte[]> slabs, long addr) {
+    return slabs.get((int) (addr >>> 32));
+  }
+
+  private static int offsetOf(long addr) {
+    return (int) addr;
+  }
+
+  private void copy(Bytes b, byte[] dest, int destOff) {
+    if (b.isBackedByArray()) {
+      System.arraycopy(b.getBackingArray(), b.offset(), dest, destOff, b.length());
+    } else {
+      for (int i = 0; i < b.length(); i++)
+        dest[destOff + i] = b.byteAt(i);
+    }
+  }
+
+  private static int hash(int h, Bytes b) {
+    h = 31 * h + b.length();
+    if (b.isBackedByArray()) {
+      byte[] data = b.getBackingArray();
+      int end = b.offset() + b.length();
+      for (int i = b.offset(); i < end; i++)
+        h = 31 * h + data[i];
+    } else {
+      for (int i = 0; i < b.length(); i++)
+        h = 31 * h + b.byteAt(i);
+    }
+    return h;
+  }
+
+  private static int hash(int h, byte[] data, int off, int len) {
+    h = 31 * h + len;
+    int end = off + len;
+    for (int i = off; i < end; i++)
+      h = 31 * h + data[i];
+    return h;
+  }
+
+  private static int hash(Bytes row, Column col) {
+    int h = hash(0, row);
+    h = hash(h, col.getFamily());
+    h = hash(h, col.getQualifier());
+    return hash(h, col.getVisibility());
+  }
+
+  private int hash(int cell) {
+    byte[] data = slabOf(slabs, keyAddrs[cell]);
+    int off = offsetOf(keyAddrs[cell]);
+    int h = hash(0, data, off, rowLens[cell]);
+    off += rowLens[cell];
+    h = hash(h, data, off, famLens[cell]);
+    off += famLens[cell];
+    h = hash(h, data, off, qualLens[cell]);
+    off += qualLens[cell];
+    return hash(h, data, off, visLens[cell]);
+  }
+
+  private static boolean equals(byte[] data, int off, int len, Bytes b) {
+    if (len != b.length())
+      return false;
+    for (int i = 0; i < len; i++)
+      if (data[off + i] != b.byteAt(i))
+        return false;
+    return true;
+  }
+
+  private boolean equals(int cell, Bytes row, Column col) {
+    byte[] data = slabOf(slabs, keyAddrs[cell]);
+    int off = offsetOf(keyAddrs[cell]);
+    if (!equals(data, off, rowLens[cell], row))
+      return false;
+    off += rowLens[cell];
+    if (!equals(data, off, famLens[cell], col.getFamily()))
+      return false;
+    off += famLens[cell];
+    if (!equals(data, off, qualLens[cell], col.getQualifier()))
+      return false;
+    off += qualLens[cell];
+    return equals(data, off, visLens[cell], col.getVisibility());
+  }
+
+  private static int slot(int h, int mask) {
+    // spread the hash since the index size is a power of two
+    h ^= (h >>> 16);
+    return h & mask;
+  }
+
+  /**
+   * @return the cell in memory for the row and column, or -1 if there is none
+   */
+  private int find(Bytes row, Column col) {
+    int mask = index.length - 1;
+    for (int i = slot(hash(row, col), mask);; i = (i + 1) & mask) {
+      int cell = index[i] - 1;
+      if (cell == -1)
+        return -1;
+      if (equals(cell, row, col))
+        return cell;
+    }
+  }
+
+  private void grow() {
+    int newCap = keyAddrs.length * 2;
+    keyAddrs = Arrays.copyOf(keyAddrs, newCap);
+    rowLens = Arrays.copyOf(rowLens, newCap);
+    famLens = Arrays.copyOf(famLens, newCap);
+    qualLens = Arrays.copyOf(qualLens, newCap);
+    visLens = Arrays.copyOf(visLens, newCap);
+    valAddrs = Arrays.copyOf(valAddrs, newCap);
+    valLens = Arrays.copyOf(valLens, newCap);
+
+    index = new int[newCap * 2];
+    int mask = index.length - 1;
+    for (int cell = 0; cell < size; cell++) {
+      int i = slot(hash(cell), mask);
+      while (index[i] != 0)
+        i = (i + 1) & mask;
+      index[i] = cell + 1;
+    }
+  }
+
+  private int findOrAdd(Bytes row, Column col) {
+    int cell = find(row, col);
+    if (cell != -1)
+      return cell;
+
+    if (!inRuns(row, col))
+      numCells++;
+
+    if (size == keyAddrs.length)
+      grow();
+
+    cell = size++;
+    rowLens[cell] = row.length();
+    famLens[cell] = col.getFamily().length();
+    qualLens[cell] = col.getQualifier().length();
+    visLens[cell] = col.getVisibility().length();
+
+    long addr = allocate(rowLens[cell] + famLens[cell] + qualLens[cell] + visLens[cell]);
+    keyAddrs[cell] = addr;
+    byte[] data = slabOf(slabs, addr);
+    int off = offsetOf(addr);
+    copy(row, data, off);
+    off += rowLens[cell];
+    copy(col.getFamily(), data, off);
+    off += famLens[cell];
+    copy(col.getQualifier(), data, off);
+    off += qualLens[cell];
+    copy(col.getVisibility(), data, off);
+
+    int mask = index.length - 1;
+    int i = slot(hash(row, col), mask);
+    while (index[i] != 0)
+      i = (i + 1) & mask;
+    index[i] = cell + 1;
+
+    sorted = null;
+    return cell;
+  }
+
+  /**
+   * Sets the value of a cell, replacing any value it had
+   */
+  void put(Bytes row, Column col, Bytes value) {
+    int cell = findOrAdd(row, col);
+    long addr = allocate(value.length());
+    copy(value, slabOf(slabs, addr), offsetOf(addr));
+    valAddrs[cell] = addr;
+    valLens[cell] = value.length();
+    maybeSpill();
+  }
+
+  void putDelete(Bytes row, Column col) {
+    int cell = findOrAdd(row, col);
+    valLens[cell] = DELETE;
+    maybeSpill();
+  }
+
+  /**
+   * Sets the amount of a delta cell, replacing any value it had
+   */
+  void putDelta(Bytes row, Column col, long delta) {
+    int cell = findOrAdd(row, col);
+    valAddrs[cell] = delta;
+    valLens[cell] = DELTA;
+    maybeSpill();
+  }
+
+  /**
+   * Adds a cell without a value, if the cell is not already in the buffer
+   */
+  void putNoValue(Bytes row, Column col) {
+    if (valueLength(row, col) == ABSENT) {
+      int cell = findOrAdd(row, col);
+      valLens[cell] = NO_VALUE;
+      maybeSpill();
+    }
+  }
+
+  /**
+   * @return the cell for the row and column, or null if there is none
+   */
+  Cell get(Bytes row, Column col) {
+    int cell = find(row, col);
+    if (cell != -1)
+      return getCell(cell);
+
+    // newer runs have the latest value for a cell
+    int hash = hash(row, col);
+    for (int i = runs.size() - 1; i >= 0; i--) {
+      Run run = runs.get(i);
+      int pos = run.find(row, col, hash);
+      if (pos != -1)
+        return run.read(pos);
+    }
+    return null;
+  }
+
+  private boolean inRuns(Bytes row, Column col) {
+    if (runs.isEmpty())
+      return false;
+
+    int hash = hash(row, col);
+    for (Run run : runs)
+      if (run.find(row, col, hash) != -1)
+        return true;
+    return false;
+  }
+
+  /**
+   * @return the value length of the cell, or one of the negative lengths for cells without a value or not in the buffer
+   */
+  private int valueLength(Bytes row, Column col) {
+    int cell = find(row, col);
+    if (cell != -1)
+      return valLens[cell];
+
+    if (runs.isEmpty())
+      return ABSENT;
+
+    int hash = hash(row, col);
+    for (int i = runs.size() - 1; i >= 0; i--) {
+      Run run = runs.get(i);
+      int pos = run.find(row, col, hash);
+      if (pos != -1)
+        return run.valueLength(pos);
+    }
+    return ABSENT;
+  }
+
+  /**
+   * @return true if the cell has a value, is a delete or is a delta
+   */
+  boolean isSet(Bytes row, Column col) {
+    int valLen = valueLength(row, col);
+    return valLen != ABSENT && valLen != NO_VALUE;
+  }
+
+  /**
+   * @return true if the cell has a value or is a delete, which replace what is in the table instead of adding to it
+   */
+  boolean isOverwrite(Bytes row, Column col) {
+    int valLen = valueLength(row, col);
+    return valLen >= 0 || valLen == DELETE;
+  }
+
+  boolean isDelta(Bytes row, Column col) {
+    return valueLength(row, col) == DELTA;
+  }
+
+  /**
+   * @return the number of distinct cells
+   */
+  int size() {
+    return numCells;
+  }
+
+  /**
+   * @return number of bytes of rows, columns and values buffered in memory
+   */
+  long getBytesUsed() {
+    return bytesUsed;
+  }
+
+  /**
+   * @return the number of times cells were spilled to a file
+   */
+  int getNumSpills() {
+    return runs.size();
+  }
+
+  private Cell getCell(int cell) {
+    int valLen = valLens[cell];
+    byte[] val = valLen >= 0 ? slabOf(slabs, valAddrs[cell]) : null;
+    return new Cell(slabOf(slabs, keyAddrs[cell]), offsetOf(keyAddrs[cell]), rowLens[cell], famLens[cell], qualLens[cell], visLens[cell], val,
+        offsetOf(valAddrs[cell]), valLen, valLen == DELTA ? valAddrs[cell] : 0);
+  }
+
+  private static int compare(byte[] d1, int o1, int l1, byte[] d2, int o2, int l2) {
+    int end = Math.min(l1, l2);
+    for (int i = 0; i < end; i++) {
+      int cmp = (d1[o1 + i] & 0xff) - (d2[o2 + i] & 0xff);
+      if (cmp != 0)
+        return cmp;
+    }
+    return l1 - l2;
+  }
+
+  private int compareCells(int c1, int c2) {
+    byte[] d1 = slabOf(slabs, keyAddrs[c1]);
+    byte[] d2 = slabOf(slabs, keyAddrs[c2]);
+    int o1 = offsetOf(keyAddrs[c1]);
+    int o2 = offsetOf(keyAddrs[c2]);
+
+    int cmp = compare(d1, o1, rowLens[c1], d2, o2, rowLens[c2]);
+    if (cmp != 0)
+      return cmp;
+    o1 += rowLens[c1];
+    o2 += rowLens[c2];
+    cmp = compare(d1, o1, famLens[c1], d2, o2, famLens[c2]);
+    if (cmp != 0)
+      return cmp;
+    o1 += famLens[c1];
+    o2 += famLens[c2];
+    cmp = compare(d1, o1, qualLens[c1], d2, o2, qualLens[c2]);
+    if (cmp != 0)
+      return cmp;
+    o1 += qualLens[c1];
+    o2 += qualLens[c2];
+    return compare(d1, o1, visLens[c1], d2, o2, visLens[c2]);
+  }
+
+  private static int compare(byte[] data, int off, int len, Bytes b) {
+    int end = Math.min(len, b.length());
+    for (int i = 0; i < end; i++) {
+      int cmp = (data[off + i] & 0xff) - (b.byteAt(i) & 0xff);
+      if (cmp != 0)
+        return cmp;
+    }
+    return len - b.length();
+  }
+
+  private static int compareRows(Cell c1, Cell c2) {
+    return compare(c1.key, c1.keyOff, c1.rowLen, c2.key, c2.keyOff, c2.rowLen);
+  }
+
+  private static int compare(Cell c1, Cell c2) {
+    int cmp = compareRows(c1, c2);
+    if (cmp != 0)
+      return cmp;
+    int o1 = c1.keyOff + c1.rowLen;
+    int o2 = c2.keyOff + c2.rowLen;
+    cmp = compare(c1.key, o1, c1.famLen, c2.key, o2, c2.famLen);
+    if (cmp != 0)
+      return cmp;
+    o1 += c1.famLen;
+    o2 += c2.famLen;
+    cmp = compare(c1.key, o1, c1.qualLen, c2.key, o2, c2.qualLen);
+    if (cmp != 0)
+      return cmp;
+    o1 += c1.qualLen;
+    o2 += c2.qualLen;
+    return compare(c1.key, o1, c1.visLen, c2.key, o2, c2.visLen);
+  }
+
+  private static boolean inRow(Cell c, Bytes row) {
+    return compare(c.key, c.keyOff, c.rowLen, row) == 0;
+  }
+
+  private void mergeSort(int[] src, int[] dest, int low, int high) {
+    if (high - low < 2)
+      return;
+
+    int mid = (low + high) >>> 1;
+    // sort halves of dest into src, then merge them back into dest
+    mergeSort(dest, src, low, mid);
+    mergeSort(dest, src, mid, high);
+
+    for (int i = low, p = low, q = mid; i < high; i++) {
+      if (q >= high || (p < mid && compareCells(src[p], src[q]) <= 0))
+        dest[i] = src[p++];
+      else
+        dest[i] = src[q++];
+    }
+  }
+
+  /**
+   * @return cells in memory sorted by row and column, valid until a cell is added
+   */
+  private int[] sort() {
+    if (sorted == null) {
+      int[] cells = new int[size];
+      for (int i = 0; i < size; i++)
+        cells[i] = i;
+      int[] tmp = cells.clone();
+      mergeSort(tmp, cells, 0, size);
+      sorted = cells;
+    }
+    return sorted;
+  }
+
+  /**
+   * @return the position in sorted memory cells of the first cell with a row greater than or equal to the row
+   */
+  private int seekRow(Bytes row) {
+    int[] cells = sort();
+    int low = 0;
+    int high = cells.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int cell = cells[mid];
+      if (compare(slabOf(slabs, keyAddrs[cell]), offsetOf(keyAddrs[cell]), rowLens[cell], row) < 0)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  private void maybeSpill() {
+    if (spillThreshold > 0 && bytesUsed + (long) size * CELL_OVERHEAD >= spillThreshold)
+      spill();
+  }
+
+  /**
+   * Writes the cells in memory to a file in sorted order and clears memory. Each cell is written as the lengths of its row, family, qualifier,
+   * visibility and value followed by their bytes and, for a delta, its amount.
+   */
+  private void spill() {
+    int[] cells = sort();
+    int[] offsets = new int[cells.length];
+    int[] hashes = new int[cells.length];
+
+    try {
+      File file = File.createTempFile("fluo-tx-", ".spill", spillDir);
+      try {
+        int pos = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+          for (int i = 0; i < cells.length; i++) {
+            int cell = cells[i];
+            int keyLen = rowLens[cell] + famLens[cell] + qualLens[cell] + visLens[cell];
+            offsets[i] = pos;
+            hashes[i] = hash(cell);
+
+            out.writeInt(rowLens[cell]);
+            out.writeInt(famLens[cell]);
+            out.writeInt(qualLens[cell]);
+            out.writeInt(visLens[cell]);
+            out.writeInt(valLens[cell]);
+            out.write(slabOf(slabs, keyAddrs[cell]), offsetOf(keyAddrs[cell]), keyLen);
+            pos += Run.HEADER_SIZE + keyLen;
+            if (valLens[cell] > 0) {
+              out.write(slabOf(slabs, valAddrs[cell]), offsetOf(valAddrs[cell]), valLens[cell]);
+              pos += valLens[cell];
+            } else if (valLens[cell] == DELTA) {
+              out.writeLong(valAddrs[cell]);
+              pos += 8;
+            }
+          }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+          // the mapping stays valid after the channel is closed and the file is deleted
+          MappedByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, pos);
+          runs.add(new Run(data, offsets, hashes));
+        }
+      } finally {
+        if (!file.delete())
+          file.deleteOnExit();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to spill transaction write buffer to " + spillDir, e);
+    }
+
+    slabs.clear();
+    slab = null;
+    slabOffset = 0;
+    bytesUsed = 0;
+    size = 0;
+    Arrays.fill(index, 0);
+    sorted = null;
+  }
+
+  /**
+   * Cells spilled to a memory mapped file, sorted by row and column. Cells are searched in the mapped file without copying them onto the heap. A
+   * bloom filter over the cells lets lookups for cells that are not in the run, like every new cell added after a spill, skip the search.
+   */
+  private static class Run {
+    // the lengths of the row, family, qualifier, visibility and value written before each cell's key
+    static final int HEADER_SIZE = 20;
+
+    // about a 1% false positive rate
+    private static final int BLOOM_BITS_PER_CELL = 10;
+    private static final int BLOOM_PROBES = 7;
+
+    private final ByteBuffer data;
+    private final int[] offsets;
+    private final long[] bloom;
+    private final long bloomBits;
+
+    Run(ByteBuffer data, int[] offsets, int[] hashes) {
+      this.data = data;
+      this.offsets = offsets;
+      this.bloom = new long[Math.max(1, (int) (((long) offsets.length * BLOOM_BITS_PER_CELL + 63) / 64))];
+      this.bloomBits = (long) bloom.length * 64;
+      for (int hash : hashes) {
+        for (int i = 0; i < BLOOM_PROBES; i++) {
+          long bit = bloomBit(hash, i);
+          bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+      }
+    }
+
+    /**
+     * @return the bit for one probe, derived from the cell hash and a second hash mixed from it
+     */
+    private long bloomBit(int hash, int probe) {
+      long h2 = ((hash * 0x9E3779B9) ^ (hash >>> 16)) & 0xffffffffL | 1;
+      return ((hash & 0xffffffffL) + probe * h2) % bloomBits;
+    }
+
+    private boolean mightContain(int hash) {
+      for (int i = 0; i < BLOOM_PROBES; i++) {
+        long bit = bloomBit(hash, i);
+        if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0)
+          return false;
+      }
+      return true;
+    }
+
+    /**
+     * Copies one cell onto the heap. The value is copied into its own array, so it can be handed to a mutation without copying it again.
+     */
+    Cell read(int i) {
+      ByteBuffer buf = data.duplicate();
+      buf.position(offsets[i]);
+      int rowLen = buf.getInt();
+      int famLen = buf.getInt();
+      int qualLen = buf.getInt();
+      int visLen = buf.getInt();
+      int valLen = buf.getInt();
+
+      byte[] key = new byte[rowLen + famLen + qualLen + visLen];
+      buf.get(key);
+
+      byte[] val = null;
+      long delta = 0;
+      if (valLen >= 0) {
+        val = new byte[valLen];
+        buf.get(val);
+      } else if (valLen == DELTA) {
+        delta = buf.getLong();
+      }
+
+      return new Cell(key, 0, rowLen, famLen, qualLen, visLen, val, 0, valLen, delta);
+    }
+
+    int valueLength(int i) {
+      return data.getInt(offsets[i] + 16);
+    }
+
+    int size() {
+      return offsets.length;
+    }
+
+    private int compare(int off, int len, Bytes b) {
+      int end = Math.min(len, b.length());
+      for (int i = 0; i < end; i++) {
+        int cmp = (data.get(off + i) & 0xff) - (b.byteAt(i) & 0xff);
+        if (cmp != 0)
+          return cmp;
+      }
+      return len - b.length();
+    }
+
+    private int compareRow(int i, Bytes row) {
+      return compare(offsets[i] + HEADER_SIZE, data.getInt(offsets[i]), row);
+    }
+
+    private int compareKey(int i, Bytes row, Column col) {
+      int off = offsets[i];
+      int rowLen = data.getInt(off);
+      int famLen = data.getInt(off + 4);
+      int qualLen = data.getInt(off + 8);
+      int visLen = data.getInt(off + 12);
+      off += HEADER_SIZE;
+
+      int cmp = compare(off, rowLen, row);
+      if (cmp != 0)
+        return cmp;
+      off += rowLen;
+      cmp = compare(off, famLen, col.getFamily());
+      if (cmp != 0)
+        return cmp;
+      off += famLen;
+      cmp = compare(off, qualLen, col.getQualifier());
+      if (cmp != 0)
+        return cmp;
+      off += qualLen;
+      return compare(off, visLen, col.getVisibility());
+    }
+
+    /**
+     * @param hash
+     *          the hash of the row and column
+     * @return the position of the cell, or -1 if it is not in this run
+     */
+    int find(Bytes row, Column col, int hash) {
+      if (!mightContain(hash))
+        return -1;
+
+      int low = 0;
+      int high = offsets.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compareKey(mid, row, col);
+        if (cmp < 0)
+          low = mid + 1;
+        else if (cmp > 0)
+          high = mid - 1;
+        else
+          return mid;
+      }
+      return -1;
+    }
+
+    /**
+     * @return the position of the first cell with a row greater than or equal to the row
+     */
+    int seekRow(Bytes row) {
+      int low = 0;
+      int high = offsets.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (compareRow(mid, row) < 0)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      return low;
+    }
+
+    Iterator<Cell> iterator(final int start) {
+      return new Iterator<Cell>() {
+        int pos = start;
+
+        @Override
+        public boolean hasNext() {
+          return pos < offsets.length;
+        }
+
+        @Override
+        public Cell next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          return read(pos++);
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  private Iterator<Cell> memoryIterator(final int start) {
+    final int[] cells = sort();
+    return new Iterator<Cell>() {
+      int pos = start;
+
+      @Override
+      public boolean hasNext() {
+        return pos < cells.length;
+      }
+
+      @Override
+      public Cell next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return getCell(cells[pos++]);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Merges sorted sources, when sources have the same cell the newest source wins
+   */
+  private static class MergeIterator implements Iterator<Cell> {
+    // sources ordered from oldest to newest
+    private final List<PeekingIterator<Cell>> sources = new ArrayList<>();
+
+    MergeIterator(List<Iterator<Cell>> sources) {
+      for (Iterator<Cell> source : sources)
+        this.sources.add(Iterators.peekingIterator(source));
+    }
+
+    @Override
+    public boolean hasNext() {
+      for (PeekingIterator<Cell> source : sources)
+        if (source.hasNext())
+          return true;
+      return false;
+    }
+
+    @Override
+    public Cell next() {
+      Cell min = null;
+      for (PeekingIterator<Cell> source : sources) {
+        if (source.hasNext() && (min == null || compare(source.peek(), min) <= 0))
+          min = source.peek();
+      }
+
+      if (min == null)
+        throw new NoSuchElementException();
+
+      // the last source with the cell is the newest, skip the cell in all sources
+      for (PeekingIterator<Cell> source : sources) {
+        if (source.hasNext() && compare(source.peek(), min) == 0)
+          source.next();
+      }
+
+      return min;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * @return all cells sorted by row and column, valid until a cell is added
+   */
+  Iterator<Cell> iterator() {
+    List<Iterator<Cell>> sources = new ArrayList<>(runs.size() + 1);
+    for (Run run : runs)
+      sources.add(run.iterator(0));
+    sources.add(memoryIterator(0));
+    return new MergeIterator(sources);
+  }
+
+  /**
+   * @return the cells of a row sorted by column
+   */
+  Iterator<Cell> iterator(final Bytes row) {
+    List<Iterator<Cell>> sources = new ArrayList<>(runs.size() + 1);
+    for (Run run : runs)
+      sources.add(run.iterator(run.seekRow(row)));
+    sources.add(memoryIterator(seekRow(row)));
+
+    final PeekingIterator<Cell> merged = Iterators.peekingIterator(new MergeIterator(sources));
+    return new Iterator<Cell>() {
+      @Override
+      public boolean hasNext() {
+        return merged.hasNext() && inRow(merged.peek(), row);
+      }
+
+      @Override
+      public Cell next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return merged.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * @return the cells grouped by row, in row and column order
+   */
+  Iterable<List<Cell>> rows() {
+    return new Iterable<List<Cell>>() {
+      @Override
+      public Iterator<List<Cell>> iterator() {
+        final PeekingIterator<Cell> cells = Iterators.peekingIterator(WriteBuffer.this.iterator());
+        return new Iterator<List<Cell>>() {
+          @Override
+          public boolean hasNext() {
+            return cells.hasNext();
+          }
+
+          @Override
+          public List<Cell> next() {
+            List<Cell> row = new ArrayList<>();
+            row.add(cells.next());
+            while (cells.hasNext() && compareRows(cells.peek(), row.get(0)) == 0)
+              row.add(cells.next());
+            return row;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  boolean containsRow(Bytes row) {
+    return iterator(row).hasNext();
+  }
+
+  /**
+   * @return true if all cells are in one row
+   */
+  boolean isSingleRow() {
+    Iterator<List<Cell>> iter = rows().iterator();
+    if (!iter.hasNext())
+      return false;
+    iter.next();
+    return !iter.hasNext();
+  }
+
+  /**
+   * @return the columns of all cells in a row
+   */
+  Set<Column> getColumns(Bytes row) {
+    Set<Column> columns = new HashSet<>();
+    Iterator<Cell> iter = iterator(row);
+    while (iter.hasNext())
+      columns.add(iter.next().getColumn());
+    return columns;
+  }
+
+  /**
+   * Releases spilled runs, the buffer can not be used after it is closed
+   */
+  @Override
+  public void close() {
+    runs.clear();
+    slabs.clear();
+  }
+}
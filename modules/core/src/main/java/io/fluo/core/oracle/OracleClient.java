@@ -17,17 +17,25 @@ package io.fluo.core.oracle;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.fluo.accumulo.util.ZookeeperConstants;
 import io.fluo.core.impl.CuratorCnxnListener;
 import io.fluo.core.impl.Environment;
 import io.fluo.core.thrift.OracleService;
-import io.fluo.core.util.UtilWaitThread;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
@@ -51,26 +59,62 @@ import org.slf4j.LoggerFactory;
 /**
  * Connects to an oracle to retrieve timestamps. If mutliple oracle servers are run, it will automatically
  * fail over to different leaders.
+ * <p/>
+ * Connections to oracles that are not the leader are opened ahead of time and kept warm, so that failing over only requires noticing the leader
+ * changed and does not wait on opening new connections.
  */
 public class OracleClient {
 
   public static final Logger log = LoggerFactory.getLogger(OracleClient.class);
 
-  private Participant currentLeader;
+  // number of connections to the oracle, each connection can have one request outstanding
+  static final int NUM_CONNECTIONS = 4;
+  static final int MAX_QUEUED_REQUESTS = 10000;
+  // longest time to wait for zookeeper to report a leader before checking again
+  static final long LEADER_WAIT_MS = 1000;
+  // longest time to wait when opening a connection to an oracle
+  static final int CONNECT_TIMEOUT_MS = 1000;
 
-  private static final class TimeRequest {
-    CountDownLatch cdl = new CountDownLatch(1);
-    AtomicLong timestamp = new AtomicLong();
+  private volatile Participant currentLeader;
+
+  private static final class TimeRequest extends AbstractFuture<Long> {
+    void setTimestamp(long timestamp) {
+      set(timestamp);
+    }
   }
 
+  /**
+   * Tracks the current oracle leader and starts a pool of connections that take batches of requests off the queue. While one connection waits on
+   * the oracle, the other connections can send the requests that queued up in the meantime.
+   */
   private class TimestampRetriever extends LeaderSelectorListenerAdapter implements Runnable, PathChildrenCacheListener {
 
     private LeaderSelector leaderSelector;
     private CuratorFramework curatorFramework;
-    private OracleService.Client client;
     private PathChildrenCache pathChildrenCache;
-
-    private TTransport transport;
+    // connections opened to oracles that are not the leader, keyed by oracle id
+    private final Map<String,List<TTransport>> standbys = new HashMap<>();
+    // standby connections are opened by this thread, so that an unreachable oracle does not hold up delivery of leader changes
+    private final ExecutorService standbyExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Oracle client standby connector");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private final Runnable refreshTask = new Runnable() {
+      @Override
+      public void run() {
+        refreshPending.set(false);
+        try {
+          refreshStandbys();
+        } catch (Exception e) {
+          log.warn("Failed to refresh standby oracle connections", e);
+        }
+      }
+    };
 
     @Override
     public void run() {
@@ -92,8 +136,13 @@ public class OracleClient {
 
         leaderSelector = new LeaderSelector(curatorFramework, zkPath, this);
 
-        connect();
-        doWork();
+        for (int i = 1; i < NUM_CONNECTIONS; i++) {
+          Thread thread = new Thread(new OracleConnection(this));
+          thread.setDaemon(true);
+          thread.start();
+        }
+
+        new OracleConnection(this).run();
 
       } catch (Exception e) {
         e.printStackTrace();
@@ -116,10 +165,165 @@ public class OracleClient {
             currentLeader = leaderSelector.getLeader();
           else
             currentLeader = null;
+
+          // wake connections waiting for a new leader
+          notifyAll();
+        }
+
+        // a refresh that has not started yet will see this change, so there is no need to queue another
+        if (refreshPending.compareAndSet(false, true))
+          standbyExecutor.execute(refreshTask);
+      }
+    }
+
+    /**
+     * Opens connections to oracles that are not the leader and closes connections to oracles that went away.
+     */
+    private void refreshStandbys() throws Exception {
+      Collection<Participant> participants = leaderSelector.getParticipants();
+
+      Set<String> followers = new HashSet<>();
+      for (Participant participant : participants) {
+        if (!participant.isLeader())
+          followers.add(participant.getId());
+      }
+
+      List<TTransport> toClose = new ArrayList<>();
+      Map<String,Integer> needed = new HashMap<>();
+      synchronized (this) {
+        Iterator<Map.Entry<String,List<TTransport>>> iter = standbys.entrySet().iterator();
+        while (iter.hasNext()) {
+          Map.Entry<String,List<TTransport>> entry = iter.next();
+          if (!followers.contains(entry.getKey())) {
+            toClose.addAll(entry.getValue());
+            iter.remove();
+          }
+        }
+
+        for (String id : followers) {
+          List<TTransport> open = standbys.get(id);
+          int size = open == null ? 0 : open.size();
+          if (size < NUM_CONNECTIONS)
+            needed.put(id, NUM_CONNECTIONS - size);
+        }
+      }
+
+      for (TTransport transport : toClose)
+        transport.close();
+
+      // open connections outside of the lock, so connecting to a slow oracle does not hold up failover
+      for (Map.Entry<String,Integer> entry : needed.entrySet()) {
+        for (int i = 0; i < entry.getValue(); i++) {
+          TTransport transport;
+          try {
+            transport = openTransport(entry.getKey());
+          } catch (TTransportException e) {
+            log.debug("Unable to open standby connection to oracle at " + entry.getKey());
+            break;
+          }
+
+          synchronized (this) {
+            List<TTransport> open = standbys.get(entry.getKey());
+            if (open == null) {
+              open = new ArrayList<>();
+              standbys.put(entry.getKey(), open);
+            }
+            open.add(transport);
+          }
         }
       }
     }
 
+    /**
+     * @return an open connection to the given oracle made while it was a standby, or null if there is none
+     */
+    private synchronized TTransport takeStandby(String id) {
+      List<TTransport> open = standbys.get(id);
+      while (open != null && !open.isEmpty()) {
+        TTransport transport = open.remove(open.size() - 1);
+        if (transport.isOpen())
+          return transport;
+      }
+      return null;
+    }
+
+    /**
+     * Waits for zookeeper to report a change in leadership or for the timeout to pass.
+     */
+    private synchronized void awaitLeaderChange(Participant leader) {
+      try {
+        if (leader == currentLeader)
+          wait(LEADER_WAIT_MS);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private synchronized boolean getLeaderAttempt() {
+      Participant possibleLeader = null;
+      try {
+        possibleLeader = leaderSelector.getLeader();
+      } catch (KeeperException e) {
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+
+      if (isLeader(possibleLeader)) {
+        currentLeader = possibleLeader;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Attempt to retrieve a leader until one is found
+     */
+    private Participant getLeader() {
+      boolean found = getLeaderAttempt();
+      while (!found) {
+        awaitLeaderChange(null);
+        found = getLeaderAttempt();
+      }
+      return currentLeader;
+    }
+
+    private boolean isLeader(Participant participant) {
+      return participant != null && participant.isLeader();
+    }
+
+
+    /**
+     * NOTE: This isn't competing for leadership, so it doesn't need to be started.
+     */
+    @Override
+    public void takeLeadership(CuratorFramework curatorFramework) throws Exception {
+    }
+  }
+
+  /**
+   * A single connection to the oracle leader. Takes all queued requests and asks the oracle for that many timestamps in one call.
+   */
+  private class OracleConnection implements Runnable {
+
+    private final TimestampRetriever retriever;
+    private OracleService.Client client;
+    private TTransport transport;
+    private String connectedLeaderId;
+
+    OracleConnection(TimestampRetriever retriever) {
+      this.retriever = retriever;
+    }
+
+    @Override
+    public void run() {
+      try {
+        connect();
+        doWork();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+
     private void doWork() {
 
       ArrayList<TimeRequest> request = new ArrayList<>();
@@ -136,17 +340,10 @@ public class OracleClient {
           while (true) {
 
             try {
-              String currentLeaderId;
-              OracleService.Client localClient;
-              synchronized (this) {
-                currentLeaderId = getOracle();
-                localClient = client;
-              }
-
-              start = localClient.getTimestamps(env.getFluoInstanceID(), request.size());
+              start = client.getTimestamps(env.getFluoInstanceID(), request.size());
 
               String leaderId = getOracle();
-              if(leaderId != null && !leaderId.equals(currentLeaderId)) {
+              if(leaderId != null && !leaderId.equals(connectedLeaderId)) {
                 reconnect();
                 continue;
               }
@@ -158,13 +355,16 @@ public class OracleClient {
               reconnect();
             } catch (TException e) {
               e.printStackTrace();
+              // the oracle may be giving up leadership, so wait for zookeeper to elect the next leader unless it already has
+              Participant leader = currentLeader;
+              if (leader == null || leader.getId().equals(connectedLeaderId))
+                retriever.awaitLeaderChange(leader);
+              reconnect();
             }
           }
 
           for (int i = 0; i < request.size(); i++) {
-            TimeRequest tr = request.get(i);
-            tr.timestamp.set(start + i);
-            tr.cdl.countDown();
+            request.get(i).setTimestamp(start + i);
           }
 
         } catch (Exception e) {
@@ -173,26 +373,25 @@ public class OracleClient {
       }
     }
 
-    private synchronized void connect() throws IOException, KeeperException, InterruptedException, TTransportException {
+    private void connect() throws IOException, KeeperException, InterruptedException, TTransportException {
 
-      getLeader();
+      Participant leader = retriever.getLeader();
       while (true) {
-        log.debug("Connecting to oracle at " + currentLeader.getId());
-        String[] hostAndPort = currentLeader.getId().split(":");
-
-        String host = hostAndPort[0];
-        int port = Integer.parseInt(hostAndPort[1]);
+        log.debug("Connecting to oracle at " + leader.getId());
 
         try {
-          transport = new TFastFramedTransport(new TSocket(host, port));
-          transport.open();
+          transport = retriever.takeStandby(leader.getId());
+          if (transport == null)
+            transport = openTransport(leader.getId());
           TProtocol protocol = new TCompactProtocol(transport);
           client = new OracleService.Client(protocol);
-          log.info("Connected to oracle at " + getOracle());
+          connectedLeaderId = leader.getId();
+          log.info("Connected to oracle at " + connectedLeaderId);
           break;
         } catch (TTransportException e) {
-          sleepRandom();
-          getLeader();
+          // the leader is not reachable, it is likely going away so wait for zookeeper to elect the next one
+          retriever.awaitLeaderChange(leader);
+          leader = retriever.getLeader();
         } catch (Exception e) {
           throw new RuntimeException(e);
         }
@@ -200,9 +399,9 @@ public class OracleClient {
     }
 
     /**
-     * Atomically closes current connection and connects to the current leader
+     * Closes current connection and connects to the current leader
      */
-    private synchronized void reconnect() throws InterruptedException, TTransportException, KeeperException, IOException {
+    private void reconnect() throws InterruptedException, TTransportException, KeeperException, IOException {
       close();
       connect();
     }
@@ -211,58 +410,22 @@ public class OracleClient {
       if(transport.isOpen())
         transport.close();
     }
+  }
 
-    private boolean getLeaderAttempt() {
-      Participant possibleLeader = null;
-      try {
-        possibleLeader = leaderSelector.getLeader();
-      } catch (KeeperException e) {
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
-
-      if (isLeader(possibleLeader)) {
-        currentLeader = possibleLeader;
-        return true;
-      }
-      return false;
-    }
-
-    /**
-     * Attempt to retrieve a leader until one is found
-     */
-    private void getLeader() {
-      boolean found = getLeaderAttempt();
-      while (!found) {
-        sleepRandom();
-        found = getLeaderAttempt();
-      }
-    }
-
-    /**
-     * Sleep a random amount of time from 100ms to 1sec
-     */
-    private void sleepRandom() {
-      UtilWaitThread.sleep(100 + (long) (1000 * Math.random()));
-    }
-
-    private boolean isLeader(Participant participant) {
-      return participant != null && participant.isLeader();
-    }
-
-
-    /**
-     * NOTE: This isn't competing for leadership, so it doesn't need to be started.
-     */
-    @Override
-    public void takeLeadership(CuratorFramework curatorFramework) throws Exception {
-    }
+  private static TTransport openTransport(String oracleId) throws TTransportException {
+    String[] hostAndPort = oracleId.split(":");
+    TSocket socket = new TSocket(hostAndPort[0], Integer.parseInt(hostAndPort[1]), CONNECT_TIMEOUT_MS);
+    TTransport transport = new TFastFramedTransport(socket);
+    transport.open();
+    // only bound the time to connect, requests may wait on the oracle reserving timestamps
+    socket.setTimeout(0);
+    return transport;
   }
 
   private final static Map<String,OracleClient> clients = new HashMap<>();
 
   private final Environment env;
-  private final ArrayBlockingQueue<TimeRequest> queue = new ArrayBlockingQueue<>(1000);
+  private final ArrayBlockingQueue<TimeRequest> queue = new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS);
 
   private OracleClient(Environment env) throws Exception {
     this.env = env;
@@ -274,17 +437,32 @@ public class OracleClient {
   }
 
   public long getTimestamp() throws Exception {
+    return getTimestampAsync().get();
+  }
+
+  /**
+   * Requests a timestamp without waiting for the oracle to respond. This will only block when there are too many requests waiting to be sent to
+   * the oracle.
+   *
+   * @return a future that will contain the timestamp
+   */
+  public ListenableFuture<Long> getTimestampAsync() {
     TimeRequest tr = new TimeRequest();
-    queue.add(tr);
-    tr.cdl.await();
-    return tr.timestamp.get();
+    try {
+      // block when too many requests are queued rather than fail
+      queue.put(tr);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    return tr;
   }
 
   /**
    * Return the oracle that the current client is connected to.
    */
-  public synchronized String getOracle() {
-    return currentLeader != null ? currentLeader.getId() : null;
+  public String getOracle() {
+    Participant leader = currentLeader;
+    return leader != null ? leader.getId() : null;
   }
 
   /**
@@ -18,10 +18,16 @@ package io.fluo.core.oracle;
 import java.net.InetSocketAddress;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.fluo.accumulo.util.LongUtil;
 import io.fluo.accumulo.util.ZookeeperConstants;
+import io.fluo.accumulo.util.ZookeeperUtil;
 import io.fluo.core.impl.CuratorCnxnListener;
 import io.fluo.core.impl.Environment;
 import io.fluo.core.thrift.OracleService;
@@ -30,6 +36,9 @@ import io.fluo.core.util.HostUtil;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
@@ -40,7 +49,6 @@ import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.thrift.TException;
 import org.apache.thrift.TProcessor;
 import org.apache.thrift.protocol.TCompactProtocol;
-import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.server.THsHaServer;
 import org.apache.thrift.transport.TFastFramedTransport;
 import org.apache.thrift.transport.TNonblockingServerSocket;
@@ -58,22 +66,70 @@ import org.slf4j.LoggerFactory;
  * If multiple oracle servers are run, they will choose a leader and clients will automatically connect
  * to that leader. If the leader goes down, the client will automatically fail over to the next leader.
  * In the case where an oracle fails over, the next oracle will begin a new block of timestamps.
+ * <p/>
+ * Blocks of timestamps are reserved in zookeeper by a background thread. The size of a block is derived from the rate at which timestamps are being
+ * issued, starting small when an oracle becomes leader and growing as load increases. A new block is reserved before the current one is exhausted, so
+ * clients should only wait on zookeeper when the issue rate spikes faster than a block can be reserved.
+ * <p/>
+ * Timestamps are issued from an atomic counter without locking. Request threads only synchronize when the current block is exhausted and they must
+ * wait for the next block.
+ * <p/>
+ * Oracles that are not the leader run as hot standbys. They keep a connection open to the leader and watch the blocks it reserves, so that when
+ * the leader goes away a standby can notice quickly and start issuing timestamps with a block sized for the load the leader was handling.
+ * <p/>
+ * The leader also periodically publishes the oldest active timestamp of all transactors to zookeeper for garbage collection.
  */
 public class OracleServer extends LeaderSelectorListenerAdapter implements OracleService.Iface, PathChildrenCacheListener {
   
   private static final Logger log = LoggerFactory.getLogger(OracleServer.class);
 
   public static final long ORACLE_MAX_READ_BUFFER_BYTES = 2048;
+
+  // smallest and largest number of timestamps reserved in zookeeper at once
+  static final long MIN_BLOCK_SIZE = 100;
+  static final long MAX_BLOCK_SIZE = 10000000;
+  // blocks are sized so that at the current issue rate, they should last about this long
+  static final long TARGET_BLOCK_TIME_MS = 1000;
+  // how often a standby checks if the former leader is still serving before taking over
+  static final long LEADER_POLL_MS = 10;
+  // socket timeout used by a standby when talking to the leader
+  static final int LEADER_TIMEOUT_MS = 1000;
+  // how often the leader logs its allocation stats
+  static final long STATS_PERIOD_MS = 60000;
   
   private final Environment env;
   private final Timer timer;
 
   private Thread serverThread;
   private THsHaServer server;
-  private volatile long currentTs = 0;
+  private final AtomicLong currentTs = new AtomicLong(0);
   private volatile long maxTs = 0;
   private volatile boolean started = false;
   private long zkTs = 0;
+  private final String fluoInstanceID;
+
+  private final ExecutorService allocationExecutor;
+  private final Runnable allocationTask;
+  private final AtomicBoolean allocationInProgress = new AtomicBoolean(false);
+  // used to wait for allocations to finish, separate from this object's lock so that start and stop do not block allocations
+  private final Object allocationLock = new Object();
+  // incremented each time an allocation finishes, successfully or not
+  private long allocationAttempts = 0;
+  private volatile Exception allocationFailure = null;
+  // the following are only modified by the allocation thread or when no allocation is in progress
+  private volatile long blockSize = MIN_BLOCK_SIZE;
+  private long lastAllocationTime = 0;
+  private long lastAllocationTs = 0;
+
+  private volatile long lastAllocationLatency = 0;
+  private volatile long issueRate = 0;
+  private final AtomicLong numAllocations = new AtomicLong(0);
+  private final AtomicLong numBlockedRequests = new AtomicLong(0);
+  private final AtomicLong allocationWaitTime = new AtomicLong(0);
+  // values at the last time stats were logged, only used by the timer thread
+  private long lastStatsAllocations = 0;
+  private long lastStatsBlockedRequests = 0;
+  private long lastStatsWaitTime = 0;
   
   private LeaderSelector leaderSelector;
   private PathChildrenCache pathChildrenCache;
@@ -81,9 +137,18 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
   private CuratorCnxnListener cnxnListener;
   private Participant currentLeader;
 
+  // standby state, the connection to the current leader and the size of the last block it reserved
+  private NodeCache maxTsCache;
+  private OracleService.Client leaderClient;
+  private TTransport leaderTransport;
+  private String leaderClientId;
+  private long lastSeenMaxTs = -1;
+  private volatile long leaderBlockSize = 0;
+
   private final String maxTsPath;
   private final String curTsPath;
   private final String oraclePath;
+  private final String oldestTsPath;
 
   private volatile boolean isLeader = false;
   
@@ -93,10 +158,12 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
     this.maxTsPath = ZookeeperConstants.oracleMaxTimestampPath(env.getZookeeperRoot());
     this.curTsPath = ZookeeperConstants.oracleCurrentTimestampPath(env.getZookeeperRoot());
     this.oraclePath = ZookeeperConstants.oraclePath(env.getZookeeperRoot());
+    this.oldestTsPath = ZookeeperConstants.transactorOldestTsPath(env.getZookeeperRoot());
+    this.fluoInstanceID = env.getFluoInstanceID();
     TimerTask tt = new TimerTask() {
       @Override
       public void run() {
-        long lastTs = currentTs-1;
+        long lastTs = currentTs.get() - 1;
         if (isLeader && (zkTs != lastTs)) {
           try {
             curatorFramework.setData().forPath(curTsPath, LongUtil.toByteArray(lastTs));
@@ -105,37 +172,186 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
           }
           zkTs = lastTs;
         }
+
+        if (isLeader)
+          publishOldestTimestamp();
       }
     };
     timer = new Timer("Oracle timestamp timer", true);
     timer.schedule(tt, ZookeeperConstants.ZK_UPDATE_PERIOD_MS, ZookeeperConstants.ZK_UPDATE_PERIOD_MS);
+
+    TimerTask statsTask = new TimerTask() {
+      @Override
+      public void run() {
+        if (isLeader)
+          logStats();
+      }
+    };
+    timer.schedule(statsTask, STATS_PERIOD_MS, STATS_PERIOD_MS);
+
+    allocationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Oracle timestamp allocator");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    allocationTask = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          allocateTimestamps();
+          allocationFailure = null;
+        } catch (Exception e) {
+          log.warn("Failed to allocate timestamps", e);
+          allocationFailure = e;
+        } finally {
+          allocationInProgress.set(false);
+          synchronized (allocationLock) {
+            allocationAttempts++;
+            allocationLock.notifyAll();
+          }
+        }
+      }
+    };
   }
 
-  private void allocateTimestamp() throws Exception {
+  /**
+   * Publishes the oldest active timestamp of all transactors, so garbage collection iterators can read one node instead of every transactor's node.
+   */
+  @VisibleForTesting
+  public void publishOldestTimestamp() {
+    try {
+      long oldestTs = ZookeeperUtil.getOldestTimestamp(curatorFramework.getZookeeperClient().getZooKeeper(), env.getZookeeperRoot());
+      if (oldestTs == ZookeeperUtil.OLDEST_POSSIBLE)
+        return;
+
+      byte[] data = LongUtil.toByteArray(oldestTs);
+      if (curatorFramework.checkExists().forPath(oldestTsPath) == null)
+        curatorFramework.create().creatingParentsIfNeeded().forPath(oldestTsPath, data);
+      else
+        curatorFramework.setData().forPath(oldestTsPath, data);
+    } catch (Exception e) {
+      log.warn("Failed to publish oldest active timestamp", e);
+    }
+  }
+
+  /**
+   * Logs the issue rate, block size and the time requests spent waiting on allocations since the last call. Only called from the timer thread.
+   */
+  private void logStats() {
+    long allocations = numAllocations.get();
+    long blocked = numBlockedRequests.get();
+    long waitTime = allocationWaitTime.get();
+
+    log.info("Oracle stats : issue rate {}/s, block size {}, allocations {}, last allocation took {}ms, {} requests waited {}ms on allocations",
+        issueRate, blockSize, allocations - lastStatsAllocations, lastAllocationLatency, blocked - lastStatsBlockedRequests, waitTime - lastStatsWaitTime);
+
+    lastStatsAllocations = allocations;
+    lastStatsBlockedRequests = blocked;
+    lastStatsWaitTime = waitTime;
+  }
+
+  /**
+   * Computes the size of the next block from the rate that timestamps were issued since the last allocation.
+   */
+  private long nextBlockSize(long now) {
+    // nothing issued yet this term, so keep the block size chosen when leadership was taken
+    if (lastAllocationTime == 0)
+      return blockSize;
+
+    long elapsed = Math.max(1, now - lastAllocationTime);
+    long issued = currentTs.get() - lastAllocationTs;
+    long target = (issued * TARGET_BLOCK_TIME_MS) / elapsed;
+    issueRate = (issued * 1000) / elapsed;
+
+    // grow quickly when busy, but shrink slowly so that short pauses do not cause small blocks
+    long size = Math.max(target, blockSize / 2);
+    return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+  }
+
+  /**
+   * Reserves a new block of timestamps in zookeeper. Only called from the allocation thread.
+   */
+  private long allocateTimestamps() throws Exception {
+    long t1 = System.currentTimeMillis();
+
+    blockSize = nextBlockSize(t1);
+    lastAllocationTime = t1;
+    lastAllocationTs = currentTs.get();
+
     Stat stat = new Stat();
     byte[] d = curatorFramework.getData().storingStatIn(stat).forPath(maxTsPath);
 
     // TODO check that d is expected
     // TODO check that stil server when setting
-    // TODO make num allocated variable... when a server first starts allocate a small amount... the longer it runs and the busier it is, allocate bigger blocks
 
-    long newMax = Long.parseLong(new String(d)) + 1000;
+    long newMax = LongUtil.fromByteArray(d) + blockSize;
+
+    // leadership may have been lost while reading, do not reserve timestamps another leader may be using
+    if (!isLeader)
+      throw new IllegalStateException();
 
     curatorFramework.setData().withVersion(stat.getVersion())
       .forPath(maxTsPath, LongUtil.toByteArray(newMax));
+
     maxTs = newMax;
-    
-    if (!isLeader)
-      throw new IllegalStateException();
+
+    lastAllocationLatency = System.currentTimeMillis() - t1;
+    numAllocations.incrementAndGet();
+    log.debug("Allocated timestamps up to {}, block size {}, took {}ms", newMax, blockSize, lastAllocationLatency);
+
+    return newMax;
+  }
+
+  /**
+   * Starts reserving a new block in the background if one is not already being reserved.
+   */
+  private void startAllocation() {
+    if (allocationInProgress.compareAndSet(false, true))
+      allocationExecutor.execute(allocationTask);
+  }
+
+  /**
+   * Waits until the current block has room for the requested number of timestamps, starting allocations as needed.
+   */
+  private void waitForTimestamps(int num) throws Exception {
+    synchronized (allocationLock) {
+      while (num + currentTs.get() >= maxTs) {
+        if (!isLeader)
+          throw new IllegalStateException();
+
+        long attempts = allocationAttempts;
+        startAllocation();
+        while (attempts == allocationAttempts)
+          allocationLock.wait();
+
+        Exception failure = allocationFailure;
+        if (failure != null && num + currentTs.get() >= maxTs)
+          throw failure;
+      }
+    }
+  }
+
+  /**
+   * Waits for any allocation in progress to finish.
+   */
+  private void waitForAllocation() throws InterruptedException {
+    synchronized (allocationLock) {
+      while (allocationInProgress.get())
+        allocationLock.wait();
+    }
   }
 
   @Override
-  public synchronized long getTimestamps(String id, int num) throws TException {
+  public long getTimestamps(String id, int num) throws TException {
 
     if (!started)
       throw new IllegalStateException();
 
-    if (!id.equals(env.getFluoInstanceID())) {
+    if (!id.equals(fluoInstanceID)) {
       throw new IllegalArgumentException();
     }
 
@@ -143,14 +359,30 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
       throw new IllegalStateException();
 
     try {
-      while (num + currentTs >= maxTs) {
-        allocateTimestamp();
-      }
+      while (true) {
+        long cur = currentTs.get();
+        long max = maxTs;
+
+        if (num + cur >= max) {
+          // the background allocation did not keep up, so this request has to wait on zookeeper
+          numBlockedRequests.incrementAndGet();
+          long t1 = System.currentTimeMillis();
+          try {
+            waitForTimestamps(num);
+          } finally {
+            allocationWaitTime.addAndGet(System.currentTimeMillis() - t1);
+          }
+          continue;
+        }
 
-      long tmp = currentTs;
-      currentTs += num;
+        if (currentTs.compareAndSet(cur, cur + num)) {
+          // reserve the next block once half of the current block is used
+          if (max - (cur + num) <= blockSize / 2)
+            startAllocation();
 
-      return tmp;
+          return cur;
+        }
+      }
     } catch (Exception e) {
       throw new TException(e);
     }
@@ -160,6 +392,48 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
     return isLeader;
   }
 
+  /**
+   * @return the number of timestamps reserved by the most recent zookeeper allocation
+   */
+  public long getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * @return the time in milliseconds the most recent zookeeper allocation took
+   */
+  public long getLastAllocationLatency() {
+    return lastAllocationLatency;
+  }
+
+  /**
+   * @return the number of blocks reserved in zookeeper since this oracle was created
+   */
+  public long getNumAllocations() {
+    return numAllocations.get();
+  }
+
+  /**
+   * @return the number of timestamp requests that had to wait on a zookeeper allocation
+   */
+  public long getNumBlockedRequests() {
+    return numBlockedRequests.get();
+  }
+
+  /**
+   * @return the total time in milliseconds that timestamp requests spent waiting on zookeeper allocations
+   */
+  public long getAllocationWaitTime() {
+    return allocationWaitTime.get();
+  }
+
+  /**
+   * @return the number of timestamps issued per second, as measured at the most recent zookeeper allocation
+   */
+  public long getIssueRate() {
+    return issueRate;
+  }
+
   @VisibleForTesting
   public boolean isConnected() {
     return (started && cnxnListener.isConnected());
@@ -217,6 +491,15 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
     pathChildrenCache.getListenable().addListener(this);
     pathChildrenCache.start();
 
+    maxTsCache = new NodeCache(curatorFramework, maxTsPath);
+    maxTsCache.getListenable().addListener(new NodeCacheListener() {
+      @Override
+      public void nodeChanged() throws Exception {
+        trackLeaderBlock();
+      }
+    });
+    maxTsCache.start();
+
     while (!cnxnListener.isConnected())
       Thread.sleep(200);
 
@@ -234,7 +517,9 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
       started = false;
 
       currentLeader = null;
+      closeLeaderConnection();
       if (curatorFramework.getState().equals(CuratorFrameworkState.STARTED)) {
+        maxTsCache.close();
         pathChildrenCache.getListenable().removeListener(this);
         pathChildrenCache.close();
         leaderSelector.close();
@@ -245,19 +530,88 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
     }
   }
 
-  private OracleService.Client getOracleClient(String host, int port) {
+  /**
+   * Records the size of the blocks the leader is reserving, so that this oracle can start with a similar block if it takes over.
+   */
+  private synchronized void trackLeaderBlock() {
+    ChildData data = maxTsCache.getCurrentData();
+    if (isLeader || data == null)
+      return;
+
+    long max = LongUtil.fromByteArray(data.getData());
+    if (lastSeenMaxTs >= 0 && max > lastSeenMaxTs)
+      leaderBlockSize = max - lastSeenMaxTs;
+    lastSeenMaxTs = max;
+  }
+
+  /**
+   * Opens a connection to the leader ahead of time, so a standby does not have to connect while failing over. Connects without holding this
+   * object's lock, so start and stop are not held up by an unreachable leader.
+   */
+  private void connectToLeader(Participant leader) {
+    synchronized (this) {
+      if (leader.getId().equals(leaderClientId) && leaderTransport.isOpen())
+        return;
+    }
+
+    String[] address = leader.getId().split(":");
+    TTransport transport = new TFastFramedTransport(new TSocket(address[0], Integer.parseInt(address[1]), LEADER_TIMEOUT_MS));
     try {
-      TTransport transport = new TFastFramedTransport(new TSocket(host, port));
       transport.open();
-      TProtocol protocol = new TCompactProtocol(transport);
-      log.info("Former leader was reachable at " + host + ":" + port);
-      return new OracleService.Client(protocol);
     } catch (TTransportException e) {
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+      log.debug("Standby unable to connect to leader at " + leader.getId());
+      return;
     }
 
-    return null;
+    synchronized (this) {
+      closeLeaderConnection();
+      if (!started) {
+        transport.close();
+        return;
+      }
+      leaderTransport = transport;
+      leaderClient = new OracleService.Client(new TCompactProtocol(transport));
+      leaderClientId = leader.getId();
+      log.debug("Standby connected to leader at " + leaderClientId);
+    }
+  }
+
+  private synchronized void closeLeaderConnection() {
+    if (leaderTransport != null && leaderTransport.isOpen())
+      leaderTransport.close();
+    leaderTransport = null;
+    leaderClient = null;
+    leaderClientId = null;
+  }
+
+  /**
+   * Waits for the former leader to stop serving timestamps. Uses the connection opened while this oracle was a standby when there is one.
+   */
+  private void waitForFormerLeader() {
+    Participant formerLeader;
+    synchronized (this) {
+      formerLeader = currentLeader;
+    }
+    if (formerLeader == null)
+      return;
+
+    connectToLeader(formerLeader);
+
+    OracleService.Client client;
+    synchronized (this) {
+      client = leaderClient;
+      if (client != null)
+        log.info("Former leader was reachable at " + leaderClientId);
+    }
+
+    if (client != null) {
+      try {
+        while (client.isLeader())
+          Thread.sleep(LEADER_POLL_MS);
+      } catch (Exception e) {}
+    }
+
+    closeLeaderConnection();
   }
 
   /**
@@ -272,26 +626,24 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
 
     try {
       // sanity check- make sure previous oracle is no longer listening for connections
-      if (currentLeader != null) {
-        String[] address = currentLeader.getId().split(":");
-        String host = address[0];
-        int port = Integer.parseInt(address[1]);
-
-        OracleService.Client client = getOracleClient(host, port);
-        if(client != null) {
-          try {
-            while(client.isLeader())
-              Thread.sleep(500);
-          } catch(Exception e) {}
-        }
-      }
+      waitForFormerLeader();
 
       synchronized (this) {
-        byte[] d = curatorFramework.getData().forPath(maxTsPath);
-        currentTs = maxTs = LongUtil.fromByteArray(d);
-      }
+        // an allocation from a previous leadership term must finish before reading the max timestamp
+        waitForAllocation();
 
-      isLeader = true;
+        // set current before max, so a request that raced with the previous term can not see the new max with the old current
+        long newTs = LongUtil.fromByteArray(curatorFramework.getData().forPath(maxTsPath));
+        currentTs.set(newTs);
+        maxTs = newTs;
+
+        // start with the block size the former leader was using, so clients that fail over do not wait on many small blocks
+        blockSize = Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, leaderBlockSize));
+        lastAllocationTime = 0;
+
+        isLeader = true;
+        startAllocation();
+      }
 
       while (started)
         Thread.sleep(100); // if leadership is lost, then curator will interrupt the thread that called this method
@@ -308,13 +660,15 @@ public class OracleServer extends LeaderSelectorListenerAdapter implements Oracl
   public void childEvent(CuratorFramework curatorFramework, PathChildrenCacheEvent event) throws Exception {
 
     try {
-      if (isConnected() && (event.equals(PathChildrenCacheEvent.Type.CHILD_ADDED) ||
-                            event.equals(PathChildrenCacheEvent.Type.CHILD_REMOVED) ||
-                            event.equals(PathChildrenCacheEvent.Type.CHILD_UPDATED)) ) {
-        synchronized (this) {
-          Participant participant = leaderSelector.getLeader();
-          if (isLeader(participant) && !leaderSelector.hasLeadership())    // in case current instance becomes leader, we want to know who came before it.
+      if (isConnected() && (event.getType().equals(PathChildrenCacheEvent.Type.CHILD_ADDED) ||
+                            event.getType().equals(PathChildrenCacheEvent.Type.CHILD_REMOVED) ||
+                            event.getType().equals(PathChildrenCacheEvent.Type.CHILD_UPDATED)) ) {
+        Participant participant = leaderSelector.getLeader();
+        if (isLeader(participant) && !leaderSelector.hasLeadership()) {   // in case current instance becomes leader, we want to know who came before it.
+          synchronized (this) {
             currentLeader = participant;
+          }
+          connectToLeader(participant);
         }
       }
     } catch(InterruptedException e) {
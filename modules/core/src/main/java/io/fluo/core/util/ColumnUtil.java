@@ -50,11 +50,10 @@ public class ColumnUtil {
     return env.getSharedResources().getVisCache().getCV(col);
   }
 
-  public static void commitColumn(Environment env, boolean isTrigger, boolean isPrimary, Column col, boolean isWrite, boolean isDelete, long startTs,
-      long commitTs,
-      Set<Column> observedColumns, Mutation m) {
+  public static void commitColumn(Environment env, boolean isTrigger, boolean isPrimary, Column col, boolean isWrite, boolean isDelete, boolean isDelta,
+      long startTs, long commitTs, Set<Column> observedColumns, Mutation m) {
     if (isWrite) {
-      Flutation.put(env, m, col, ColumnConstants.WRITE_PREFIX | commitTs, WriteValue.encode(startTs, isPrimary, false));
+      Flutation.put(env, m, col, ColumnConstants.WRITE_PREFIX | commitTs, WriteValue.encode(startTs, isPrimary, false, isDelta));
     } else {
       Flutation.put(env, m, col, ColumnConstants.DEL_LOCK_PREFIX | commitTs, DelLockValue.encode(startTs, isPrimary, false));
     }
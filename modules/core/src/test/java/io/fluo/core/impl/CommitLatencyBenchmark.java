@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.Arrays;
+
+import io.fluo.api.data.Column;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import io.fluo.core.impl.TransactionImpl.CommitData;
+import io.fluo.core.oracle.OracleClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures per transaction commit latency of single row transactions, which lock and commit the row with one conditional mutation each, against
+ * the same transactions committed with separate primary and secondary phases, and against transactions that update two rows with and without
+ * asynchronous commit of the secondary row.
+ */
+public class CommitLatencyBenchmark extends TestBaseImpl {
+
+  private static final int NUM_TXS = 300;
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  private static final Column COL1 = typeLayer.bc().fam("data").qual("c1").vis();
+  private static final Column COL2 = typeLayer.bc().fam("data").qual("c2").vis();
+
+  private interface TxRunner {
+    void run(int i) throws Exception;
+  }
+
+  private void measure(String name, TxRunner runner) throws Exception {
+    // warm up
+    for (int i = 0; i < 20; i++)
+      runner.run(-i - 1);
+
+    long[] latencies = new long[NUM_TXS];
+    for (int i = 0; i < NUM_TXS; i++) {
+      long t1 = System.nanoTime();
+      runner.run(i);
+      latencies[i] = System.nanoTime() - t1;
+    }
+
+    Arrays.sort(latencies);
+    System.out.printf("%s p50:%,dus p99:%,dus%n", name, latencies[NUM_TXS / 2] / 1000, latencies[(int) (NUM_TXS * .99)] / 1000);
+  }
+
+  private void verify(String prefix, boolean twoRows) throws Exception {
+    TestTransaction tx = new TestTransaction(env);
+    for (int i = 0; i < NUM_TXS; i += 37) {
+      Assert.assertEquals("v" + i, tx.get().row(prefix + i).col(COL1).toString());
+      Assert.assertEquals("v" + i, tx.get().row(prefix + i).col(COL2).toString());
+      if (twoRows)
+        Assert.assertEquals("v" + i, tx.get().row(prefix + i + "b").col(COL1).toString());
+    }
+    tx.done();
+  }
+
+  @Test
+  public void testCommitLatency() throws Exception {
+    measure("single row, one mutation", new TxRunner() {
+      @Override
+      public void run(int i) throws Exception {
+        TestTransaction tx = new TestTransaction(env);
+        tx.mutate().row("s" + i).col(COL1).set("v" + i);
+        tx.mutate().row("s" + i).col(COL2).set("v" + i);
+        tx.done();
+      }
+    });
+
+    measure("single row, separate phases", new TxRunner() {
+      @Override
+      public void run(int i) throws Exception {
+        TestTransaction tx = new TestTransaction(env);
+        tx.mutate().row("p" + i).col(COL1).set("v" + i);
+        tx.mutate().row("p" + i).col(COL2).set("v" + i);
+        CommitData cd = tx.createCommitData();
+        Assert.assertTrue(tx.preCommit(cd));
+        long commitTs = OracleClient.getInstance(env).getTimestamp();
+        Assert.assertTrue(tx.commitPrimaryColumn(cd, commitTs));
+        tx.finishCommit(cd, commitTs);
+        tx.close();
+      }
+    });
+
+    measure("two rows", new TxRunner() {
+      @Override
+      public void run(int i) throws Exception {
+        TestTransaction tx = new TestTransaction(env);
+        tx.mutate().row("t" + i).col(COL1).set("v" + i);
+        tx.mutate().row("t" + i).col(COL2).set("v" + i);
+        tx.mutate().row("t" + i + "b").col(COL1).set("v" + i);
+        tx.done();
+      }
+    });
+
+    config.setTransactionAsyncCommit(true);
+    try (final Environment asyncEnv = new Environment(config)) {
+      measure("two rows, async secondaries", new TxRunner() {
+        @Override
+        public void run(int i) throws Exception {
+          TestTransaction tx = new TestTransaction(asyncEnv);
+          tx.mutate().row("a" + i).col(COL1).set("v" + i);
+          tx.mutate().row("a" + i).col(COL2).set("v" + i);
+          tx.mutate().row("a" + i + "b").col(COL1).set("v" + i);
+          tx.done();
+        }
+      });
+    }
+
+    verify("s", false);
+    verify("p", false);
+    verify("t", true);
+    verify("a", true);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ContentionTracker class
+ */
+public class ContentionTrackerTest {
+
+  private static final Column COL1 = new Column("f", "q1");
+  private static final Column COL2 = new Column("f", "q2");
+
+  private static Map<Bytes,Set<Column>> rejected(String row, Column... cols) {
+    Set<Column> colSet = new HashSet<>();
+    Collections.addAll(colSet, cols);
+    Map<Bytes,Set<Column>> rejected = new HashMap<>();
+    rejected.put(Bytes.wrap(row), colSet);
+    return rejected;
+  }
+
+  @Test
+  public void testHotspots() {
+    ContentionTracker tracker = new ContentionTracker();
+
+    for (int i = 0; i < ContentionTracker.HOT_COLLISIONS - 1; i++)
+      tracker.collided(rejected("r1", COL1, COL2));
+
+    Assert.assertEquals(ContentionTracker.HOT_COLLISIONS - 1, tracker.getCollisions(new RowColumn(Bytes.wrap("r1"), COL1)));
+    Assert.assertEquals(0, tracker.getCollisions(new RowColumn(Bytes.wrap("r2"), COL1)));
+    Assert.assertNull(tracker.getHottest(rejected("r1", COL1, COL2)));
+
+    tracker.collided(rejected("r1", COL2));
+    tracker.collided(rejected("r2", COL1));
+
+    Assert.assertEquals(new RowColumn(Bytes.wrap("r1"), COL2), tracker.getHottest(rejected("r1", COL1, COL2)));
+    Assert.assertNull(tracker.getHottest(rejected("r2", COL1)));
+
+    List<Entry<RowColumn,Long>> hotspots = tracker.getHotspots(2);
+    Assert.assertEquals(2, hotspots.size());
+    Assert.assertEquals(new RowColumn(Bytes.wrap("r1"), COL2), hotspots.get(0).getKey());
+    Assert.assertEquals(ContentionTracker.HOT_COLLISIONS, (long) hotspots.get(0).getValue());
+    Assert.assertEquals(new RowColumn(Bytes.wrap("r1"), COL1), hotspots.get(1).getKey());
+
+    Assert.assertEquals(3, tracker.getHotspots(10).size());
+  }
+
+  @Test
+  public void testLocks() {
+    ContentionTracker tracker = new ContentionTracker();
+
+    Lock lock1 = tracker.getLock(new RowColumn(Bytes.wrap("r1"), COL1));
+    Lock lock2 = tracker.getLock(new RowColumn(Bytes.wrap("r1"), COL2));
+
+    Assert.assertSame(lock1, tracker.getLock(new RowColumn(Bytes.wrap("r1"), COL1)));
+    // work waiting on a hot column never waits for work on another column
+    Assert.assertNotSame(lock1, lock2);
+  }
+}
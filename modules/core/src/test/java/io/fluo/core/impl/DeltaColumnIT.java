@@ -0,0 +1,315 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import io.fluo.api.data.Column;
+import io.fluo.api.exceptions.AlreadySetException;
+import io.fluo.api.exceptions.CommitException;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import io.fluo.core.impl.TransactionImpl.CommitData;
+import io.fluo.core.oracle.OracleClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests transactions that add deltas to columns
+ */
+public class DeltaColumnIT extends TestBaseImpl {
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  static final Column COUNT_COL = typeLayer.bc().fam("stat").qual("count").vis();
+
+  private long getCount(String row) throws Exception {
+    TestTransaction tx = new TestTransaction(env);
+    try {
+      return tx.get().row(row).col(COUNT_COL).toLong(0);
+    } finally {
+      tx.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentAdds() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set(10);
+    tx1.done();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    TestTransaction tx3 = new TestTransaction(env);
+    TestTransaction tx4 = new TestTransaction(env);
+
+    tx2.mutate().row("r1").col(COUNT_COL).add(1);
+    tx3.mutate().row("r1").col(COUNT_COL).add(2);
+    tx3.mutate().row("r1").col(COUNT_COL).add(3);
+    tx4.mutate().row("r1").col(COUNT_COL).add(-4);
+
+    // a transaction reads its own deltas added to what it read
+    Assert.assertEquals(15, (long) tx3.get().row("r1").col(COUNT_COL).toLong());
+
+    // none of the transactions collide
+    tx3.done();
+    tx2.done();
+    tx4.done();
+
+    Assert.assertEquals(12, getCount("r1"));
+
+    // deltas to a column without a value add to zero
+    TestTransaction tx5 = new TestTransaction(env);
+    tx5.mutate().row("r2").col(COUNT_COL).add(5);
+    tx5.done();
+
+    Assert.assertEquals(5, getCount("r2"));
+  }
+
+  @Test
+  public void testAddAndSet() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set(10);
+    tx1.done();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    TestTransaction tx3 = new TestTransaction(env);
+
+    tx2.mutate().row("r1").col(COUNT_COL).add(5);
+    long count = tx3.get().row("r1").col(COUNT_COL).toLong();
+    tx3.mutate().row("r1").col(COUNT_COL).set(count * 2);
+
+    tx2.done();
+
+    // a read, modify and write of a column still collides with deltas committed after it started
+    try {
+      tx3.done();
+      Assert.fail();
+    } catch (CommitException ce) {}
+
+    Assert.assertEquals(15, getCount("r1"));
+
+    // a delta started before a set commits on top of it
+    TestTransaction tx4 = new TestTransaction(env);
+    TestTransaction tx5 = new TestTransaction(env);
+    tx4.mutate().row("r1").col(COUNT_COL).add(1);
+    tx5.mutate().row("r1").col(COUNT_COL).set(100);
+    tx5.done();
+    tx4.done();
+
+    Assert.assertEquals(101, getCount("r1"));
+
+    TestTransaction tx6 = new TestTransaction(env);
+    tx6.mutate().row("r1").col(COUNT_COL).add(1);
+    try {
+      tx6.mutate().row("r1").col(COUNT_COL).set(3);
+      Assert.fail();
+    } catch (AlreadySetException ase) {}
+    tx6.close();
+  }
+
+  @Test
+  public void testRollforward() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).add(3);
+    tx1.mutate().row("r2").col(COUNT_COL).add(4);
+
+    CommitData cd = tx1.createCommitData();
+    Assert.assertTrue(tx1.preCommit(cd));
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx1.commitPrimaryColumn(cd, commitTs));
+
+    // a delta that locks the same columns while they are still locked
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r1").col(COUNT_COL).add(30);
+    tx2.mutate().row("r2").col(COUNT_COL).add(40);
+    tx2.done();
+
+    // the secondary lock of tx1 is rolled forward when read
+    Assert.assertEquals(33, getCount("r1"));
+    Assert.assertEquals(44, getCount("r2"));
+
+    tx1.finishCommit(cd, commitTs);
+    tx1.close();
+
+    Assert.assertEquals(33, getCount("r1"));
+    Assert.assertEquals(44, getCount("r2"));
+  }
+
+  @Test
+  public void testRollback() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set(1);
+    tx1.done();
+
+    // two transactions from a dead transactor leave commutative locks on the same columns
+    TransactorNode t2 = new TransactorNode(env);
+    TestTransaction tx2 = new TestTransaction(env, t2);
+    TestTransaction tx3 = new TestTransaction(env, t2);
+    tx2.mutate().row("r1").col(COUNT_COL).add(10);
+    tx2.mutate().row("r2").col(COUNT_COL).add(10);
+    tx3.mutate().row("r1").col(COUNT_COL).add(100);
+    tx3.mutate().row("r2").col(COUNT_COL).add(100);
+
+    CommitData cd2 = tx2.createCommitData();
+    Assert.assertTrue(tx2.preCommit(cd2));
+    CommitData cd3 = tx3.createCommitData();
+    Assert.assertTrue(tx3.preCommit(cd3));
+
+    t2.close();
+
+    // both are rolled back when read, and neither rollback hides the other
+    Assert.assertEquals(1, getCount("r1"));
+    Assert.assertEquals(0, getCount("r2"));
+
+    TestTransaction tx4 = new TestTransaction(env);
+    tx4.mutate().row("r1").col(COUNT_COL).add(1000);
+    tx4.done();
+
+    Assert.assertEquals(1001, getCount("r1"));
+  }
+
+  @Test
+  public void testGarbageCollection() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set(7);
+    tx1.done();
+
+    for (int i = 0; i < 20; i++) {
+      TestTransaction tx = new TestTransaction(env);
+      tx.mutate().row("r1").col(COUNT_COL).add(i);
+      tx.mutate().row("r2").col(COUNT_COL).add(i);
+      tx.done();
+    }
+
+    TestTransaction tx2 = new TestTransaction(env);
+    env.getSharedResources().getTimestampTracker().updateZkNode();
+
+    // deltas older than the oldest active transaction are folded into a value
+    conn.tableOperations().flush(table, null, null, true);
+    conn.tableOperations().compact(table, null, null, true, true);
+
+    Assert.assertEquals(197, (long) tx2.get().row("r1").col(COUNT_COL).toLong());
+    Assert.assertEquals(190, (long) tx2.get().row("r2").col(COUNT_COL).toLong());
+    tx2.done();
+
+    TestTransaction tx3 = new TestTransaction(env);
+    tx3.mutate().row("r1").col(COUNT_COL).add(3);
+    tx3.done();
+
+    Assert.assertEquals(200, getCount("r1"));
+    Assert.assertEquals(190, getCount("r2"));
+  }
+
+  @Test
+  public void testFlushBetweenSetAndAdds() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set(100);
+    tx1.done();
+
+    conn.tableOperations().flush(table, null, null, true);
+
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r1").col(COUNT_COL).add(1);
+    tx2.done();
+
+    TestTransaction tx3 = new TestTransaction(env);
+    env.getSharedResources().getTimestampTracker().updateZkNode();
+
+    // a minor compaction only sees the delta, the value it was added to is in another file
+    conn.tableOperations().flush(table, null, null, true);
+    Assert.assertEquals(101, (long) tx3.get().row("r1").col(COUNT_COL).toLong());
+
+    conn.tableOperations().compact(table, null, null, true, true);
+    Assert.assertEquals(101, (long) tx3.get().row("r1").col(COUNT_COL).toLong());
+    tx3.done();
+
+    Assert.assertEquals(101, getCount("r1"));
+  }
+
+  @Test
+  public void testCompactWithPendingDelta() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r2").col(COUNT_COL).set(10);
+    tx1.done();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r2").col(COUNT_COL).add(1);
+    tx2.done();
+
+    // r1 is the primary, the delta in r2 is committed but its lock is not rolled forward yet
+    TransactorNode t2 = new TransactorNode(env);
+    TestTransaction tx3 = new TestTransaction(env, t2);
+    tx3.mutate().row("r1").col(COUNT_COL).add(5);
+    tx3.mutate().row("r2").col(COUNT_COL).add(5);
+    CommitData cd = tx3.createCommitData();
+    Assert.assertTrue(tx3.preCommit(cd));
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx3.commitPrimaryColumn(cd, commitTs));
+
+    // a newer delta is added to the pending one
+    TestTransaction tx4 = new TestTransaction(env);
+    tx4.mutate().row("r2").col(COUNT_COL).add(100);
+    tx4.done();
+
+    t2.close();
+
+    TestTransaction tx5 = new TestTransaction(env);
+    env.getSharedResources().getTimestampTracker().updateZkNode();
+
+    conn.tableOperations().flush(table, null, null, true);
+    conn.tableOperations().compact(table, null, null, true, true);
+
+    // rolling the pending delta forward finds its data
+    Assert.assertEquals(5, (long) tx5.get().row("r1").col(COUNT_COL).toLong());
+    Assert.assertEquals(116, (long) tx5.get().row("r2").col(COUNT_COL).toLong());
+    tx5.done();
+
+    conn.tableOperations().compact(table, null, null, true, true);
+    Assert.assertEquals(116, getCount("r2"));
+  }
+
+  @Test
+  public void testAddToNonLong() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set("abc");
+    tx1.done();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r1").col(COUNT_COL).add(1);
+    try {
+      tx2.done();
+      Assert.fail();
+    } catch (IllegalArgumentException e) {}
+
+    // r0 is the primary, the rejected delta in r1 rolls back its lock
+    TestTransaction tx3 = new TestTransaction(env);
+    tx3.mutate().row("r0").col(COUNT_COL).add(1);
+    tx3.mutate().row("r1").col(COUNT_COL).add(1);
+    try {
+      tx3.done();
+      Assert.fail();
+    } catch (IllegalArgumentException e) {}
+
+    TestTransaction tx4 = new TestTransaction(env);
+    tx4.mutate().row("r0").col(COUNT_COL).add(2);
+    tx4.done();
+
+    TestTransaction tx5 = new TestTransaction(env);
+    Assert.assertEquals("abc", tx5.get().row("r1").col(COUNT_COL).toString());
+    Assert.assertEquals(2, (long) tx5.get().row("r0").col(COUNT_COL).toLong());
+    tx5.close();
+  }
+}
@@ -23,6 +23,7 @@ import java.util.Random;
 
 import io.fluo.accumulo.util.ColumnConstants;
 import io.fluo.accumulo.util.LongUtil;
+import io.fluo.accumulo.values.DelLockValue;
 import io.fluo.api.client.TransactionBase;
 import io.fluo.api.config.ObserverConfiguration;
 import io.fluo.api.data.Bytes;
@@ -38,8 +39,10 @@ import io.fluo.core.exceptions.StaleScanException;
 import io.fluo.core.impl.TransactionImpl.CommitData;
 import io.fluo.core.oracle.OracleClient;
 import io.fluo.core.util.ByteUtil;
+import io.fluo.core.util.Flutation;
 import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.Authorizations;
 import org.junit.Assert;
@@ -548,4 +551,120 @@ public class FailureIT extends TestBaseImpl {
     Assert.assertNull(tx4.get().row("joe").col(balanceCol).toString());
     Assert.assertEquals("61", tx4.get().row("jill").col(balanceCol).toString());
   }
+
+  @Test
+  public void testLazyRollback() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    for (int r = 0; r < 10; r++)
+      tx1.mutate().row(r + "").col(balanceCol).set("0" + r);
+    tx1.done();
+
+    config.setTransactionLazyRollback(true);
+    try (Environment lazyEnv = new Environment(config); TransactorNode t2 = new TransactorNode(lazyEnv)) {
+      TestTransaction tx2 = new TestTransaction(lazyEnv, t2);
+      for (int r = 0; r < 10; r++)
+        tx2.mutate().row(r + "").col(balanceCol).set("1" + r);
+
+      CommitData cd = tx2.createCommitData();
+      Assert.assertTrue(tx2.preCommit(cd));
+
+      // simulate a lazy rollback that only wrote the primary before the process died, the primary is the first column
+      Flutation m = new Flutation(lazyEnv, Bytes.wrap("0"));
+      m.put(balanceCol, ColumnConstants.DEL_LOCK_PREFIX | tx2.getStartTs(), DelLockValue.encode(tx2.getStartTs(), true, true));
+      lazyEnv.getSharedResources().getBatchWriter().writeMutation(m);
+
+      // garbage collection must keep the primary rollback until the secondaries are rolled back
+      conn.tableOperations().flush(table, null, null, true);
+      Assert.assertEquals(1, countDelLocks("0", tx2.getStartTs()));
+
+      // the transactor is alive, but the secondary locks can be rolled back because the primary was. A reader that does not roll back lazily
+      // itself finds them too.
+      TestTransaction tx3 = new TestTransaction(env);
+      for (int r = 0; r < 10; r++)
+        Assert.assertEquals("0" + r, tx3.get().row(r + "").col(balanceCol).toString());
+      Assert.assertEquals(9, tx3.getStats().getAbandonedLocks());
+      Assert.assertEquals(0, tx3.getStats().getDeadLocks());
+      Assert.assertEquals(0, tx3.getStats().getTimedOutLocks());
+      tx3.done();
+
+      // a transaction that collides rolls back lazily
+      TestTransaction tx4 = new TestTransaction(lazyEnv);
+      TestTransaction tx5 = new TestTransaction(lazyEnv);
+      for (int r = 0; r < 10; r++)
+        tx4.mutate().row(r + "").col(balanceCol).set("4" + r);
+      tx5.mutate().row("9").col(balanceCol).set("59");
+      tx5.done();
+      try {
+        tx4.done();
+        Assert.fail();
+      } catch (CommitException ce) {}
+
+      TestTransaction tx6 = new TestTransaction(lazyEnv);
+      for (int r = 0; r < 9; r++)
+        Assert.assertEquals("0" + r, tx6.get().row(r + "").col(balanceCol).toString());
+      Assert.assertEquals("59", tx6.get().row("9").col(balanceCol).toString());
+      tx6.done();
+    }
+  }
+
+  @Test
+  public void testAsyncCommit() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    for (int r = 0; r < 10; r++)
+      tx1.mutate().row(r + "").col(balanceCol).set("0" + r);
+    tx1.done();
+
+    config.setTransactionAsyncCommit(true);
+    try (Environment asyncEnv = new Environment(config); TransactorNode t2 = new TransactorNode(asyncEnv)) {
+      TestTransaction tx2 = new TestTransaction(asyncEnv, t2);
+      for (int r = 0; r < 10; r++)
+        tx2.mutate().row(r + "").col(balanceCol).set("1" + r);
+
+      // commit the primary, but not the secondaries as if they were still queued
+      CommitData cd = tx2.createCommitData();
+      Assert.assertTrue(tx2.preCommit(cd));
+      long commitTs = OracleClient.getInstance(asyncEnv).getTimestamp();
+      Assert.assertTrue(tx2.commitPrimaryColumn(cd, commitTs));
+
+      // the transactor is alive, but the secondary locks can be rolled forward because the primary was committed. A reader that does not commit
+      // asynchronously itself finds them too.
+      TestTransaction tx3 = new TestTransaction(env);
+      for (int r = 0; r < 10; r++)
+        Assert.assertEquals("1" + r, tx3.get().row(r + "").col(balanceCol).toString());
+      Assert.assertEquals(9, tx3.getStats().getAbandonedLocks());
+      Assert.assertEquals(0, tx3.getStats().getDeadLocks());
+      Assert.assertEquals(0, tx3.getStats().getTimedOutLocks());
+      tx3.done();
+
+      // commit returns before the secondaries are written
+      TestTransaction tx4 = new TestTransaction(asyncEnv);
+      for (int r = 0; r < 10; r++)
+        tx4.mutate().row(r + "").col(balanceCol).set("4" + r);
+      tx4.done();
+
+      TestTransaction tx5 = new TestTransaction(asyncEnv);
+      for (int r = 0; r < 10; r++)
+        Assert.assertEquals("4" + r, tx5.get().row(r + "").col(balanceCol).toString());
+      tx5.done();
+    }
+
+    // once the background writes are done, readers that do not commit asynchronously do not find locks
+    TestTransaction tx6 = new TestTransaction(env);
+    for (int r = 0; r < 10; r++)
+      Assert.assertEquals("4" + r, tx6.get().row(r + "").col(balanceCol).toString());
+    Assert.assertEquals(0, tx6.getStats().getLockWaitTime());
+    tx6.done();
+  }
+
+  private int countDelLocks(String row, long startTs) throws Exception {
+    Scanner scanner = conn.createScanner(table, Authorizations.EMPTY);
+    scanner.setRange(new Range(row));
+    int count = 0;
+    for (Entry<Key,Value> entry : scanner) {
+      long ts = entry.getKey().getTimestamp();
+      if ((ts & ColumnConstants.PREFIX_MASK) == ColumnConstants.DEL_LOCK_PREFIX && DelLockValue.getTimestamp(entry.getValue().get()) == startTs)
+        count++;
+    }
+    return count;
+  }
 }
@@ -16,6 +16,7 @@
 package io.fluo.core.impl;
 
 import java.util.HashSet;
+import java.util.Map.Entry;
 
 import io.fluo.api.client.FluoClient;
 import io.fluo.api.client.FluoFactory;
@@ -25,6 +26,7 @@ import io.fluo.api.config.ScannerConfiguration;
 import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
 import io.fluo.api.data.Span;
+import io.fluo.api.exceptions.AlreadySetException;
 import io.fluo.api.exceptions.CommitException;
 import io.fluo.api.iterator.ColumnIterator;
 import io.fluo.api.iterator.RowIterator;
@@ -439,4 +441,99 @@ public class FluoIT extends TestBaseImpl {
     Assert.assertEquals(expected, columns);
     
   }
+
+  @Test
+  public void testReadCache() throws Exception {
+    Column balCol = typeLayer.bc().fam("account").qual("balance").vis();
+    Column nameCol = typeLayer.bc().fam("account").qual("name").vis();
+
+    TestTransaction tx = new TestTransaction(env);
+    tx.mutate().row("bob").col(balCol).set(10);
+    tx.mutate().row("bob").col(nameCol).set("Bob");
+    tx.done();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    Assert.assertEquals(10, tx2.get().row("bob").col(balCol).toInteger(0));
+    Assert.assertEquals(1, tx2.getStats().getCacheMisses());
+
+    // a concurrent change should not be seen and repeated reads should not go to the table
+    TestTransaction tx3 = new TestTransaction(env);
+    tx3.mutate().row("bob").col(nameCol).set("Robert");
+    tx3.done();
+
+    Assert.assertEquals(10, tx2.get().row("bob").col(balCol).toInteger(0));
+    Assert.assertEquals(1, tx2.getStats().getCacheHits());
+
+    // reads should see the transaction's own writes
+    tx2.mutate().row("bob").col(balCol).set(20);
+    Assert.assertEquals(20, tx2.get().row("bob").col(balCol).toInteger(0));
+    tx2.mutate().row("joe").col(balCol).set(5);
+    Assert.assertEquals(5, tx2.get().row("joe").col(balCol).toInteger(0));
+    Assert.assertEquals(3, tx2.getStats().getCacheHits());
+    Assert.assertEquals(1, tx2.getStats().getCacheMisses());
+
+    tx2.mutate().row("joe").col(nameCol).delete();
+    Assert.assertNull(tx2.get().row("joe").col(nameCol).toString());
+    Assert.assertEquals(1, tx2.getStats().getCacheMisses());
+
+    // absent columns should be cached
+    Assert.assertNull(tx2.get().row("sue").col(balCol).toString());
+    Assert.assertNull(tx2.get().row("sue").col(balCol).toString());
+    Assert.assertEquals(2, tx2.getStats().getCacheMisses());
+    Assert.assertEquals(5, tx2.getStats().getCacheHits());
+    tx2.done();
+
+    TestTransaction tx4 = new TestTransaction(env);
+    Assert.assertEquals(20, tx4.get().row("bob").col(balCol).toInteger(0));
+    Assert.assertEquals(5, tx4.get().row("joe").col(balCol).toInteger(0));
+    Assert.assertEquals("Robert", tx4.get().row("bob").col(nameCol).toString());
+    tx4.done();
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    Column valCol = typeLayer.bc().fam("data").qual("val").vis();
+    Column countCol = typeLayer.bc().fam("data").qual("count").vis();
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++)
+      sb.append('x');
+    String bigVal = sb.toString();
+
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r00007").col(countCol).set(1);
+    tx1.done();
+
+    // buffer about 3MB of writes in a transaction that spills every 1MB
+    config.setTransactionSpillThreshold(1);
+    try (Environment spillEnv = new Environment(config)) {
+      TestTransaction tx2 = new TestTransaction(spillEnv);
+      Assert.assertEquals(1, tx2.get().row("r00007").col(countCol).toInteger(0));
+      for (int i = 0; i < 3000; i++)
+        tx2.mutate().row(String.format("r%05d", i)).col(valCol).set(bigVal + i);
+      tx2.mutate().row("r00007").col(countCol).set(2);
+
+      // writes that were spilled are still seen by the transaction
+      Assert.assertEquals(bigVal + 7, tx2.get().row("r00007").col(valCol).toString());
+      Assert.assertEquals(2, tx2.get().row("r00007").col(countCol).toInteger(0));
+      try {
+        tx2.mutate().row("r00008").col(valCol).set("8");
+        Assert.fail();
+      } catch (AlreadySetException e) {}
+
+      tx2.done();
+    }
+
+    TestTransaction tx3 = new TestTransaction(env);
+    int count = 0;
+    RowIterator iter = tx3.get(new ScannerConfiguration().fetchColumn(valCol.getFamily(), valCol.getQualifier()));
+    while (iter.hasNext()) {
+      Entry<Bytes,ColumnIterator> row = iter.next();
+      Assert.assertEquals(bigVal + Integer.parseInt(row.getKey().toString().substring(1)), row.getValue().next().getValue().toString());
+      count++;
+    }
+    Assert.assertEquals(3000, count);
+    Assert.assertEquals(2, tx3.get().row("r00007").col(countCol).toInteger(0));
+    tx3.done();
+  }
 }
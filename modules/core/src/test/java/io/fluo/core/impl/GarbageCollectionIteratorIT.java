@@ -19,6 +19,8 @@ import java.util.Iterator;
 import java.util.Map.Entry;
 
 import io.fluo.accumulo.util.ColumnConstants;
+import io.fluo.accumulo.util.LongUtil;
+import io.fluo.accumulo.util.OldestTimestampCache;
 import io.fluo.accumulo.util.ZookeeperConstants;
 import io.fluo.accumulo.util.ZookeeperUtil;
 import io.fluo.core.BankUtil;
@@ -91,6 +93,31 @@ public class GarbageCollectionIteratorIT extends TestBaseImpl {
     Logger.getLogger(ZookeeperUtil.class).setLevel(curLevel);
   }
 
+  @Test
+  public void testPublishedOldestTimestamp() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    BankUtil.setBalance(tx1, "bob", 10);
+    tx1.done();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    env.getSharedResources().getTimestampTracker().updateZkNode();
+
+    oserver.publishOldestTimestamp();
+
+    String oldestTsPath = ZookeeperConstants.transactorOldestTsPath(env.getZookeeperRoot());
+    Assert.assertEquals(tx2.getStartTs(), (long) LongUtil.fromByteArray(curator.getData().forPath(oldestTsPath)));
+    Assert.assertEquals(tx2.getStartTs(), OldestTimestampCache.getOldestTimestamp(env.getZookeepers(), env.getZookeeperRoot()));
+
+    // the cached value is used until it expires, even though a newer oldest timestamp was published
+    tx2.done();
+    TestTransaction tx3 = new TestTransaction(env);
+    env.getSharedResources().getTimestampTracker().updateZkNode();
+    oserver.publishOldestTimestamp();
+    Assert.assertEquals(tx3.getStartTs(), (long) LongUtil.fromByteArray(curator.getData().forPath(oldestTsPath)));
+    Assert.assertEquals(tx2.getStartTs(), OldestTimestampCache.getOldestTimestamp(env.getZookeepers(), env.getZookeeperRoot()));
+    tx3.done();
+  }
+
   /**
    * Verifies that older versions of data are newer than given timestamp
    *  
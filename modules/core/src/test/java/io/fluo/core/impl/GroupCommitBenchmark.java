@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fluo.api.data.Column;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures commits per second for an increasing number of concurrently committing transactions, along with how many conditional mutations
+ * {@link SharedConditionalWriter} was able to group into each write.
+ */
+public class GroupCommitBenchmark extends TestBaseImpl {
+
+  private static final long RUN_TIME_MS = 2000;
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  private static final Column COL1 = typeLayer.bc().fam("data").qual("c1").vis();
+  private static final Column COL2 = typeLayer.bc().fam("data").qual("c2").vis();
+
+  private void runCommitters(final int numThreads) throws Exception {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final CountDownLatch finishLatch = new CountDownLatch(numThreads);
+    final long endTime = System.currentTimeMillis() + 100 + RUN_TIME_MS;
+    final AtomicLong total = new AtomicLong(0);
+    final List<Exception> exceptions = new ArrayList<>();
+
+    for (int i = 0; i < numThreads; i++) {
+      final int thread = i;
+      Thread t = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+            long count = 0;
+            while (System.currentTimeMillis() < endTime) {
+              TestTransaction tx = new TestTransaction(env);
+              String row = String.format("%d-%d-%d", numThreads, thread, count);
+              tx.mutate().row(row).col(COL1).set("1");
+              tx.mutate().row(row + "b").col(COL2).set("2");
+              tx.done();
+              count++;
+            }
+            total.addAndGet(count);
+          } catch (Exception e) {
+            synchronized (exceptions) {
+              exceptions.add(e);
+            }
+          } finally {
+            finishLatch.countDown();
+          }
+        }
+      });
+      t.setDaemon(true);
+      t.start();
+    }
+
+    SharedConditionalWriter scw = env.getSharedResources().getConditionalWriter();
+    long batches = scw.getNumBatches();
+    long mutations = scw.getNumMutations();
+
+    startLatch.countDown();
+    finishLatch.await();
+
+    if (exceptions.size() > 0)
+      throw exceptions.get(0);
+
+    batches = scw.getNumBatches() - batches;
+    mutations = scw.getNumMutations() - mutations;
+
+    Assert.assertTrue(total.get() > 0);
+
+    System.out.printf("threads:%,d commits/sec:%,d mutations per write:%.2f%n", numThreads, total.get() * 1000 / RUN_TIME_MS, mutations
+        / (double) batches);
+  }
+
+  @Test
+  public void testConcurrentCommits() throws Exception {
+    for (int numThreads : new int[] {1, 8, 32, 128}) {
+      runCommitters(numThreads);
+    }
+  }
+}
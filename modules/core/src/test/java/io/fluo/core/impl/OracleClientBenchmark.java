@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.oracle.OracleClient;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures timestamp throughput and latency of {@link OracleClient} against an in-process oracle for an increasing number of concurrent callers.
+ */
+public class OracleClientBenchmark extends TestBaseImpl {
+
+  private static final long RUN_TIME_MS = 2000;
+
+  private static class Caller implements Runnable {
+    private final OracleClient client;
+    private final CountDownLatch startLatch;
+    private final CountDownLatch finishLatch;
+    private final long endTime;
+
+    long[] latencies = new long[1024];
+    int count = 0;
+    boolean ordered = true;
+    Exception exception;
+
+    Caller(OracleClient client, CountDownLatch startLatch, CountDownLatch finishLatch, long endTime) {
+      this.client = client;
+      this.startLatch = startLatch;
+      this.finishLatch = finishLatch;
+      this.endTime = endTime;
+    }
+
+    @Override
+    public void run() {
+      try {
+        startLatch.await();
+        long last = -1;
+        while (System.currentTimeMillis() < endTime) {
+          long t1 = System.nanoTime();
+          long ts = client.getTimestamp();
+          long t2 = System.nanoTime();
+
+          if (ts <= last)
+            ordered = false;
+          last = ts;
+
+          if (count == latencies.length)
+            latencies = Arrays.copyOf(latencies, count * 2);
+          latencies[count++] = t2 - t1;
+        }
+      } catch (Exception e) {
+        exception = e;
+      } finally {
+        finishLatch.countDown();
+      }
+    }
+  }
+
+  private void runCallers(OracleClient client, int numCallers) throws Exception {
+    CountDownLatch startLatch = new CountDownLatch(1);
+    CountDownLatch finishLatch = new CountDownLatch(numCallers);
+    long startTime = System.currentTimeMillis() + 100;
+
+    List<Caller> callers = new ArrayList<>();
+    for (int i = 0; i < numCallers; i++) {
+      Caller caller = new Caller(client, startLatch, finishLatch, startTime + RUN_TIME_MS);
+      callers.add(caller);
+      Thread thread = new Thread(caller);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    startLatch.countDown();
+    finishLatch.await();
+
+    int total = 0;
+    for (Caller caller : callers) {
+      if (caller.exception != null)
+        throw caller.exception;
+      assertTrue(caller.ordered);
+      total += caller.count;
+    }
+
+    long[] all = new long[total];
+    int pos = 0;
+    for (Caller caller : callers) {
+      System.arraycopy(caller.latencies, 0, all, pos, caller.count);
+      pos += caller.count;
+    }
+    Arrays.sort(all);
+
+    assertTrue(total > 0);
+
+    long p99 = all[(int) Math.min(all.length - 1, Math.ceil(all.length * .99) - 1)];
+
+    System.out.printf("callers:%,d timestamps/sec:%,d p50:%,dus p99:%,dus%n", numCallers, total * 1000 / RUN_TIME_MS, all[all.length / 2] / 1000,
+        p99 / 1000);
+  }
+
+  @Test
+  public void testConcurrentCallers() throws Exception {
+    OracleClient client = OracleClient.getInstance(env);
+
+    // warm up the connections
+    for (int i = 0; i < 100; i++)
+      client.getTimestamp();
+
+    for (int numCallers : new int[] {1, 10, 100, 1000}) {
+      runCallers(client, numCallers);
+    }
+  }
+}
@@ -194,20 +194,58 @@ public class OracleIT extends TestBaseImpl {
     oserver.stop();
     sleepWhileConnected(oserver);
 
-    assertEquals(1002, client.getTimestamp());
+    assertEquals(102, client.getTimestamp());
     assertTrue(client.getOracle().endsWith(Integer.toString(port2)));
 
     oserver2.stop();
     sleepWhileConnected(oserver2);
     oserver2.close();
 
-    assertEquals(2002, client.getTimestamp());
+    assertEquals(202, client.getTimestamp());
     assertTrue(client.getOracle().endsWith(Integer.toString(port3)));
 
     oserver3.stop();
     oserver3.close();
   }
 
+  /**
+   * A standby {@link OracleServer} that is already connected should take over well within a second of the leader stopping, and clients should switch
+   * to it without waiting to reconnect.
+   */
+  @Test
+  public void failover_timeMeasured() throws Exception {
+
+    sleepUntilConnected(oserver);
+
+    int port2 = PortUtils.getRandomFreePort();
+    TestOracle oserver2 = createExtraOracle(port2);
+    oserver2.start();
+    sleepUntilConnected(oserver2);
+
+    OracleClient client = OracleClient.getInstance(env);
+
+    long last = 0;
+    for (int i = 0; i < 1000; i++)
+      last = client.getTimestamp();
+
+    assertTrue(client.getOracle().endsWith(Integer.toString(env.getOraclePort())));
+
+    // give the client time to open its standby connections
+    Thread.sleep(1000);
+
+    long t1 = System.currentTimeMillis();
+    oserver.stop();
+    long ts = client.getTimestamp();
+    long failoverTime = System.currentTimeMillis() - t1;
+
+    assertTrue(ts > last);
+    assertTrue(client.getOracle().endsWith(Integer.toString(port2)));
+    assertTrue("failover took " + failoverTime + "ms", failoverTime < 1000);
+
+    oserver2.stop();
+    oserver2.close();
+  }
+
   /**
    * If an {@link OracleServer} goes away and comes back, the client should automatically reconnect
    * and start a new block of timestamps (making sure that no timestamp should ever go backwards).
@@ -239,7 +277,7 @@ public class OracleIT extends TestBaseImpl {
     oserver.start();
     sleepUntilConnected(oserver);
 
-    assertEquals(1002, client.getTimestamp());
+    assertEquals(102, client.getTimestamp());
 
     assertTrue(client.getOracle().endsWith(Integer.toString(env.getOraclePort())));
 
@@ -15,10 +15,19 @@
  */
 package io.fluo.core.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import io.fluo.api.data.Bytes;
 import io.fluo.api.data.Column;
+import io.fluo.api.data.RowColumn;
 import io.fluo.api.types.StringEncoder;
 import io.fluo.api.types.TypeLayer;
 import io.fluo.api.types.TypedSnapshotBase.Value;
@@ -26,6 +35,7 @@ import io.fluo.core.TestBaseImpl;
 import io.fluo.core.TestTransaction;
 import io.fluo.core.impl.TransactionImpl.CommitData;
 import io.fluo.core.oracle.OracleClient;
+import org.apache.hadoop.io.Text;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -91,6 +101,107 @@ public class ParallelScannerIT extends TestBaseImpl {
     
   }
 
+  @Test
+  public void testRowColumns() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+
+    tx1.mutate().row("bob9").fam("vote").qual("election1").set("N");
+    tx1.mutate().row("bob9").fam("vote").qual("election2").set("Y");
+    tx1.mutate().row("joe3").fam("vote").qual("election1").set("nay");
+    tx1.mutate().row("joe3").fam("vote").qual("election2").set("nay");
+    tx1.mutate().row("sue4").fam("vote").qual("election1").set("+1");
+
+    tx1.done();
+
+    // leave locks on two of the columns that are read below, these should be rolled forward
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("bob9").fam("vote").qual("election2").set("N");
+    tx2.mutate().row("joe3").fam("vote").qual("election1").set("yea");
+    CommitData cd2 = tx2.createCommitData();
+    Assert.assertTrue(tx2.preCommit(cd2));
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx2.commitPrimaryColumn(cd2, commitTs));
+
+    Column e1Col = typeLayer.bc().fam("vote").qual("election1").vis();
+    Column e2Col = typeLayer.bc().fam("vote").qual("election2").vis();
+
+    Map<Bytes,Set<Column>> rowColumns = new HashMap<>();
+    rowColumns.put(Bytes.wrap("bob9"), Collections.singleton(e2Col));
+    rowColumns.put(Bytes.wrap("joe3"), new HashSet<>(Arrays.asList(e1Col, e2Col)));
+    rowColumns.put(Bytes.wrap("sue4"), Collections.singleton(e2Col));
+
+    TestTransaction tx4 = new TestTransaction(env);
+    Map<String,Map<Column,Value>> votes = tx4.get().rowColumns(rowColumns).toStringMap();
+
+    Assert.assertEquals(2, votes.size());
+    Assert.assertEquals(1, votes.get("bob9").size());
+    Assert.assertEquals("N", votes.get("bob9").get(e2Col).toString());
+    Assert.assertEquals(2, votes.get("joe3").size());
+    Assert.assertEquals("yea", votes.get("joe3").get(e1Col).toString());
+    Assert.assertEquals("nay", votes.get("joe3").get(e2Col).toString());
+
+    RowColumn rc1 = new RowColumn(Bytes.wrap("bob9"), e1Col);
+    RowColumn rc2 = new RowColumn(Bytes.wrap("sue4"), e1Col);
+    RowColumn rc3 = new RowColumn(Bytes.wrap("eve2"), e1Col);
+
+    TestTransaction tx5 = new TestTransaction(env);
+    Map<RowColumn,Value> votes2 = tx5.get().rowColumns(Arrays.asList(rc1, rc2, rc3));
+
+    Assert.assertEquals(2, votes2.size());
+    Assert.assertEquals("N", votes2.get(rc1).toString());
+    Assert.assertEquals("+1", votes2.get(rc2).toString());
+    Assert.assertNull(votes2.get(rc3).toString());
+  }
+
+  @Test
+  public void testScanThreads() throws Exception {
+    TreeSet<Text> splits = new TreeSet<>();
+    for (String split : new String[] {"r05", "r10", "r15"})
+      splits.add(new Text(split));
+    conn.tableOperations().addSplits(table, splits);
+
+    Column e1Col = typeLayer.bc().fam("vote").qual("election1").vis();
+    Column e2Col = typeLayer.bc().fam("vote").qual("election2").vis();
+
+    List<String> rows = new ArrayList<>();
+    TestTransaction tx1 = new TestTransaction(env);
+    for (int i = 0; i < 20; i++) {
+      String row = String.format("r%02d", i);
+      rows.add(row);
+      tx1.mutate().row(row).col(e1Col).set(i);
+      tx1.mutate().row(row).col(e2Col).set(i);
+    }
+    tx1.done();
+
+    // leave locks on one column of rows in different tablets, only the locked columns are scanned again when they are rolled forward
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r03").col(e1Col).set(103);
+    tx2.mutate().row("r12").col(e2Col).set(112);
+    tx2.mutate().row("r17").col(e1Col).set(117);
+    CommitData cd2 = tx2.createCommitData();
+    Assert.assertTrue(tx2.preCommit(cd2));
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx2.commitPrimaryColumn(cd2, commitTs));
+
+    config.setScanThreads(4);
+    try (Environment threadsEnv = new Environment(config)) {
+      Assert.assertEquals(4, threadsEnv.getScanThreads());
+
+      TestTransaction tx3 = new TestTransaction(threadsEnv);
+      Map<String,Map<Column,Value>> votes = tx3.get().rowsString(rows).columns(e1Col, e2Col).toStringMap();
+
+      Assert.assertEquals(20, votes.size());
+      for (int i = 0; i < 20; i++) {
+        String row = String.format("r%02d", i);
+        int e1 = i == 3 || i == 17 ? 100 + i : i;
+        int e2 = i == 12 ? 100 + i : i;
+        Assert.assertEquals(e1, (int) votes.get(row).get(e1Col).toInteger());
+        Assert.assertEquals(e2, (int) votes.get(row).get(e2Col).toInteger());
+      }
+      tx3.done();
+    }
+  }
+
   @Test
   public void testParallelScanRecovery1() throws Exception {
     runParallelRecoveryTest(true);
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fluo.api.client.TransactionBase;
+import io.fluo.api.config.ObserverConfiguration;
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.api.observer.AbstractObserver;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.api.types.TypedTransactionBase;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests observers that declare prefetch columns
+ */
+public class PrefetchIT extends TestBaseImpl {
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  private static final Column OBSERVED_COL = typeLayer.bc().fam("attr").qual("lastupdate").vis();
+  private static final Column COUNT_COL = typeLayer.bc().fam("attr").qual("count").vis();
+  private static final Column NAME_COL = typeLayer.bc().fam("attr").qual("name").vis();
+  private static final Column SUMMARY_COL = typeLayer.bc().fam("attr").qual("summary").vis();
+
+  static final AtomicLong cacheHits = new AtomicLong(0);
+  static final AtomicLong cacheMisses = new AtomicLong(0);
+
+  @Override
+  protected List<ObserverConfiguration> getObservers() {
+    return Collections.singletonList(new ObserverConfiguration(SummaryObserver.class.getName()));
+  }
+
+  public static class SummaryObserver extends AbstractObserver {
+
+    @Override
+    public void process(TransactionBase tx, Bytes row, Column col) throws Exception {
+      TypedTransactionBase ttx = typeLayer.wrap(tx);
+      int count = ttx.get().row(row).col(COUNT_COL).toInteger(0);
+      String name = ttx.get().row(row).col(NAME_COL).toString();
+      ttx.mutate().row(row).col(SUMMARY_COL).set(name + ":" + (count + 1));
+
+      TxStats stats = ((TransactionImpl) tx).getStats();
+      cacheHits.addAndGet(stats.getCacheHits());
+      cacheMisses.addAndGet(stats.getCacheMisses());
+    }
+
+    @Override
+    public ObservedColumn getObservedColumn() {
+      Set<Column> prefetch = new HashSet<>();
+      prefetch.add(COUNT_COL);
+      prefetch.add(NAME_COL);
+      return new ObservedColumn(OBSERVED_COL, NotificationType.STRONG, prefetch);
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    int numRows = Worker.PREFETCH_BATCH_SIZE * 3 + 5;
+
+    TestTransaction tx1 = new TestTransaction(env);
+    for (int i = 0; i < numRows; i++) {
+      String row = String.format("r%04d", i);
+      tx1.mutate().row(row).col(COUNT_COL).set(i);
+      // every third row has no name, absent columns are not prefetched
+      if (i % 3 != 0)
+        tx1.mutate().row(row).col(NAME_COL).set("n" + i);
+      tx1.mutate().row(row).col(OBSERVED_COL).set("1");
+    }
+    tx1.done();
+
+    cacheHits.set(0);
+    cacheMisses.set(0);
+
+    runWorker();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    for (int i = 0; i < numRows; i++) {
+      String expected = (i % 3 != 0 ? "n" + i : "null") + ":" + (i + 1);
+      Assert.assertEquals(expected, tx2.get().row(String.format("r%04d", i)).col(SUMMARY_COL).toString());
+    }
+    tx2.done();
+
+    int absent = (numRows + 2) / 3;
+    Assert.assertEquals(numRows * 2 - absent, cacheHits.get());
+    Assert.assertEquals(absent, cacheMisses.get());
+  }
+
+  @Test
+  public void testPrefetchScanner() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COUNT_COL).set(1);
+    tx1.mutate().row("r1").col(NAME_COL).set("a");
+    tx1.mutate().row("r2").col(COUNT_COL).set(2);
+    tx1.done();
+
+    Map<Bytes,Set<Column>> rowCols = new HashMap<>();
+    rowCols.put(Bytes.wrap("r1"), new HashSet<>(Arrays.asList(COUNT_COL, NAME_COL)));
+    rowCols.put(Bytes.wrap("r2"), Collections.singleton(NAME_COL));
+
+    long ts1 = env.getSharedResources().getTimestampTracker().allocateTimestamp();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r1").col(COUNT_COL).set(3);
+    tx2.done();
+
+    long ts2 = env.getSharedResources().getTimestampTracker().allocateTimestamp();
+
+    // count changed between ts1 and ts2, so only the name is the same for both timestamps
+    Map<Bytes,Map<Column,Bytes>> prefetched = new PrefetchScanner(env, ts1, ts2).scan(rowCols);
+    Assert.assertEquals(1, prefetched.size());
+    Assert.assertEquals(Collections.singletonMap(NAME_COL, Bytes.wrap("a")), prefetched.get(Bytes.wrap("r1")));
+
+    prefetched = new PrefetchScanner(env, ts2, ts2).scan(rowCols);
+    Assert.assertEquals(1, prefetched.size());
+    Assert.assertEquals(Bytes.wrap("3"), prefetched.get(Bytes.wrap("r1")).get(COUNT_COL));
+    Assert.assertEquals(Bytes.wrap("a"), prefetched.get(Bytes.wrap("r1")).get(NAME_COL));
+
+    // a lock hides the column from the prefetch scan
+    TestTransaction tx3 = new TestTransaction(env);
+    tx3.mutate().row("r1").col(NAME_COL).set("b");
+    TransactionImpl.CommitData cd = tx3.createCommitData();
+    Assert.assertTrue(tx3.preCommit(cd));
+
+    long ts3 = env.getSharedResources().getTimestampTracker().allocateTimestamp();
+    prefetched = new PrefetchScanner(env, ts3, ts3).scan(rowCols);
+    Assert.assertEquals(Collections.singletonMap(COUNT_COL, Bytes.wrap("3")), prefetched.get(Bytes.wrap("r1")));
+
+    env.getSharedResources().getTimestampTracker().removeTimestamp(ts1);
+    env.getSharedResources().getTimestampTracker().removeTimestamp(ts2);
+    env.getSharedResources().getTimestampTracker().removeTimestamp(ts3);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.api.exceptions.CommitException;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import io.fluo.core.util.UtilWaitThread;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the work wasted by threads that increment the same counter, doing expensive work between reading and writing it. Optimistic transactions
+ * find out they collided when committing, after doing the work. Transactions that read the counter with getForUpdate fail before doing the work.
+ */
+public class ReadForUpdateBenchmark extends TestBaseImpl {
+
+  private static final int NUM_THREADS = 5;
+  private static final int INCREMENTS_PER_THREAD = 20;
+  private static final long WORK_MS = 20;
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  private static final Column COUNT_COL = typeLayer.bc().fam("stat").qual("count").vis();
+
+  private void measure(final String row, final boolean forUpdate) throws Exception {
+    final AtomicLong work = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          Random rand = new Random();
+          try {
+            for (int i = 0; i < INCREMENTS_PER_THREAD; i++) {
+              while (true) {
+                TestTransaction tx = new TestTransaction(env);
+                try {
+                  long count;
+                  if (forUpdate) {
+                    Bytes val = tx.getForUpdate(Bytes.wrap(row), COUNT_COL);
+                    count = val == null ? 0 : Long.parseLong(val.toString());
+                  } else {
+                    count = tx.get().row(row).col(COUNT_COL).toLong(0);
+                  }
+
+                  UtilWaitThread.sleep(WORK_MS);
+                  work.incrementAndGet();
+
+                  tx.mutate().row(row).col(COUNT_COL).set(count + 1);
+                  tx.commit();
+                  break;
+                } catch (CommitException ce) {
+                  failures.incrementAndGet();
+                  UtilWaitThread.sleep(rand.nextInt((int) WORK_MS));
+                } finally {
+                  tx.close();
+                }
+              }
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+
+    long t1 = System.currentTimeMillis();
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+    long t2 = System.currentTimeMillis();
+
+    long increments = NUM_THREADS * INCREMENTS_PER_THREAD;
+    System.out.printf("%s increments:%,d work:%,d wasted work:%,d failures:%,d time:%,dms%n", forUpdate ? "read for update" : "optimistic", increments,
+        work.get(), work.get() - increments, failures.get(), t2 - t1);
+
+    TestTransaction tx = new TestTransaction(env);
+    Assert.assertEquals(increments, tx.get().row(row).col(COUNT_COL).toLong(0));
+    tx.done();
+
+    if (forUpdate)
+      Assert.assertEquals(increments, work.get());
+  }
+
+  @Test
+  public void testContendedCounter() throws Exception {
+    measure("optimistic", false);
+    measure("forUpdate", true);
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.api.exceptions.CommitException;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import io.fluo.core.impl.TransactionImpl.CommitData;
+import io.fluo.core.oracle.OracleClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests transactions that lock columns when reading them with getForUpdate
+ */
+public class ReadForUpdateIT extends TestBaseImpl {
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  static final Column BALANCE_COL = typeLayer.bc().fam("account").qual("balance").vis();
+
+  private static final Bytes R1 = Bytes.wrap("r1");
+  private static final Bytes R2 = Bytes.wrap("r2");
+  private static final Bytes R3 = Bytes.wrap("r3");
+  private static final Bytes R4 = Bytes.wrap("r4");
+
+  private void setBalance(String row, int balance) throws Exception {
+    TestTransaction tx = new TestTransaction(env);
+    tx.mutate().row(row).col(BALANCE_COL).set(balance);
+    tx.done();
+  }
+
+  private String getBalance(String row) throws Exception {
+    TestTransaction tx = new TestTransaction(env);
+    try {
+      return tx.get().row(row).col(BALANCE_COL).toString();
+    } finally {
+      tx.close();
+    }
+  }
+
+  @Test
+  public void testFailFast() throws Exception {
+    setBalance("r1", 10);
+
+    TestTransaction tx1 = new TestTransaction(env);
+    TestTransaction tx2 = new TestTransaction(env);
+
+    Assert.assertEquals(Bytes.wrap("10"), tx1.getForUpdate(R1, BALANCE_COL));
+
+    // a reader does not need to wait on a lock taken before it started
+    long t1 = System.currentTimeMillis();
+    try {
+      tx2.getForUpdate(R1, BALANCE_COL);
+      Assert.fail();
+    } catch (CommitException ce) {}
+    Assert.assertTrue(System.currentTimeMillis() - t1 < env.getRollbackTime());
+    Assert.assertEquals(1, tx2.getStats().getCollisions());
+    tx2.close();
+
+    // reads of the locked column by the transaction holding the lock do not wait on it
+    Assert.assertEquals("10", tx1.get().row("r1").col(BALANCE_COL).toString());
+    tx1.mutate().row("r1").col(BALANCE_COL).set(11);
+    tx1.done();
+
+    Assert.assertEquals("11", getBalance("r1"));
+  }
+
+  @Test
+  public void testCollidesWithWrite() throws Exception {
+    setBalance("r1", 10);
+
+    TestTransaction tx1 = new TestTransaction(env);
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r1").col(BALANCE_COL).set(20);
+    tx2.done();
+
+    // a column written after the transaction started can not be locked
+    try {
+      tx1.getForUpdate(R1, BALANCE_COL);
+      Assert.fail();
+    } catch (CommitException ce) {}
+    tx1.close();
+
+    // an optimistic transaction started while a column is locked collides with the transaction holding the lock
+    TestTransaction tx3 = new TestTransaction(env);
+    Assert.assertEquals(Bytes.wrap("20"), tx3.getForUpdate(R1, BALANCE_COL));
+    TestTransaction tx4 = new TestTransaction(env);
+    tx4.mutate().row("r2").col(BALANCE_COL).set(5);
+    tx4.mutate().row("r1").col(BALANCE_COL).set(30);
+
+    tx3.mutate().row("r1").col(BALANCE_COL).set(21);
+    tx3.done();
+
+    try {
+      tx4.done();
+      Assert.fail();
+    } catch (CommitException ce) {}
+
+    Assert.assertEquals("21", getBalance("r1"));
+    Assert.assertNull(getBalance("r2"));
+  }
+
+  @Test
+  public void testMultipleColumns() throws Exception {
+    setBalance("r1", 10);
+    setBalance("r2", 20);
+
+    TestTransaction tx1 = new TestTransaction(env);
+    Assert.assertEquals(Bytes.wrap("10"), tx1.getForUpdate(R1, BALANCE_COL));
+    Assert.assertEquals(Bytes.wrap("20"), tx1.getForUpdate(R2, BALANCE_COL));
+    // locking a column again does nothing
+    Assert.assertEquals(Bytes.wrap("20"), tx1.getForUpdate(R2, BALANCE_COL));
+
+    // only one of the locked columns is changed
+    tx1.mutate().row("r2").col(BALANCE_COL).set(15);
+    tx1.mutate().row("r3").col(BALANCE_COL).set(5);
+    tx1.done();
+
+    Assert.assertEquals("10", getBalance("r1"));
+    Assert.assertEquals("15", getBalance("r2"));
+    Assert.assertEquals("5", getBalance("r3"));
+
+    // the locks were released by the commit
+    TestTransaction tx2 = new TestTransaction(env);
+    Assert.assertEquals(Bytes.wrap("10"), tx2.getForUpdate(R1, BALANCE_COL));
+    Assert.assertEquals(Bytes.wrap("15"), tx2.getForUpdate(R2, BALANCE_COL));
+    tx2.done();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    setBalance("r1", 10);
+
+    TestTransaction tx1 = new TestTransaction(env);
+    Assert.assertEquals(Bytes.wrap("10"), tx1.getForUpdate(R1, BALANCE_COL));
+    tx1.getForUpdate(R2, BALANCE_COL);
+    tx1.mutate().row("r1").col(BALANCE_COL).set(11);
+
+    // closing without committing rolls back the locks
+    tx1.close();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    Assert.assertEquals(Bytes.wrap("10"), tx2.getForUpdate(R1, BALANCE_COL));
+    Assert.assertNull(tx2.getForUpdate(R2, BALANCE_COL));
+    tx2.mutate().row("r2").col(BALANCE_COL).set(1);
+    tx2.done();
+
+    Assert.assertEquals("10", getBalance("r1"));
+    Assert.assertEquals("1", getBalance("r2"));
+  }
+
+  @Test
+  public void testDeadTransactor() throws Exception {
+    setBalance("r1", 10);
+
+    TransactorNode t1 = new TransactorNode(env);
+    TestTransaction tx1 = new TestTransaction(env, t1);
+    tx1.getForUpdate(R1, BALANCE_COL);
+    tx1.getForUpdate(R2, BALANCE_COL);
+    t1.close();
+
+    // the locks of a dead transactor are rolled back instead of failing
+    TestTransaction tx2 = new TestTransaction(env);
+    Assert.assertNull(tx2.getForUpdate(R2, BALANCE_COL));
+    Assert.assertEquals(Bytes.wrap("10"), tx2.getForUpdate(R1, BALANCE_COL));
+    tx2.mutate().row("r1").col(BALANCE_COL).set(9);
+    tx2.done();
+
+    Assert.assertEquals("9", getBalance("r1"));
+  }
+
+  @Test
+  public void testRollforwardAfterCompaction() throws Exception {
+    setBalance("r1", 10);
+    setBalance("r2", 20);
+    setBalance("r3", 30);
+
+    TransactorNode t2 = new TransactorNode(env);
+    TestTransaction tx2 = new TestTransaction(env, t2);
+    Assert.assertEquals(Bytes.wrap("10"), tx2.getForUpdate(R1, BALANCE_COL));
+    Assert.assertEquals(Bytes.wrap("20"), tx2.getForUpdate(R2, BALANCE_COL));
+    Assert.assertEquals(Bytes.wrap("30"), tx2.getForUpdate(R3, BALANCE_COL));
+    Assert.assertNull(tx2.getForUpdate(R4, BALANCE_COL));
+
+    // r3 and r4 are locked but not changed
+    tx2.mutate().row("r1").col(BALANCE_COL).set(9);
+    tx2.mutate().row("r2").col(BALANCE_COL).set(21);
+
+    CommitData cd = tx2.createCommitData();
+    Assert.assertTrue(tx2.preCommit(cd));
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx2.commitPrimaryColumn(cd, commitTs));
+
+    // the secondary locks are left for another transaction to roll forward, after a compaction that keeps only one entry per key
+    t2.close();
+    conn.tableOperations().compact(table, null, null, true, true);
+
+    Assert.assertEquals("9", getBalance("r1"));
+    Assert.assertEquals("21", getBalance("r2"));
+    Assert.assertEquals("30", getBalance("r3"));
+    Assert.assertNull(getBalance("r4"));
+
+    // the rolled forward locks no longer block other transactions
+    TestTransaction tx3 = new TestTransaction(env);
+    Assert.assertEquals(Bytes.wrap("21"), tx3.getForUpdate(R2, BALANCE_COL));
+    Assert.assertEquals(Bytes.wrap("30"), tx3.getForUpdate(R3, BALANCE_COL));
+    Assert.assertNull(tx3.getForUpdate(R4, BALANCE_COL));
+    tx3.mutate().row("r4").col(BALANCE_COL).set(40);
+    tx3.done();
+
+    Assert.assertEquals("40", getBalance("r4"));
+  }
+}
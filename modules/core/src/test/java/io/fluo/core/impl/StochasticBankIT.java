@@ -55,6 +55,7 @@ public class StochasticBankIT extends TestBaseImpl {
   
   static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
   private static AtomicInteger txCount = new AtomicInteger();
+  private static AtomicInteger collisions = new AtomicInteger();
 
   @SuppressWarnings("resource")
   @Test
@@ -79,9 +80,17 @@ public class StochasticBankIT extends TestBaseImpl {
     Random rand = new Random();
     Environment tenv = env;
 
+    boolean lazyRollback = rand.nextBoolean();
+    if (lazyRollback) {
+      config.setTransactionLazyRollback(true);
+      tenv = new Environment(config);
+    }
+    Environment lazyEnv = tenv;
+
     if (rand.nextBoolean())
-      tenv = new FaultyConfig(env, (rand.nextDouble() * .4) + .1, .50);
+      tenv = new FaultyConfig(tenv, (rand.nextDouble() * .4) + .1, .50);
 
+    long t1 = System.currentTimeMillis();
     List<Thread> threads = startTransfers(tenv, numAccounts, 20, runFlag);
     
     runVerifier(env, numAccounts, 100);
@@ -91,11 +100,16 @@ public class StochasticBankIT extends TestBaseImpl {
     for (Thread thread : threads) {
       thread.join();
     }
+    long t2 = System.currentTimeMillis();
     
-    System.out.println("txCount : " + txCount.get());
+    System.out.printf("lazyRollback : %s  txCount : %,d  rate : %,6.2f  collisions : %,d\n", lazyRollback, txCount.get(),
+        txCount.get() / ((t2 - t1) / 1000.0), collisions.get());
     Assert.assertTrue("txCount : " + txCount.get(), txCount.get() > 0);
     
     runVerifier(env, numAccounts, 1);
+
+    if (lazyRollback)
+      lazyEnv.close();
   }
 
   private static Column balanceCol = typeLayer.bc().fam("data").qual("balance").vis();
@@ -167,6 +181,7 @@ public class StochasticBankIT extends TestBaseImpl {
         } catch (StaleScanException sse) {
           // retry
         } catch (CommitException ce) {
+          collisions.incrementAndGet();
           // retry
         }
       }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fluo.core.TestBaseImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how active timestamp tracking scales with the number of threads. Compares {@link ActiveTimestamps} to a synchronized tree set, which
+ * is what {@link TimestampTracker} used previously, and measures {@link TimestampTracker} with a real oracle.
+ */
+public class TimestampTrackerBenchmark extends TestBaseImpl {
+
+  private static final long RUN_TIME_MS = 1000;
+  private static final int[] THREADS = new int[] {1, 4, 16, 64, 256};
+
+  private interface Op {
+    void run(long i) throws Exception;
+  }
+
+  private long runThreads(int numThreads, final Op op) throws Exception {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final CountDownLatch finishLatch = new CountDownLatch(numThreads);
+    final long endTime = System.currentTimeMillis() + 100 + RUN_TIME_MS;
+    final AtomicLong total = new AtomicLong(0);
+    final List<Exception> exceptions = new ArrayList<>();
+
+    for (int i = 0; i < numThreads; i++) {
+      final long seed = i;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+            long count = 0;
+            long next = seed << 32;
+            while (System.currentTimeMillis() < endTime) {
+              for (int j = 0; j < 100; j++)
+                op.run(next++);
+              count += 100;
+            }
+            total.addAndGet(count);
+          } catch (Exception e) {
+            synchronized (exceptions) {
+              exceptions.add(e);
+            }
+          } finally {
+            finishLatch.countDown();
+          }
+        }
+      });
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    startLatch.countDown();
+    finishLatch.await();
+
+    if (exceptions.size() > 0)
+      throw exceptions.get(0);
+
+    return total.get() * 1000 / RUN_TIME_MS;
+  }
+
+  @Test
+  public void testActiveTimestamps() throws Exception {
+    final ActiveTimestamps active = new ActiveTimestamps();
+    final TreeSet<Long> treeSet = new TreeSet<>();
+
+    for (int numThreads : THREADS) {
+      long striped = runThreads(numThreads, new Op() {
+        @Override
+        public void run(long ts) {
+          int stripe = active.getPendingStripe();
+          long placeHolder = active.addPending(stripe, 0);
+          active.activate(stripe, placeHolder, ts);
+          assertTrue(active.remove(ts));
+        }
+      });
+
+      long synced = runThreads(numThreads, new Op() {
+        @Override
+        public void run(long ts) {
+          synchronized (treeSet) {
+            treeSet.add(ts);
+          }
+          synchronized (treeSet) {
+            assertTrue(treeSet.remove(ts));
+          }
+        }
+      });
+
+      System.out.printf("threads:%,d striped ops/sec:%,d synchronized tree set ops/sec:%,d%n", numThreads, striped, synced);
+    }
+
+    active.lockAll();
+    try {
+      assertTrue(active.size() == 0);
+    } finally {
+      active.unlockAll();
+    }
+  }
+
+  @Test
+  public void testTracker() throws Exception {
+    final TimestampTracker tracker = new TimestampTracker(env, new TransactorID(env));
+
+    // warm up the oracle connections
+    for (int i = 0; i < 100; i++)
+      tracker.removeTimestamp(tracker.allocateTimestamp());
+
+    for (int numThreads : THREADS) {
+      long rate = runThreads(numThreads, new Op() {
+        @Override
+        public void run(long i) {
+          tracker.removeTimestamp(tracker.allocateTimestamp());
+        }
+      });
+
+      System.out.printf("threads:%,d tracker allocations/sec:%,d%n", numThreads, rate);
+    }
+
+    assertTrue(tracker.isEmpty());
+    tracker.close();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.api.types.StringEncoder;
+import io.fluo.api.types.TypeLayer;
+import io.fluo.core.TestBaseImpl;
+import io.fluo.core.TestTransaction;
+import io.fluo.core.impl.TransactionImpl.CommitData;
+import io.fluo.core.oracle.OracleClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests looking up the status of many transactions with one scan
+ */
+public class TxInfoIT extends TestBaseImpl {
+
+  static TypeLayer typeLayer = new TypeLayer(new StringEncoder());
+
+  static final Column COL = typeLayer.bc().fam("f").qual("q").vis();
+
+  @Test
+  public void testBatchLookup() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").col(COL).set("1");
+    CommitData cd1 = tx1.createCommitData();
+    Assert.assertTrue(tx1.preCommit(cd1));
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx1.commitPrimaryColumn(cd1, commitTs));
+    tx1.finishCommit(cd1, commitTs);
+
+    TestTransaction tx2 = new TestTransaction(env);
+    tx2.mutate().row("r2").col(COL).set("2");
+    Assert.assertTrue(tx2.preCommit(tx2.createCommitData()));
+
+    // locks the same primary column that tx1 committed
+    TestTransaction tx3 = new TestTransaction(env);
+    tx3.mutate().row("r1").col(COL).set("3");
+    Assert.assertTrue(tx3.preCommit(tx3.createCommitData()));
+
+    PrimaryRowColumn prc1 = new PrimaryRowColumn(Bytes.wrap("r1"), COL, tx1.getStartTs());
+    PrimaryRowColumn prc2 = new PrimaryRowColumn(Bytes.wrap("r2"), COL, tx2.getStartTs());
+    PrimaryRowColumn prc3 = new PrimaryRowColumn(Bytes.wrap("r1"), COL, tx3.getStartTs());
+    // no transaction started at this time
+    PrimaryRowColumn prc4 = new PrimaryRowColumn(Bytes.wrap("r4"), COL, tx2.getStartTs());
+    List<PrimaryRowColumn> prcs = Arrays.asList(prc1, prc2, prc3, prc4);
+
+    Map<PrimaryRowColumn,TxInfo> infos = TxInfo.getTransactionInfo(env, prcs);
+
+    Assert.assertEquals(4, infos.size());
+    Assert.assertEquals(TxStatus.COMMITTED, infos.get(prc1).status);
+    Assert.assertEquals(commitTs, infos.get(prc1).commitTs);
+    Assert.assertEquals(TxStatus.LOCKED, infos.get(prc2).status);
+    Assert.assertEquals(TxStatus.LOCKED, infos.get(prc3).status);
+    Assert.assertEquals(TxStatus.UNKNOWN, infos.get(prc4).status);
+
+    // the same as looking up each transaction on its own
+    for (PrimaryRowColumn prc : prcs) {
+      TxInfo txInfo = TxInfo.getTransactionInfo(env, prc.prow, prc.pcol, prc.startTs);
+      Assert.assertEquals(txInfo.status, infos.get(prc).status);
+      Assert.assertEquals(txInfo.commitTs, infos.get(prc).commitTs);
+      Assert.assertArrayEquals(txInfo.lockValue, infos.get(prc).lockValue);
+    }
+
+    // committed transactions are cached
+    Map<PrimaryRowColumn,TxInfo> cached = env.getSharedResources().getTxInfoCache().getTransactionInfo(prcs);
+    Assert.assertEquals(TxStatus.COMMITTED, cached.get(prc1).status);
+    Assert.assertEquals(TxStatus.LOCKED, cached.get(prc2).status);
+  }
+}
@@ -15,10 +15,13 @@
  */
 package io.fluo.core.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
 
+import io.fluo.accumulo.util.ColumnConstants;
 import io.fluo.api.client.TransactionBase;
 import io.fluo.api.config.ObserverConfiguration;
 import io.fluo.api.config.ScannerConfiguration;
@@ -35,6 +38,11 @@ import io.fluo.core.TestBaseImpl;
 import io.fluo.core.TestTransaction;
 import io.fluo.core.impl.TransactionImpl.CommitData;
 import io.fluo.core.oracle.OracleClient;
+import io.fluo.core.util.ByteUtil;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -141,6 +149,45 @@ public class WeakNotificationIT extends TestBaseImpl {
     runWorker();
   }
 
+  @Test
+  public void testNotificationsWrittenWithCommit() throws Exception {
+    TestTransaction tx1 = new TestTransaction(env);
+    tx1.mutate().row("r1").fam("stats").qual("af89").set(5);
+    tx1.mutate().row("r2").fam("stats").qual("af89").set(7);
+    tx1.mutate().row("r1").fam("stat").qual("check").weaklyNotify();
+    tx1.mutate().row("r2").fam("stat").qual("check").weaklyNotify();
+    tx1.mutate().row("r3").fam("stat").qual("check").weaklyNotify();
+    CommitData cd = tx1.createCommitData();
+    Assert.assertTrue(tx1.preCommit(cd));
+
+    // no observer can run before the transaction commits
+    Assert.assertEquals(Collections.emptyList(), getNotifiedRows());
+
+    // r1 is the primary row, its notification is written when the primary column is committed
+    long commitTs = OracleClient.getInstance(env).getTimestamp();
+    Assert.assertTrue(tx1.commitPrimaryColumn(cd, commitTs));
+    Assert.assertEquals(Arrays.asList("r1"), getNotifiedRows());
+
+    // the others are written with the commits of their rows, r3 only has a notification
+    tx1.finishCommit(cd, commitTs);
+    Assert.assertEquals(Arrays.asList("r1", "r2", "r3"), getNotifiedRows());
+
+    runWorker();
+
+    TestTransaction tx2 = new TestTransaction(env);
+    Assert.assertEquals(5, tx2.get().row("r1").fam("stat").qual("count").toInteger(0));
+    Assert.assertEquals(7, tx2.get().row("r2").fam("stat").qual("count").toInteger(0));
+  }
+
+  private List<String> getNotifiedRows() throws Exception {
+    Scanner scanner = conn.createScanner(table, Authorizations.EMPTY);
+    scanner.fetchColumnFamily(ByteUtil.toText(ColumnConstants.NOTIFY_CF));
+    List<String> rows = new ArrayList<>();
+    for (Entry<Key,Value> entry : scanner)
+      rows.add(entry.getKey().getRow().toString());
+    return rows;
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testBadColumn() throws Exception {
     TestTransaction tx1 = new TestTransaction(env);
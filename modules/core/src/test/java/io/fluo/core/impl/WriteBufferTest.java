@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import io.fluo.api.data.Bytes;
+import io.fluo.api.data.Column;
+import io.fluo.core.impl.WriteBuffer.Cell;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for WriteBuffer class
+ */
+public class WriteBufferTest {
+
+  private static Column col(String fam, String qual) {
+    return new Column(Bytes.wrap(fam), Bytes.wrap(qual));
+  }
+
+  @Test
+  public void testPutAndGet() {
+    WriteBuffer wb = new WriteBuffer();
+
+    wb.put(Bytes.wrap("r2"), col("f", "q1"), Bytes.wrap("v1"));
+    wb.putDelete(Bytes.wrap("r1"), col("f", "q1"));
+    wb.putNoValue(Bytes.wrap("r1"), col("f", "q2"));
+
+    Assert.assertEquals(3, wb.size());
+    Assert.assertFalse(wb.isSingleRow());
+
+    Cell cell = wb.get(Bytes.wrap("r2"), col("f", "q1"));
+    Assert.assertTrue(cell.hasValue());
+    Assert.assertEquals(Bytes.wrap("v1"), cell.getValue());
+    Assert.assertEquals(Bytes.wrap("r2"), cell.getRow());
+    Assert.assertEquals(col("f", "q1"), cell.getColumn());
+
+    cell = wb.get(Bytes.wrap("r1"), col("f", "q1"));
+    Assert.assertTrue(cell.isDelete());
+    Assert.assertTrue(cell.isSet());
+    Assert.assertFalse(cell.hasValue());
+
+    Assert.assertFalse(wb.get(Bytes.wrap("r1"), col("f", "q2")).isSet());
+
+    Assert.assertNull(wb.get(Bytes.wrap("r1"), col("f", "q3")));
+    Assert.assertNull(wb.get(Bytes.wrap("r3"), col("f", "q1")));
+
+    // a value replaces no value, putting no value again does not remove the value
+    wb.put(Bytes.wrap("r1"), col("f", "q2"), Bytes.wrap("v2"));
+    wb.putNoValue(Bytes.wrap("r1"), col("f", "q2"));
+    Assert.assertEquals(3, wb.size());
+    Assert.assertEquals(Bytes.wrap("v2"), wb.get(Bytes.wrap("r1"), col("f", "q2")).getValue());
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList(col("f", "q1"), col("f", "q2"))), wb.getColumns(Bytes.wrap("r1")));
+    Assert.assertTrue(wb.containsRow(Bytes.wrap("r2")));
+    Assert.assertFalse(wb.containsRow(Bytes.wrap("r3")));
+  }
+
+  private static void fill(WriteBuffer wb, List<String> expected) {
+    // enough cells to grow the index a few times and fill more than one slab
+    for (int r = 999; r >= 0; r--) {
+      for (int q = 0; q < 3; q++) {
+        String row = String.format("r%04d", r);
+        wb.put(Bytes.wrap(row), col("f", "q" + q), Bytes.wrap(new byte[100]));
+        expected.add(row + ":q" + q);
+      }
+    }
+    Collections.sort(expected);
+  }
+
+  private static void checkSorted(WriteBuffer wb, List<String> expected) {
+    List<String> actual = new ArrayList<>();
+    Iterator<Cell> iter = wb.iterator();
+    while (iter.hasNext()) {
+      Cell cell = iter.next();
+      actual.add(cell.getRow().toString() + ":" + cell.getColumn().getQualifier());
+    }
+    Assert.assertEquals(expected, actual);
+
+    int rows = 0;
+    for (List<Cell> cells : wb.rows()) {
+      Assert.assertEquals(3, cells.size());
+      rows++;
+    }
+    Assert.assertEquals(1000, rows);
+  }
+
+  @Test
+  public void testSorted() {
+    WriteBuffer wb = new WriteBuffer();
+    List<String> expected = new ArrayList<>();
+    fill(wb, expected);
+
+    Assert.assertTrue(wb.getBytesUsed() > WriteBuffer.SLAB_SIZE);
+    Assert.assertEquals(3000, wb.size());
+    checkSorted(wb, expected);
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"));
+    try (WriteBuffer wb = new WriteBuffer(50000, dir)) {
+      wb.putNoValue(Bytes.wrap("r0500"), col("f", "q1"));
+
+      List<String> expected = new ArrayList<>();
+      fill(wb, expected);
+
+      Assert.assertTrue(wb.getNumSpills() > 1);
+      Assert.assertTrue(wb.getBytesUsed() < 50000);
+      Assert.assertEquals(3000, wb.size());
+      checkSorted(wb, expected);
+
+      // cells in spilled runs can still be found, and the newest value wins
+      Assert.assertEquals(Bytes.wrap(new byte[100]), wb.get(Bytes.wrap("r0500"), col("f", "q1")).getValue());
+      Assert.assertFalse(wb.get(Bytes.wrap("r0999"), col("f", "q0")).isDelete());
+      wb.putDelete(Bytes.wrap("r0999"), col("f", "q0"));
+      Assert.assertTrue(wb.get(Bytes.wrap("r0999"), col("f", "q0")).isDelete());
+      Assert.assertEquals(3000, wb.size());
+
+      Assert.assertEquals(new HashSet<>(Arrays.asList(col("f", "q0"), col("f", "q1"), col("f", "q2"))), wb.getColumns(Bytes.wrap("r0999")));
+      Assert.assertFalse(wb.containsRow(Bytes.wrap("r1000")));
+    }
+  }
+
+  @Test
+  public void testDelta() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"));
+    try (WriteBuffer wb = new WriteBuffer(50000, dir)) {
+      wb.putDelta(Bytes.wrap("r0500"), col("f", "d1"), -42);
+      wb.putDelta(Bytes.wrap("r2000"), col("f", "d1"), Long.MAX_VALUE);
+
+      Cell cell = wb.get(Bytes.wrap("r0500"), col("f", "d1"));
+      Assert.assertTrue(cell.isDelta());
+      Assert.assertTrue(cell.isSet());
+      Assert.assertFalse(cell.hasValue());
+      Assert.assertFalse(cell.isDelete());
+      Assert.assertEquals(-42, cell.getDelta());
+
+      fill(wb, new ArrayList<String>());
+      Assert.assertTrue(wb.getNumSpills() > 1);
+
+      // deltas are read back from spilled runs
+      Assert.assertEquals(-42, wb.get(Bytes.wrap("r0500"), col("f", "d1")).getDelta());
+      Assert.assertEquals(Long.MAX_VALUE, wb.get(Bytes.wrap("r2000"), col("f", "d1")).getDelta());
+      Assert.assertFalse(wb.get(Bytes.wrap("r0500"), col("f", "q1")).isDelta());
+
+      wb.putDelta(Bytes.wrap("r0500"), col("f", "d1"), 7);
+      Assert.assertEquals(7, wb.get(Bytes.wrap("r0500"), col("f", "d1")).getDelta());
+
+      int deltas = 0;
+      Iterator<Cell> iter = wb.iterator();
+      while (iter.hasNext()) {
+        if (iter.next().isDelta())
+          deltas++;
+      }
+      Assert.assertEquals(2, deltas);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Fluo authors (see AUTHORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fluo.core.oracle;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import io.fluo.api.client.FluoFactory;
+import io.fluo.api.config.FluoConfiguration;
+import io.fluo.core.impl.Environment;
+import io.fluo.core.util.PortUtils;
+import org.apache.accumulo.minicluster.MiniAccumuloCluster;
+import org.apache.commons.io.FileUtils;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures calls per second of the oracle's request handler when called directly, without thrift, for an increasing number of threads. The oracle
+ * runs against a mini accumulo cluster started by the benchmark. Run it from the core module after {@code mvn test-compile} with the main method
+ * on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class OracleServerBenchmark {
+
+  private static final String PASSWORD = "secret";
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+  private File baseDir;
+  private MiniAccumuloCluster cluster;
+  private Environment env;
+  private OracleServer oracle;
+  private String instanceId;
+
+  @Setup
+  public void startOracle() throws Exception {
+    baseDir = Files.createTempDirectory("oracle-benchmark").toFile();
+    cluster = new MiniAccumuloCluster(baseDir, PASSWORD);
+    cluster.start();
+
+    FluoConfiguration config = new FluoConfiguration();
+    config.setAccumuloInstance(cluster.getInstanceName());
+    config.setAccumuloUser("root");
+    config.setAccumuloPassword(PASSWORD);
+    config.setAccumuloTable("benchmark");
+    config.setZookeeperRoot("/benchmark");
+    config.setZookeepers(cluster.getZooKeepers());
+    config.setOraclePort(PortUtils.getRandomFreePort());
+    FluoFactory.newAdmin(config).initialize();
+
+    env = new Environment(config);
+    oracle = new OracleServer(env);
+    oracle.start();
+    while (!oracle.isLeader())
+      Thread.sleep(100);
+
+    instanceId = env.getFluoInstanceID();
+  }
+
+  @TearDown
+  public void stopOracle() throws Exception {
+    oracle.stop();
+    env.close();
+    cluster.stop();
+    FileUtils.deleteQuietly(baseDir);
+  }
+
+  @Benchmark
+  public long getTimestamps() throws TException {
+    return oracle.getTimestamps(instanceId, 1);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : THREADS) {
+      new Runner(new OptionsBuilder().include(OracleServerBenchmark.class.getSimpleName()).threads(threads).build()).run();
+    }
+  }
+}
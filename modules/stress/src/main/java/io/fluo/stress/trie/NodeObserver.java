@@ -25,7 +25,7 @@ import org.slf4j.LoggerFactory;
 import io.fluo.api.types.TypedTransactionBase;
 
 /** Observer that looks for count:wait for nodes.  If found,
- * it increments count:seen and increments count:wait of parent
+ * it moves it to count:seen and adds it to count:wait of parent
  * node in trie
  */
 public class NodeObserver extends AbstractObserver {
@@ -39,17 +39,16 @@ public class NodeObserver extends AbstractObserver {
     final Integer childWait = ttx.get().row(row).col(Constants.COUNT_WAIT_COL).toInteger(0);
     
     if (childWait > 0) {
-      Integer childSeen = ttx.get().row(row).col(Constants.COUNT_SEEN_COL).toInteger(0);
-
-      ttx.mutate().row(row).col(Constants.COUNT_SEEN_COL).set(childSeen + childWait);
-      ttx.mutate().row(row).col(Constants.COUNT_WAIT_COL).delete();
+      // children add to count:wait concurrently, so subtract what was seen instead of deleting it
+      ttx.mutate().row(row).col(Constants.COUNT_SEEN_COL).add(childWait);
+      ttx.mutate().row(row).col(Constants.COUNT_WAIT_COL).add(-childWait);
       
       try {
         Node node = new Node(row.toString());
         if (node.isRoot() == false) {
           Node parent = node.getParent();
-          Integer parentWait = ttx.get().row(parent.getRowId()).col(Constants.COUNT_WAIT_COL).toInteger(0);
-          ttx.mutate().row(parent.getRowId()).col(Constants.COUNT_WAIT_COL).set(parentWait + childWait);
+          // adding to the parent does not collide with its siblings doing the same
+          ttx.mutate().row(parent.getRowId()).col(Constants.COUNT_WAIT_COL).add(childWait);
         }
       } catch (IllegalArgumentException e) {
         log.error(e.getMessage());